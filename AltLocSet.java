@@ -0,0 +1,105 @@
+/*
+ * AltLocSet
+ *
+ * This class keeps the atoms of a structure that have an alternate location (column 17 of an ATOM record,
+ * label_alt_id in mmCIF). The AtomTable that the parsers fill only gets the first record of each atom,
+ * which for most files is conformer A. The other conformers are kept here atom by atom so a conformer can be
+ * put together from the first one by only changing the residues where it is actually different.
+ */
+
+import java.util.Arrays;
+
+public class AltLocSet
+{
+    private char ids[] = new char[0]; // the alternate location letters in the order they were first seen
+    private int count = 0; // the number of atoms kept
+    private byte atomId[] = new byte[64]; // which letter (index into ids) each atom belongs to
+    private int atomRes[] = new int[64]; // residue index of each atom (0 is START)
+    private int atomBit[] = new int[64]; // the PdbAtomParser bit of each atom
+    private double atomPos[] = new double[3*64]; // x y z of each atom
+
+    /*
+     * add
+     * takes byte, int, int, double, double, double
+     * returns void
+     * input: (the alternate location letter, residue index, the atom bit (see PdbAtomParser), x, y, z)
+     *
+     * Keeps one atom of an alternate location
+     */
+    public void add(byte alt, int i, int bit, double x, double y, double z){
+        int k;
+        for(k = 0; k < ids.length && ids[k] != (char)alt; k++){
+        }
+        if(k == ids.length){
+            ids = Arrays.copyOf(ids, k + 1);
+            ids[k] = (char)alt;
+        }
+        if(count == atomRes.length){
+            atomId = Arrays.copyOf(atomId, 2*count);
+            atomRes = Arrays.copyOf(atomRes, 2*count);
+            atomBit = Arrays.copyOf(atomBit, 2*count);
+            atomPos = Arrays.copyOf(atomPos, 6*count);
+        }
+        atomId[count] = (byte)k;
+        atomRes[count] = i;
+        atomBit[count] = bit;
+        atomPos[3*count] = x;
+        atomPos[3*count+1] = y;
+        atomPos[3*count+2] = z;
+        count++;
+    }
+
+    /*
+     * conformers
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how many alternate locations there are (0 if the structure has none)
+     */
+    public int conformers(){
+        return ids.length;
+    }
+
+    /*
+     * id
+     * takes int
+     * returns char
+     * input: (which conformer)
+     *
+     * Returns the alternate location letter of a conformer
+     */
+    public char id(int k){
+        return ids[k];
+    }
+
+    /*
+     * apply
+     * takes int, boolean[], AtomTable
+     * returns int
+     * input: (which conformer, array that is set true for every residue that moved, the atoms (see PdbAtomParser.parseAtoms))
+     *
+     * Writes the atoms of conformer k over the table (which should be a copy of the first conformer).
+     * Only the residues where an atom actually ends up somewhere else are marked in moved. Returns the number of them.
+     */
+    public int apply(int k, boolean moved[], AtomTable atoms){
+        int a, i, n = 0;
+        boolean changed;
+        for(a = 0; a < count; a++){
+            if(atomId[a] != k){
+                continue;
+            }
+            i = atomRes[a];
+            changed = atoms.put(Integer.numberOfTrailingZeros(atomBit[a]), i, atomPos[3*a], atomPos[3*a+1], atomPos[3*a+2]);
+            if(changed && atomBit[a] == PdbAtomParser.HAVE_ODON){
+                // the SER, THR and TYR oxygen is both the donor and the acceptor
+                atoms.put(AtomTable.OACC, i, atomPos[3*a], atomPos[3*a+1], atomPos[3*a+2]);
+            }
+            if(changed && !moved[i]){
+                moved[i] = true;
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * AtomTable
+ *
+ * This class holds the atoms of a structure that Reader3 works on. It takes the place of the ten position
+ * arrays (CBpos, CApos, ...) that used to be double[END-START][3] each, where every row was its own little
+ * array and most rows of the side chain arrays were never filled in.
+ *
+ * The atoms are kept in one block, residue after residue:
+ * x[], y[], z[]  the coordinates of every atom (double, or float in single precision mode)
+ * role[]         which atom it is (the role constants below)
+ * off[]          where the atoms of each residue start, residue i is off[i] to off[i+1]-1
+ * roles[]        which roles each residue has, one bit per role (the atom role index)
+ *
+ * Inside a residue the atoms are in role order, so an atom is found from the bits alone: the atom of role r
+ * in residue i is at off[i] plus the number of roles below r that the residue has. An atom that is not there
+ * reads as (0, 0, 0), the same as an untouched row of the old arrays.
+ *
+ * Single precision keeps the coordinates as floats, which halves the memory again. The pdb format only has
+ * three decimal places so a float keeps them exactly for coordinates under about 1000 A, past that the
+ * last decimal place can be off by one.
+ *
+ * A table can also be a view of a structure in a CorpusStore, then the columns are read straight out of the
+ * memory mapped store file and nothing is kept on the heap. A view can not be changed, copy it first.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class AtomTable
+{
+    // the atom roles, the same order as the bits in PdbAtomParser (HAVE_N is 1 << N and so on)
+    public static final int N = 0; // backbone N
+    public static final int CA = 1; // C alpha
+    public static final int CP = 2; // C'
+    public static final int O = 3; // backbone O
+    public static final int CB = 4; // C beta (the O for a GLY)
+    public static final int NE = 5; // the side chain bond angle atom
+    public static final int OACC = 6; // side chain oxygen acceptor
+    public static final int NDON = 7; // side chain nitrogen donor
+    public static final int NACC = 8; // side chain nitrogen acceptor
+    public static final int ODON = 9; // side chain oxygen donor
+    public static final int ROLES = 10;
+
+    private final int len; // number of residues (END-START)
+    private final boolean single;
+    private int off[]; // first atom of each residue, off[len] is the number of atoms
+    private int roles[]; // the roles each residue has
+    private byte role[];
+    private double dx[], dy[], dz[]; // the coordinates (null in single precision mode)
+    private float fx[], fy[], fz[]; // the coordinates in single precision mode (null otherwise)
+
+    // a view of a CorpusStore: where the columns are in the mapped file (map is null for a table on the heap)
+    private ByteBuffer map;
+    private int offAt, rolesAt, roleAt, xAt, yAt, zAt;
+
+    // the C alpha distance band, the rung maps of the two search windows, the CBisInside frames and the helix axis
+    // (made when they are first needed, dropped when a C alpha moves)
+    private CaDistances ca = null;
+    private CaGrid grid = null;
+    private RungMap near = null, far = null;
+    private OrientationFrames frames = null;
+    private HelixAxis axis = null;
+    private BackboneDihedrals dihedrals = null;
+    private double cols[][] = new double[3*ROLES][]; // cols[3*r + c] is coordinate c of role r for every residue (see roleColumn)
+    private int finder = RungMap.SEARCH; // how the rung maps are made
+
+    /*
+     * AtomTable
+     * takes int, boolean
+     * input: (the number of residues (END-START), keep the coordinates as floats?)
+     *
+     * Makes an empty table
+     */
+    public AtomTable(int len, boolean single){
+        this.len = len;
+        this.single = single;
+        off = new int[len + 1];
+        roles = new int[len];
+        int room = Math.max(len, 16);
+        role = new byte[room];
+        if(single){
+            fx = new float[room];
+            fy = new float[room];
+            fz = new float[room];
+        }else{
+            dx = new double[room];
+            dy = new double[room];
+            dz = new double[room];
+        }
+    }
+
+    // copy constructor (see copy)
+    private AtomTable(AtomTable t){
+        len = t.len;
+        single = t.single;
+        off = t.off.clone();
+        roles = t.roles.clone();
+        role = t.role.clone();
+        // these never change, the copy makes its own once one of its C alphas (or for the dihedrals its N or C') is moved
+        ca = t.ca;
+        grid = t.grid;
+        near = t.near;
+        far = t.far;
+        frames = t.frames;
+        axis = t.axis;
+        dihedrals = t.dihedrals;
+        cols = t.cols.clone();
+        finder = t.finder;
+        if(t.dx != null){
+            dx = t.dx.clone();
+            dy = t.dy.clone();
+            dz = t.dz.clone();
+        }else{
+            fx = t.fx.clone();
+            fy = t.fy.clone();
+            fz = t.fz.clone();
+        }
+    }
+
+    /*
+     * view
+     * takes ByteBuffer, int, boolean, int, int, int, int, int, int
+     * returns AtomTable
+     * input: (the mapped store, the number of residues, floats?, where the offsets of the first residue are,
+     *      where its role masks are, where the role column, x column, y column and z column start)
+     *
+     * Makes a read only table over a structure of a CorpusStore (see CorpusStore.atoms)
+     */
+    static AtomTable view(ByteBuffer map, int len, boolean single, int offAt, int rolesAt, int roleAt, int xAt, int yAt, int zAt){
+        AtomTable t = new AtomTable(len, single, map);
+        t.offAt = offAt;
+        t.rolesAt = rolesAt;
+        t.roleAt = roleAt;
+        t.xAt = xAt;
+        t.yAt = yAt;
+        t.zAt = zAt;
+        return t;
+    }
+
+    // view constructor (see view)
+    private AtomTable(int len, boolean single, ByteBuffer map){
+        this.len = len;
+        this.single = single;
+        this.map = map;
+    }
+
+    /*
+     * length
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns the number of residues (END-START)
+     */
+    public int length(){
+        return len;
+    }
+
+    /*
+     * isSingle
+     * takes nothing
+     * returns boolean
+     * input: ()
+     *
+     * True if the coordinates are kept as floats
+     */
+    public boolean isSingle(){
+        return single;
+    }
+
+    /*
+     * isView
+     * takes nothing
+     * returns boolean
+     * input: ()
+     *
+     * True if the table is a read only view of a CorpusStore
+     */
+    public boolean isView(){
+        return map != null;
+    }
+
+    /*
+     * atoms
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns the number of atoms in the table
+     */
+    public int atoms(){
+        return first(len) - first(0);
+    }
+
+    /*
+     * has
+     * takes int, int
+     * returns boolean
+     * input: (role of the atom, residue index (0 is START))
+     *
+     * True if the residue has an atom in that role
+     */
+    public boolean has(int r, int i){
+        return (roleMask(i) & (1 << r)) != 0;
+    }
+
+    /*
+     * slot
+     * takes int, int
+     * returns int
+     * input: (role of the atom, residue index (0 is START))
+     *
+     * Returns where the atom is in the table, -1 if the residue does not have it
+     */
+    public int slot(int r, int i){
+        int m = roleMask(i), bit = 1 << r;
+        if((m & bit) == 0){
+            return -1;
+        }
+        return first(i) + Integer.bitCount(m & (bit - 1));
+    }
+
+    /*
+     * x, y, z
+     * takes int, int
+     * returns double
+     * input: (role of the atom, residue index (0 is START))
+     *
+     * Returns one coordinate of an atom (0 if the residue does not have it)
+     */
+    public double x(int r, int i){
+        int a = slot(r, i);
+        return (a < 0) ? 0.0 : atomX(a);
+    }
+
+    public double y(int r, int i){
+        int a = slot(r, i);
+        return (a < 0) ? 0.0 : atomY(a);
+    }
+
+    public double z(int r, int i){
+        int a = slot(r, i);
+        return (a < 0) ? 0.0 : atomZ(a);
+    }
+
+    /*
+     * get
+     * takes int, int, int
+     * returns double
+     * input: (role of the atom, residue index (0 is START), which coordinate (x = 0, y = 1, z = 2))
+     *
+     * Same as x, y and z for code that loops over the three coordinates
+     */
+    public double get(int r, int i, int c){
+        switch(c){
+            case 0: return x(r, i);
+            case 1: return y(r, i);
+            default: return z(r, i);
+        }
+    }
+
+    /*
+     * put
+     * takes int, int, double, double, double
+     * returns boolean
+     * input: (role of the atom, residue index (0 is START), x, y, z)
+     *
+     * Stores an atom, or moves it if the residue already has one in that role. Returns false if the atom
+     * was already there with the same coordinates (as they are kept, floats in single precision mode).
+     *
+     * The atoms after it are moved up one place to make room for a new atom, the parsers add the atoms in
+     * the order of the file so this is nearly always the end of the table and nothing has to move.
+     * A view of a CorpusStore can not be changed (an IllegalStateException), copy it first.
+     */
+    public boolean put(int r, int i, double x, double y, double z){
+        if(map != null){
+            throw new IllegalStateException("a structure in the corpus store is read only, copy it first");
+        }
+        int a = slot(r, i), k;
+        if(a < 0){
+            a = off[i] + Integer.bitCount(roles[i] & ((1 << r) - 1));
+            int n = off[len];
+            if(n == role.length){
+                grow(Math.max(16, 2*n));
+            }
+            System.arraycopy(role, a, role, a + 1, n - a);
+            if(dx != null){
+                System.arraycopy(dx, a, dx, a + 1, n - a);
+                System.arraycopy(dy, a, dy, a + 1, n - a);
+                System.arraycopy(dz, a, dz, a + 1, n - a);
+            }else{
+                System.arraycopy(fx, a, fx, a + 1, n - a);
+                System.arraycopy(fy, a, fy, a + 1, n - a);
+                System.arraycopy(fz, a, fz, a + 1, n - a);
+            }
+            for(k = i + 1; k <= len; k++){
+                off[k]++;
+            }
+            roles[i] |= 1 << r;
+            role[a] = (byte)r;
+        }else if(dx != null ? (dx[a] == x && dy[a] == y && dz[a] == z) : (fx[a] == (float)x && fy[a] == (float)y && fz[a] == (float)z)){
+            return false;
+        }
+        if(r == CA){
+            ca = null;
+            grid = null;
+            near = null;
+            far = null;
+            frames = null;
+            axis = null;
+        }
+        if(r == N || r == CA || r == CP){
+            dihedrals = null;
+        }
+        cols[3*r] = null;
+        cols[3*r+1] = null;
+        cols[3*r+2] = null;
+        if(dx != null){
+            dx[a] = x;
+            dy[a] = y;
+            dz[a] = z;
+        }else{
+            fx[a] = (float)x;
+            fy[a] = (float)y;
+            fz[a] = (float)z;
+        }
+        return true;
+    }
+
+    /*
+     * caDistances
+     * takes nothing
+     * returns CaDistances
+     * input: ()
+     *
+     * Returns the squared distances between the C alphas that are close in the chain (see CaDistances),
+     * they are worked out the first time and kept until a C alpha is moved
+     */
+    public CaDistances caDistances(){
+        if(ca == null){
+            ca = new CaDistances(this);
+        }
+        return ca;
+    }
+
+    /*
+     * caGrid
+     * takes nothing
+     * returns CaGrid
+     * input: ()
+     *
+     * Returns the grid that finds the closest C alpha to a point (see CaGrid), made the first time and kept
+     * until a C alpha is moved
+     */
+    public CaGrid caGrid(){
+        if(grid == null){
+            grid = new CaGrid(this);
+        }
+        return grid;
+    }
+
+    /*
+     * rungs
+     * takes int
+     * returns RungMap
+     * input: (how far along the chain to search, RungMap.NEAR or RungMap.FAR)
+     *
+     * Returns the residue above and below every residue (see RungMap), worked out the first time and kept
+     * until a C alpha is moved. A map for any other window is made every time it is asked for.
+     */
+    public RungMap rungs(int window){
+        if(window == RungMap.NEAR){
+            if(near == null){
+                near = new RungMap(this, window, finder);
+            }
+            return near;
+        }
+        if(window == RungMap.FAR){
+            if(far == null){
+                far = new RungMap(this, window, finder);
+            }
+            return far;
+        }
+        return new RungMap(this, window, finder);
+    }
+
+    /*
+     * rungFinder
+     * takes int
+     * returns void
+     * input: (RungMap.SEARCH or RungMap.SWEEP)
+     *
+     * Chooses how the rung maps are made (see RungMap), the maps and frames made the other way are dropped
+     */
+    public void rungFinder(int finder){
+        if(finder != this.finder){
+            this.finder = finder;
+            near = null;
+            far = null;
+            frames = null;
+            axis = null;
+        }
+    }
+
+    /*
+     * frames
+     * takes nothing
+     * returns OrientationFrames
+     * input: ()
+     *
+     * Returns the planes CBisInside tests points against (see OrientationFrames), worked out the first time
+     * and kept until a C alpha is moved
+     */
+    public OrientationFrames frames(){
+        if(frames == null){
+            frames = new OrientationFrames(this);
+        }
+        return frames;
+    }
+
+    /*
+     * axis
+     * takes nothing
+     * returns HelixAxis
+     * input: ()
+     *
+     * Returns the fitted axis of the helix and its rung polygons (see HelixAxis), worked out the first time
+     * and kept until a C alpha is moved
+     */
+    public HelixAxis axis(){
+        if(axis == null){
+            axis = new HelixAxis(this);
+        }
+        return axis;
+    }
+
+    /*
+     * dihedrals
+     * takes nothing
+     * returns BackboneDihedrals
+     * input: ()
+     *
+     * Returns the phi and psi angle of every residue (see BackboneDihedrals), worked out the first time
+     * and kept until an N, C alpha or C' is moved
+     */
+    public BackboneDihedrals dihedrals(){
+        if(dihedrals == null){
+            dihedrals = new BackboneDihedrals(this);
+        }
+        return dihedrals;
+    }
+
+    /*
+     * roleColumn
+     * takes int, int
+     * returns double[]
+     * input: (role of the atom, which coordinate (x = 0, y = 1, z = 2))
+     *
+     * Returns one coordinate of one role for every residue as a flat array, column[i] is the same as get(r, i, c)
+     * (0 where the residue does not have the atom). This is what DistanceKernels loops over. It is made the
+     * first time and kept until an atom of that role is moved, do not change it.
+     */
+    public double[] roleColumn(int r, int c){
+        double v[] = cols[3*r + c];
+        int i;
+        if(v == null){
+            v = new double[len];
+            for(i = 0; i < len; i++){
+                v[i] = get(r, i, c);
+            }
+            cols[3*r + c] = v;
+        }
+        return v;
+    }
+
+    /*
+     * first
+     * takes int
+     * returns int
+     * input: (residue index (0 is START))
+     *
+     * Returns where the atoms of the residue start, they run up to first(i+1)-1
+     */
+    public int first(int i){
+        return (map == null) ? off[i] : map.getInt(offAt + 4*i);
+    }
+
+    /*
+     * roleMask
+     * takes int
+     * returns int
+     * input: (residue index (0 is START))
+     *
+     * Returns the roles the residue has, bit r is set for role r
+     */
+    public int roleMask(int i){
+        return (map == null) ? roles[i] : map.getInt(rolesAt + 4*i);
+    }
+
+    /*
+     * atomRole, atomX, atomY, atomZ
+     * takes int
+     * input: (where the atom is in the table)
+     *
+     * Read an atom by its place in the table, for code that goes through all of them
+     */
+    public int atomRole(int a){
+        return (map == null) ? role[a] : map.get(roleAt + a);
+    }
+
+    public double atomX(int a){
+        return dx != null ? dx[a] : fx != null ? fx[a] : column(xAt, a);
+    }
+
+    public double atomY(int a){
+        return dy != null ? dy[a] : fy != null ? fy[a] : column(yAt, a);
+    }
+
+    public double atomZ(int a){
+        return dz != null ? dz[a] : fz != null ? fz[a] : column(zAt, a);
+    }
+
+    // reads a coordinate out of a column of the mapped store
+    private double column(int at, int a){
+        return single ? map.getFloat(at + 4*a) : map.getDouble(at + 8*a);
+    }
+
+    /*
+     * copy
+     * takes nothing
+     * returns AtomTable
+     * input: ()
+     *
+     * Returns a copy that can be changed without changing this one (used for the alternate location conformers),
+     * the copy of a view of a CorpusStore is a table on the heap
+     */
+    public AtomTable copy(){
+        if(map == null){
+            return new AtomTable(this);
+        }
+        AtomTable t = new AtomTable(len, single);
+        int i, a;
+        for(i = 0; i < len; i++){
+            for(a = first(i); a < first(i+1); a++){
+                t.put(atomRole(a), i, atomX(a), atomY(a), atomZ(a));
+            }
+        }
+        return t;
+    }
+
+    /*
+     * trim
+     * takes nothing
+     * returns void
+     * input: ()
+     *
+     * Gives back the room that was left over for more atoms, once everything is read
+     */
+    public void trim(){
+        if(map == null){
+            grow(off[len]);
+        }
+    }
+
+    // resizes the atom columns
+    private void grow(int room){
+        role = Arrays.copyOf(role, room);
+        if(dx != null){
+            dx = Arrays.copyOf(dx, room);
+            dy = Arrays.copyOf(dy, room);
+            dz = Arrays.copyOf(dz, room);
+        }else{
+            fx = Arrays.copyOf(fx, room);
+            fy = Arrays.copyOf(fy, room);
+            fz = Arrays.copyOf(fz, room);
+        }
+    }
+}
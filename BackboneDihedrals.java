@@ -0,0 +1,114 @@
+/*
+ * BackboneDihedrals
+ *
+ * This class holds the phi and psi angle of every residue of a structure. They used to be worked out by
+ * getPhi and getPsi, which made six little vectors every call and were called again for every residue
+ * RamStats looked at (twice for the residues on a corner). Now they are worked out once, in one pass down
+ * the chain, into two arrays:
+ *
+ * phi[i], psi[i]  the angles of residue i in radians, (-pi, pi]
+ *
+ * phi is the angle between the planes (C' of the previous residue, N, CA) and (N, CA, C'), psi is the angle
+ * between the planes (N, CA, C') and (CA, C', N of the next residue), see page 48 of Protiens. The first
+ * residue has no phi and the last has no psi, those are 0 (the same as getPhi and getPsi gave).
+ *
+ * The angles come from atan2 instead of acos and a sign check: with the two plane normals n1 and n2 and the
+ * shared bond b, n1.n2 is |n1||n2|cos(angle) and the component of one normal along the other bond, times |b|,
+ * is |n1||n2|sin(angle) with the sign getPhi and getPsi used (the dot product with the vector to the C' or N
+ * past 6 O'clock). atan2 of the two is the angle, with no arccos near 0 or pi where it loses precision.
+ *
+ * The angles are kept by the AtomTable until an N, C alpha or C' is moved (see AtomTable.dihedrals).
+ */
+
+public class BackboneDihedrals
+{
+    private final double phi[];
+    private final double psi[];
+
+    /*
+     * BackboneDihedrals
+     * takes AtomTable
+     * input: (the atoms (the N, C alpha and C' are used))
+     *
+     * Works out phi and psi for every residue
+     */
+    public BackboneDihedrals(AtomTable atoms){
+        int len = atoms.length(), i;
+        phi = new double[len];
+        psi = new double[len];
+        double nx, ny, nz, ax, ay, az, cx, cy, cz; // the N, C alpha and C' of this residue
+        double px = 0.0, py = 0.0, pz = 0.0; // the C' of the previous residue
+        double NCAx, NCAy, NCAz, CPCAx, CPCAy, CPCAz; // the vectors from the C alpha to the N and to the C'
+        double m1x, m1y, m1z, m2x, m2y, m2z; // the normal of the phi plane and of the psi plane (cp1 of getPhi and getPsi)
+        double n2x, n2y, n2z; // the normal of the N, C alpha, C' plane (cp2 of getPhi and getPsi)
+        double vx, vy, vz; // the vector from the C' to the N of the next residue
+        for(i = 0; i < len; i++){
+            nx = atoms.x(AtomTable.N, i);
+            ny = atoms.y(AtomTable.N, i);
+            nz = atoms.z(AtomTable.N, i);
+            ax = atoms.x(AtomTable.CA, i);
+            ay = atoms.y(AtomTable.CA, i);
+            az = atoms.z(AtomTable.CA, i);
+            cx = atoms.x(AtomTable.CP, i);
+            cy = atoms.y(AtomTable.CP, i);
+            cz = atoms.z(AtomTable.CP, i);
+            NCAx = nx - ax;
+            NCAy = ny - ay;
+            NCAz = nz - az;
+            CPCAx = cx - ax;
+            CPCAy = cy - ay;
+            CPCAz = cz - az;
+            // CPCA x NCA
+            n2x = CPCAy*NCAz - NCAy*CPCAz;
+            n2y = CPCAz*NCAx - NCAz*CPCAx;
+            n2z = CPCAx*NCAy - NCAx*CPCAy;
+            if(i != 0){
+                // CAN x CpN (CAN is -NCA)
+                vx = px - nx;
+                vy = py - ny;
+                vz = pz - nz;
+                m1x = -NCAy*vz + vy*NCAz;
+                m1y = -NCAz*vx + vz*NCAx;
+                m1z = -NCAx*vy + vx*NCAy;
+                phi[i] = Math.atan2(Math.sqrt(NCAx*NCAx + NCAy*NCAy + NCAz*NCAz)*(m1x*CPCAx + m1y*CPCAy + m1z*CPCAz), m1x*n2x + m1y*n2y + m1z*n2z);
+            }
+            if(i != len - 1){
+                // NCp x CACP (CACP is -CPCA)
+                vx = atoms.x(AtomTable.N, i+1) - cx;
+                vy = atoms.y(AtomTable.N, i+1) - cy;
+                vz = atoms.z(AtomTable.N, i+1) - cz;
+                m2x = -vy*CPCAz + CPCAy*vz;
+                m2y = -vz*CPCAx + CPCAz*vx;
+                m2z = -vx*CPCAy + CPCAx*vy;
+                psi[i] = Math.atan2(Math.sqrt(CPCAx*CPCAx + CPCAy*CPCAy + CPCAz*CPCAz)*(n2x*vx + n2y*vy + n2z*vz), m2x*n2x + m2y*n2y + m2z*n2z);
+            }
+            px = cx;
+            py = cy;
+            pz = cz;
+        }
+    }
+
+    /*
+     * phi
+     * takes int
+     * returns double
+     * input: (residue index (0 is START))
+     *
+     * Returns the phi angle of the residue (0 for the first residue)
+     */
+    public double phi(int i){
+        return phi[i];
+    }
+
+    /*
+     * psi
+     * takes int
+     * returns double
+     * input: (residue index (0 is START))
+     *
+     * Returns the psi angle of the residue (0 for the last residue)
+     */
+    public double psi(int i){
+        return psi[i];
+    }
+}
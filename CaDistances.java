@@ -0,0 +1,70 @@
+/*
+ * CaDistances
+ *
+ * This class keeps the squared distances between the C alphas of a structure that are close together in
+ * the chain. getNplus, getNminus and findVolApp compare the same C alpha to C alpha distances over and over
+ * (CBisInside asks for the residue above and below on every call, so every Monte Carlo point does too).
+ * They never look more than 50 residues along the chain, so only that band of the distance matrix is kept:
+ *
+ * d2[i*BAND + k-1] is the squared distance from C alpha i to C alpha i+k, for k = 1 to BAND
+ *
+ * The matrix is symmetric and the diagonal is 0, so that is all of it. The distances are squared because
+ * the searches only compare them, a square root is only needed for a distance that is printed.
+ *
+ * The band is made once per structure from an AtomTable (see AtomTable.caDistances) and never changes,
+ * a table whose C alphas are moved makes a new one.
+ */
+
+public class CaDistances
+{
+    public static final int BAND = 50; // how far along the chain the distances are kept
+
+    private final AtomTable atoms;
+    private final int len;
+    private final double d2[];
+
+    /*
+     * CaDistances
+     * takes AtomTable
+     * input: (the atoms (only the C alphas are used))
+     *
+     * Works out every squared distance in the band
+     */
+    public CaDistances(AtomTable atoms){
+        this.atoms = atoms;
+        len = atoms.length();
+        d2 = new double[len*BAND];
+        int i;
+        double x[] = atoms.roleColumn(AtomTable.CA, 0), y[] = atoms.roleColumn(AtomTable.CA, 1), z[] = atoms.roleColumn(AtomTable.CA, 2);
+        DistanceKernels kernels = DistanceKernels.get();
+        // the row of C alpha i is the distances to C alphas i+1 to i+BAND (see DistanceKernels.squared)
+        for(i = 0; i < len; i++){
+            kernels.squared(x[i], y[i], z[i], x, y, z, i+1, Math.min(i+1+BAND, len), d2, i*BAND);
+        }
+    }
+
+    /*
+     * get
+     * takes int, int
+     * returns double
+     * input: (residue index of one C alpha, residue index of the other (0 is START))
+     *
+     * Returns the squared distance between the two C alphas, out of the band if they are close enough
+     * in the chain and worked out on the spot if they are not
+     */
+    public double get(int i, int j){
+        int k = j - i;
+        if(k < 0){
+            k = -k;
+            i = j;
+        }
+        if(k == 0){
+            return 0.0;
+        }
+        if(k <= BAND && i >= 0 && i + k < len){
+            return d2[i*BAND + k-1];
+        }
+        j = i + k;
+        return (atoms.x(AtomTable.CA, i) - atoms.x(AtomTable.CA, j))*(atoms.x(AtomTable.CA, i) - atoms.x(AtomTable.CA, j)) + (atoms.y(AtomTable.CA, i) - atoms.y(AtomTable.CA, j))*(atoms.y(AtomTable.CA, i) - atoms.y(AtomTable.CA, j)) + (atoms.z(AtomTable.CA, i) - atoms.z(AtomTable.CA, j))*(atoms.z(AtomTable.CA, i) - atoms.z(AtomTable.CA, j));
+    }
+}
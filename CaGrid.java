@@ -0,0 +1,180 @@
+/*
+ * CaGrid
+ *
+ * This class finds the closest C alpha to a point without looking at every C alpha. findVolume asks that
+ * for every Monte Carlo point, and going down the whole chain each time made the volume of a long fibril
+ * take (points x residues).
+ *
+ * The box around the C alphas is cut into cubes (cells) about big enough to hold two C alphas each and
+ * every C alpha is put in the cell it is in. The C alphas are kept cell by cell (in chain order inside a cell):
+ *
+ * start[c] to start[c+1]-1   where the C alphas of cell c are in x[], y[], z[] and res[]
+ * res[k]                     which residue C alpha k is
+ *
+ * A point looks in its own cell and then in shells of cells around it, one cell further out each time
+ * (each cell is gone through with DistanceKernels.nearest).
+ * Once the closest C alpha found is nearer than the nearest face of the shell (that has cells past it),
+ * nothing outside can be closer.
+ * A beta helix is hollow so a point in the middle looks through a few empty shells before it gets to the
+ * wall, which is still a handful of cells instead of the whole chain.
+ *
+ * When two C alphas are the same distance away the one first in the chain is returned, the same as the
+ * old search (this matters for C alphas that are missing and all sit at (0, 0, 0)).
+ *
+ * The grid is made once per structure (see AtomTable.caGrid) and kept until a C alpha is moved.
+ */
+
+public class CaGrid
+{
+    private static final double PER_CELL = 2.0; // about how many C alphas a cell is made to hold
+
+    private final int len;
+    private final int nx, ny, nz; // how many cells across
+    private final double ox, oy, oz; // the corner of the grid
+    private final double cell; // the edge of a cell
+    private final int start[];
+    private final double x[], y[], z[];
+    private final int res[];
+    private final DistanceKernels kernels = DistanceKernels.get();
+
+    /*
+     * CaGrid
+     * takes AtomTable
+     * input: (the atoms (only the C alphas are used))
+     *
+     * Sizes the cells and sorts the C alphas into them
+     */
+    public CaGrid(AtomTable atoms){
+        len = atoms.length();
+        double cx[] = atoms.roleColumn(AtomTable.CA, 0), cy[] = atoms.roleColumn(AtomTable.CA, 1), cz[] = atoms.roleColumn(AtomTable.CA, 2);
+        double hx = 0.0, hy = 0.0, hz = 0.0, lx = 0.0, ly = 0.0, lz = 0.0, room;
+        int i, c;
+        for(i = 0; i < len; i++){
+            if(i == 0 || cx[i] < lx){
+                lx = cx[i];
+            }
+            if(i == 0 || cy[i] < ly){
+                ly = cy[i];
+            }
+            if(i == 0 || cz[i] < lz){
+                lz = cz[i];
+            }
+            if(i == 0 || cx[i] > hx){
+                hx = cx[i];
+            }
+            if(i == 0 || cy[i] > hy){
+                hy = cy[i];
+            }
+            if(i == 0 || cz[i] > hz){
+                hz = cz[i];
+            }
+        }
+        ox = lx;
+        oy = ly;
+        oz = lz;
+        // the volume each C alpha would get if they were spread out evenly (a flat or straight chain still gets cells of 1 A or more)
+        room = Math.max(hx - lx, 1.0)*Math.max(hy - ly, 1.0)*Math.max(hz - lz, 1.0)/Math.max(len, 1);
+        cell = Math.max(Math.cbrt(PER_CELL*room), 1.0);
+        nx = (int)((hx - lx)/cell) + 1;
+        ny = (int)((hy - ly)/cell) + 1;
+        nz = (int)((hz - lz)/cell) + 1;
+        // counts the C alphas in each cell then lays them out cell by cell (a counting sort, so a cell keeps chain order)
+        start = new int[nx*ny*nz + 1];
+        int in[] = new int[len];
+        for(i = 0; i < len; i++){
+            in[i] = index(clamp(cx[i] - ox, nx), clamp(cy[i] - oy, ny), clamp(cz[i] - oz, nz));
+            start[in[i] + 1]++;
+        }
+        for(c = 0; c < nx*ny*nz; c++){
+            start[c + 1] += start[c];
+        }
+        int next[] = new int[nx*ny*nz];
+        x = new double[len];
+        y = new double[len];
+        z = new double[len];
+        res = new int[len];
+        for(i = 0; i < len; i++){
+            c = start[in[i]] + next[in[i]]++;
+            x[c] = cx[i];
+            y[c] = cy[i];
+            z[c] = cz[i];
+            res[c] = i;
+        }
+    }
+
+    // the cell a distance from the corner is in, along an axis with n cells (points off the grid go to the edge)
+    private int clamp(double d, int n){
+        int k = (int)Math.floor(d/cell);
+        return (k < 0) ? 0 : (k >= n) ? n - 1 : k;
+    }
+
+    private int index(int i, int j, int k){
+        return (k*ny + j)*nx + i;
+    }
+
+    /*
+     * nearest
+     * takes double, double, double
+     * returns int
+     * input: (x, y, z of the point)
+     *
+     * Returns the residue whose C alpha is closest to the point (the first in the chain on a tie), -1 if there are none
+     */
+    public int nearest(double px, double py, double pz){
+        int ci = clamp(px - ox, nx), cj = clamp(py - oy, ny), ck = clamp(pz - oz, nz);
+        int r, i, j, k, c, a, step, best = -1;
+        double d, dx, dy, dz, bestD = Double.POSITIVE_INFINITY, reach;
+        for(r = 0; ; r++){
+            // the cells r away from the point's cell (the faces of the shell, the inside was done already)
+            for(i = Math.max(ci - r, 0); i <= Math.min(ci + r, nx - 1); i++){
+                for(j = Math.max(cj - r, 0); j <= Math.min(cj + r, ny - 1); j++){
+                    step = (Math.abs(i - ci) == r || Math.abs(j - cj) == r || r == 0) ? 1 : 2*r;
+                    for(k = ck - r; k <= ck + r; k += step){
+                        if(k < 0 || k >= nz){
+                            continue;
+                        }
+                        // the closest C alpha of the cell (the first in the chain on a tie, a cell keeps chain order)
+                        c = index(i, j, k);
+                        a = kernels.nearest(px, py, pz, x, y, z, start[c], start[c + 1]);
+                        if(a < 0){
+                            continue;
+                        }
+                        dx = px - x[a];
+                        dy = py - y[a];
+                        dz = pz - z[a];
+                        d = dx*dx + dy*dy + dz*dz;
+                        if(d < bestD || (d == bestD && res[a] < best)){
+                            bestD = d;
+                            best = res[a];
+                        }
+                    }
+                }
+            }
+            // how far the point is from the nearest cell not looked in yet (the faces of the shell that have cells past them)
+            reach = Double.POSITIVE_INFINITY;
+            if(ci - r > 0){
+                reach = Math.min(reach, px - (ox + (ci - r)*cell));
+            }
+            if(ci + r < nx - 1){
+                reach = Math.min(reach, ox + (ci + r + 1)*cell - px);
+            }
+            if(cj - r > 0){
+                reach = Math.min(reach, py - (oy + (cj - r)*cell));
+            }
+            if(cj + r < ny - 1){
+                reach = Math.min(reach, oy + (cj + r + 1)*cell - py);
+            }
+            if(ck - r > 0){
+                reach = Math.min(reach, pz - (oz + (ck - r)*cell));
+            }
+            if(ck + r < nz - 1){
+                reach = Math.min(reach, oz + (ck + r + 1)*cell - pz);
+            }
+            // nothing past the shell can be closer (or there is nothing past it)
+            if(reach == Double.POSITIVE_INFINITY || (best >= 0 && bestD < reach*reach)){
+                break;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * CavityFinder
+ *
+ * This class finds the empty pockets (cavities) in the core of the helix. VolumeStats only adds up the table volume
+ * of the residues that point in and compares it with the volume of the helix, which says how well the core is
+ * packed but not where it is not.
+ *
+ * The inside of the helix is taken from a VoxelGrid. The side chain atoms (see SideChainAtoms) of the residues
+ * that point in are put on the same grid, a voxel is filled if its middle is inside the van der Waals radius of one
+ * of them. What is inside the helix and not filled is empty, and the empty voxels that touch face to face make up
+ * a cavity. Every bit set here is laid out like the grid (slab k starts at word k*stride, see VoxelGrid.stride).
+ *
+ * The cavities are found a slab at a time, one slab per task of a fork-join pool. A task fills in its slab, works
+ * out which voxels are empty (a word at a time) and joins the empty voxels that touch inside the slab with a
+ * union-find. The slabs are then stitched together, one seam at a time, by joining the empty voxels that are right
+ * above each other. The union-find always keeps the lower voxel as the root so:
+ *
+ * parent[v] <= v   for every voxel v = (k*ny + j)*nx + i
+ *
+ * which lets a single pass in voxel order number the cavities (the root of a cavity is its first voxel) and so the
+ * cavities come out in the same order every time, from the bottom of the grid up.
+ *
+ * Each cavity has its volume, its centroid and the residues lining it (the ones with a side chain atom whose
+ * surface is within a voxel of it). The specks between atoms that are smaller than the least volume are dropped.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet; // needed for the lining residues
+import java.util.List;
+import java.util.concurrent.ForkJoinPool; // needed for the slabs
+import java.util.concurrent.ForkJoinTask;
+
+public class CavityFinder
+{
+    private final VoxelGrid grid;
+    private final int nx, ny, nz, stride;
+    private final double ox, oy, oz, size; // the corner of the grid and the edge of a voxel
+    private final long filled[], empty[]; // the voxels a side chain atom fills and the empty voxels inside the helix
+    private final int parent[]; // the union-find of the empty voxels
+    private long filledIn = 0; // how many voxels inside the helix are filled
+
+    // the atoms of the residues that point in, and the atoms that reach each slab (slab k is at[start[k]] to at[start[k+1]-1])
+    private final SideChainAtoms side;
+    private final boolean inward[];
+    private int start[], at[];
+
+    private int cavities = 0;
+    private long count[]; // the voxels in each cavity
+    private double cx[], cy[], cz[]; // the centroids
+    private BitSet lining[];
+
+    /*
+     * CavityFinder
+     * takes VoxelGrid, SideChainAtoms, boolean[], double, int
+     * input: (the inside of the helix, the side chain atoms, which residues point in (0 is START),
+     *      the least volume of a cavity (A^3), how many slabs to do at once)
+     *
+     * Fills in the side chains and finds the cavities
+     */
+    public CavityFinder(VoxelGrid grid, SideChainAtoms side, boolean inward[], double least, int workers){
+        this.grid = grid;
+        this.side = side;
+        this.inward = inward;
+        nx = grid.nx();
+        ny = grid.ny();
+        nz = grid.nz();
+        stride = grid.stride();
+        size = grid.size();
+        ox = grid.x(0) - 0.5*size;
+        oy = grid.y(0) - 0.5*size;
+        oz = grid.z(0) - 0.5*size;
+        filled = new long[stride*nz];
+        empty = new long[stride*nz];
+        parent = new int[nx*ny*nz];
+        bucket();
+        slabs(Math.max(workers, 1));
+        seams();
+        label(least);
+        line();
+    }
+
+    // the first and last voxel along an axis that a sphere of radius r around v can reach (clamped to the n voxels)
+    private int low(double v, double o, double r){
+        return Math.max((int)Math.floor((v - r - o)/size), 0);
+    }
+
+    private int high(double v, double o, double r, int n){
+        return Math.min((int)Math.floor((v + r - o)/size), n - 1);
+    }
+
+    // sorts the atoms of the residues that point in by the slabs they reach (a counting sort, like the cells of CaGrid)
+    private void bucket(){
+        int a, k, n = side.count();
+        start = new int[nz + 1];
+        for(a = 0; a < n; a++){
+            if(inward[side.residue(a)]){
+                for(k = low(side.z(a), oz, side.radius(a)); k <= high(side.z(a), oz, side.radius(a), nz); k++){
+                    start[k + 1]++;
+                }
+            }
+        }
+        for(k = 0; k < nz; k++){
+            start[k + 1] += start[k];
+        }
+        int next[] = Arrays.copyOf(start, nz);
+        at = new int[start[nz]];
+        for(a = 0; a < n; a++){
+            if(inward[side.residue(a)]){
+                for(k = low(side.z(a), oz, side.radius(a)); k <= high(side.z(a), oz, side.radius(a), nz); k++){
+                    at[next[k]++] = a;
+                }
+            }
+        }
+    }
+
+    // fills in and joins up every slab, a slab per task
+    private void slabs(int workers){
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        List<ForkJoinTask<Long>> tasks = new ArrayList<ForkJoinTask<Long>>();
+        int k;
+        try{
+            for(k = 0; k < nz; k++){
+                final int slab = k;
+                tasks.add(pool.submit(() -> slab(slab)));
+            }
+            for(ForkJoinTask<Long> t : tasks){
+                filledIn += t.join();
+            }
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    // fills in slab k, finds its empty voxels and joins the ones that touch, returns how many voxels inside the helix are filled
+    private long slab(int k){
+        long in = 0, w, inside[] = grid.words();
+        int a, i, j, b, w0 = k*stride, base = k*nx*ny;
+        double pz = grid.z(k), px, py, dx, dy, dz, r2, r;
+        for(a = start[k]; a < start[k + 1]; a++){
+            dz = pz - side.z(at[a]);
+            r2 = side.radius(at[a])*side.radius(at[a]) - dz*dz;
+            if(r2 < 0.0){
+                continue;
+            }
+            // the circle the atom makes in the slab
+            r = Math.sqrt(r2);
+            for(j = low(side.y(at[a]), oy, r); j <= high(side.y(at[a]), oy, r, ny); j++){
+                py = grid.y(j);
+                dy = py - side.y(at[a]);
+                for(i = low(side.x(at[a]), ox, r); i <= high(side.x(at[a]), ox, r, nx); i++){
+                    px = grid.x(i);
+                    dx = px - side.x(at[a]);
+                    if(dx*dx + dy*dy <= r2){
+                        b = j*nx + i;
+                        filled[w0 + (b >>> 6)] |= 1L << (b & 63);
+                    }
+                }
+            }
+        }
+        for(a = w0; a < w0 + stride; a++){
+            empty[a] = inside[a] & ~filled[a];
+            in += Long.bitCount(inside[a] & filled[a]);
+        }
+        // every empty voxel starts on its own, then is joined to the empty voxels before it in x and in y
+        for(a = 0; a < stride; a++){
+            w = empty[w0 + a];
+            while(w != 0){
+                b = 64*a + Long.numberOfTrailingZeros(w);
+                w &= w - 1;
+                parent[base + b] = base + b;
+                if(b % nx > 0 && isEmpty(w0, b - 1)){
+                    union(base + b, base + b - 1);
+                }
+                if(b >= nx && isEmpty(w0, b - nx)){
+                    union(base + b, base + b - nx);
+                }
+            }
+        }
+        return in;
+    }
+
+    private boolean isEmpty(int w0, int b){
+        return (empty[w0 + (b >>> 6)] & (1L << (b & 63))) != 0;
+    }
+
+    // the root of voxel v (halving the path on the way up)
+    private int find(int v){
+        while(parent[v] != v){
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    // joins the sets of two voxels, the lower root stays the root
+    private void union(int a, int b){
+        a = find(a);
+        b = find(b);
+        if(a < b){
+            parent[b] = a;
+        }else if(b < a){
+            parent[a] = b;
+        }
+    }
+
+    // joins every empty voxel to the empty voxel right above it, one seam between slabs at a time
+    private void seams(){
+        int k, a, b, nxy = nx*ny;
+        long w;
+        for(k = 0; k + 1 < nz; k++){
+            for(a = 0; a < stride; a++){
+                w = empty[k*stride + a] & empty[(k + 1)*stride + a];
+                while(w != 0){
+                    b = 64*a + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                    union(k*nxy + b, (k + 1)*nxy + b);
+                }
+            }
+        }
+    }
+
+    // numbers the cavities in voxel order and adds up their voxels, then drops the ones under the least volume
+    private void label(double least){
+        int k, a, b, v, p, n = 0, nxy = nx*ny;
+        long w, sizes[] = new long[16];
+        double sums[] = new double[48];
+        for(k = 0; k < nz; k++){
+            for(a = 0; a < stride; a++){
+                w = empty[k*stride + a];
+                while(w != 0){
+                    b = 64*a + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                    v = k*nxy + b;
+                    p = parent[v];
+                    // a root gets the next number (kept as -1-number), anything else takes the number of its parent (which is lower, so done)
+                    if(p == v){
+                        if(n == sizes.length){
+                            sizes = Arrays.copyOf(sizes, 2*n);
+                            sums = Arrays.copyOf(sums, 6*n);
+                        }
+                        parent[v] = -1 - n++;
+                    }else{
+                        parent[v] = parent[p];
+                    }
+                    p = -1 - parent[v];
+                    sizes[p]++;
+                    sums[3*p] += grid.x(b % nx);
+                    sums[3*p + 1] += grid.y(b / nx);
+                    sums[3*p + 2] += grid.z(k);
+                }
+            }
+        }
+        // keeps the cavities that are big enough, the number a voxel has is turned into the kept cavity (or -1)
+        int keep[] = new int[n];
+        count = new long[n];
+        cx = new double[n];
+        cy = new double[n];
+        cz = new double[n];
+        for(p = 0; p < n; p++){
+            if(sizes[p]*size*size*size >= least){
+                keep[p] = cavities;
+                count[cavities] = sizes[p];
+                cx[cavities] = sums[3*p]/sizes[p];
+                cy[cavities] = sums[3*p + 1]/sizes[p];
+                cz[cavities] = sums[3*p + 2]/sizes[p];
+                cavities++;
+            }else{
+                keep[p] = -1;
+            }
+        }
+        for(k = 0; k < nz; k++){
+            for(a = 0; a < stride; a++){
+                w = empty[k*stride + a];
+                while(w != 0){
+                    b = 64*a + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                    parent[k*nxy + b] = keep[-1 - parent[k*nxy + b]];
+                }
+            }
+        }
+    }
+
+    // finds the residues lining each cavity, the ones with an atom whose surface is within a voxel of it
+    private void line(){
+        int a, c, i, j, k, n = side.count();
+        double r, dx, dy, dz;
+        lining = new BitSet[cavities];
+        for(c = 0; c < cavities; c++){
+            lining[c] = new BitSet();
+        }
+        for(a = 0; a < n; a++){
+            if(!inward[side.residue(a)]){
+                continue;
+            }
+            r = side.radius(a) + size;
+            for(k = low(side.z(a), oz, r); k <= high(side.z(a), oz, r, nz); k++){
+                dz = grid.z(k) - side.z(a);
+                for(j = low(side.y(a), oy, r); j <= high(side.y(a), oy, r, ny); j++){
+                    dy = grid.y(j) - side.y(a);
+                    for(i = low(side.x(a), ox, r); i <= high(side.x(a), ox, r, nx); i++){
+                        dx = grid.x(i) - side.x(a);
+                        c = cavity(i, j, k);
+                        if(c >= 0 && dx*dx + dy*dy + dz*dz <= r*r){
+                            lining[c].set(side.residue(a));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * cavity
+     * takes int, int, int
+     * returns int
+     * input: (the voxel numbers along x, y and z)
+     *
+     * Returns the cavity the voxel is in, -1 if it is not in one
+     */
+    public int cavity(int i, int j, int k){
+        int b = j*nx + i;
+        if((empty[k*stride + (b >>> 6)] & (1L << (b & 63))) == 0){
+            return -1;
+        }
+        return parent[k*nx*ny + b];
+    }
+
+    /*
+     * cavities
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how many cavities there are (0 is the lowest one in the grid)
+     */
+    public int cavities(){
+        return cavities;
+    }
+
+    /*
+     * volume
+     * takes int
+     * returns double
+     * input: (the cavity)
+     *
+     * Returns the volume of the cavity (A^3)
+     */
+    public double volume(int c){
+        return count[c]*size*size*size;
+    }
+
+    /*
+     * x, y, z
+     * takes int
+     * returns double
+     * input: (the cavity)
+     *
+     * Return the centroid of the cavity
+     */
+    public double x(int c){
+        return cx[c];
+    }
+
+    public double y(int c){
+        return cy[c];
+    }
+
+    public double z(int c){
+        return cz[c];
+    }
+
+    /*
+     * lining
+     * takes int
+     * returns int[]
+     * input: (the cavity)
+     *
+     * Returns the residues lining the cavity, lowest first (0 is START)
+     */
+    public int[] lining(int c){
+        return lining[c].stream().toArray();
+    }
+
+    /*
+     * filled
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Returns the volume inside the helix that the side chains fill (A^3)
+     */
+    public double filled(){
+        return filledIn*size*size*size;
+    }
+}
@@ -0,0 +1,651 @@
+/*
+ * CifAtomSiteReader
+ *
+ * This class reads the coordinates of a structure that is only published as mmCIF (*.cif or *.cif.gz).
+ * mmCIF does not have fixed columns, the atoms are rows of the _atom_site loop:
+ *
+ * loop_
+ * _atom_site.group_PDB
+ * _atom_site.id
+ * _atom_site.label_atom_id
+ * ...
+ * ATOM 1 N N . LEU A 1 1 ? -0.532 8.477 -0.089 ...
+ *
+ * The file is streamed through a small buffer and split into tokens on the fly, so only a block of
+ * the file is ever held in memory no matter how big the assembly is. No String is made for a token,
+ * the values that are needed are decoded straight out of the buffer.
+ *
+ * It fills the same AtomTable as PdbAtomParser (using the same atom choices) and builds the
+ * sequence from the residues of the first chain of the first model. readSideChains goes through the
+ * loop again for every side chain atom, the same as PdbAtomParser.parseSideChains (see CavityFinder).
+ */
+
+import java.io.*; // needed for input and output
+import java.util.Arrays;
+
+public class CifAtomSiteReader
+{
+    private static final int BLOCK = 1 << 16; // how much of the file is read at a time
+
+    // the _atom_site columns that are used
+    private static final String TAGS[] = {"_atom_site.group_PDB", "_atom_site.label_atom_id", "_atom_site.auth_atom_id",
+        "_atom_site.label_comp_id", "_atom_site.label_asym_id", "_atom_site.auth_asym_id", "_atom_site.label_seq_id",
+        "_atom_site.auth_seq_id", "_atom_site.Cartn_x", "_atom_site.Cartn_y", "_atom_site.Cartn_z", "_atom_site.pdbx_PDB_model_num",
+        "_atom_site.label_alt_id", "_atom_site.type_symbol"};
+    private static final int GROUP = 0, LABEL_ATOM = 1, AUTH_ATOM = 2, COMP = 3, LABEL_ASYM = 4, AUTH_ASYM = 5;
+    private static final int LABEL_SEQ = 6, AUTH_SEQ = 7, X = 8, Y = 9, Z = 10, MODEL = 11, ALT = 12, TYPE = 13;
+
+    private final InputStream in;
+    private byte buf[] = new byte[BLOCK];
+    private int pos = 0, lim = 0; // the unread part of the buffer
+    private boolean eof = false;
+    private boolean bol = true; // true at the start of a line (for ; text fields)
+    private int tokStart, tokEnd; // the current token is buf[tokStart] to buf[tokEnd-1]
+    private boolean tokQuoted; // the current token was in quotes (so it can not be a keyword)
+
+    // the atoms of the whole chain as they are read, before its length is known (see readChain)
+    private int kept = 0;
+    private int keptRes[], keptBit[];
+    private double keptX[], keptY[], keptZ[];
+
+    // what readChain read
+    public char seq[]; // the one letter sequence, seq[r-1] is residue r
+    public char chain = ' '; // the chain that was read (the first letter of its auth_asym_id, or label_asym_id if there is none)
+    public int residues = 0; // the length of the chain (the number of the last residue)
+    public AtomTable atoms; // the atoms of residues 1 to residues
+
+    private CifAtomSiteReader(InputStream in){
+        this.in = in;
+    }
+
+    /*
+     * isCif
+     * takes String
+     * returns boolean
+     * input: (the name of the coordinate file)
+     *
+     * True if the file is mmCIF (*.cif or *.cif.gz)
+     */
+    public static boolean isCif(String ins){
+        return PdbInput.baseName(ins).endsWith(".cif");
+    }
+
+    /*
+     * read
+     * takes String, int, int, int, AtomTable
+     * returns char[]
+     * input: (the name of the *.cif file, start residue, end residue, which atoms to decode (see PdbAtomParser.parseMask),
+     *      the table to put the atoms in)
+     *
+     * Streams through the file until the _atom_site loop, then reads the ATOM rows of the first chain
+     * of the first model. The author residue numbers are used (the same numbers as in a *.pdb file),
+     * the label numbers if there are none. Returns the sequence, seq[r-1] is residue r, any residue
+     * without coordinates is filled in as a GLY. A file without an _atom_site loop is an IOException.
+     */
+    public static char[] read(String ins, int START, int END, int mask, AtomTable atoms) throws
+    IOException,
+    FileNotFoundException
+    {
+        return read(ins, START, END, mask, atoms, null);
+    }
+
+    /*
+     * read
+     * takes String, int, int, int, AtomTable, AltLocSet
+     * returns char[]
+     * input: (same as above, plus where to keep the atoms that have an alternate location (null to ignore them))
+     *
+     * Same as above, only every wanted atom with a label_alt_id is also kept in alts (see PdbAtomParser.parseAtoms)
+     */
+    public static char[] read(String ins, int START, int END, int mask, AtomTable atoms, AltLocSet alts) throws
+    IOException,
+    FileNotFoundException
+    {
+        CifAtomSiteReader cif = new CifAtomSiteReader(PdbInput.open(ins));
+        // the file is closed however the reading ends
+        try{
+            return atomSite(cif, ins, START, END, mask, atoms, alts);
+        }finally{
+            cif.in.close();
+        }
+    }
+
+    /*
+     * readChain
+     * takes String, int, boolean
+     * returns CifAtomSiteReader
+     * input: (the name of the *.cif file, which atoms to decode (see PdbAtomParser.parseMask), keep the coordinates as floats?)
+     *
+     * Reads the whole first chain of the first model in a single pass, for when the length of the chain is
+     * not known before the file is read (see CorpusStore.add). The atoms are held on to as they are read and
+     * put in a table once the end of the chain is reached. The sequence, the chain, its length and the atoms
+     * are then in seq, chain, residues and atoms.
+     */
+    public static CifAtomSiteReader readChain(String ins, int mask, boolean single) throws
+    IOException,
+    FileNotFoundException
+    {
+        CifAtomSiteReader cif = new CifAtomSiteReader(PdbInput.open(ins));
+        cif.keptRes = new int[1024];
+        cif.keptBit = new int[1024];
+        cif.keptX = new double[1024];
+        cif.keptY = new double[1024];
+        cif.keptZ = new double[1024];
+        try{
+            cif.seq = atomSite(cif, ins, 1, 1, mask, null, null);
+        }finally{
+            cif.in.close();
+        }
+        cif.residues = cif.seq.length;
+        int have[] = new int[cif.residues], k;
+        cif.atoms = new AtomTable(cif.residues, single);
+        for(k = 0; k < cif.kept; k++){
+            PdbAtomParser.put(have, cif.keptRes[k], cif.keptBit[k], cif.keptX[k], cif.keptY[k], cif.keptZ[k], cif.atoms);
+        }
+        PdbAtomParser.finish(have, mask, cif.seq, 1, cif.residues + 1, cif.atoms);
+        return cif;
+    }
+
+    // holds on to an atom of the chain (see readChain)
+    private void keep(int i, int bit, double x, double y, double z){
+        if(kept == keptRes.length){
+            keptRes = Arrays.copyOf(keptRes, 2*kept);
+            keptBit = Arrays.copyOf(keptBit, 2*kept);
+            keptX = Arrays.copyOf(keptX, 2*kept);
+            keptY = Arrays.copyOf(keptY, 2*kept);
+            keptZ = Arrays.copyOf(keptZ, 2*kept);
+        }
+        keptRes[kept] = i;
+        keptBit[kept] = bit;
+        keptX[kept] = x;
+        keptY[kept] = y;
+        keptZ[kept] = z;
+        kept++;
+    }
+
+    // reads the atoms out of the open file (see read), with no table every atom of the chain is held on to (see readChain)
+    private static char[] atomSite(CifAtomSiteReader cif, String ins, int START, int END, int mask, AtomTable atoms, AltLocSet alts) throws IOException {
+        int have[] = new int[END - START];
+        int col[] = new int[TAGS.length]; // which column each of the tags is in (-1 if it is not there)
+        int ncols = cif.atomSiteLoop(col, ins), c, i, bit;
+        char seq[] = new char[256];
+        int maxRes = 0;
+        boolean done = false;
+
+        // the values of the row being read
+        byte name[] = new byte[4];
+        byte comp[] = new byte[3];
+        boolean isAtom = false;
+        byte alt = ' ', chainId = ' ';
+        int nameLen = 0, chain = 0, firstChain = 0, labelSeq = 0, authSeq = Integer.MIN_VALUE, model = 1, firstModel = -1, res, bitName = 0;
+        double x = 0.0, y = 0.0, z = 0.0;
+
+        int seqCol = (col[AUTH_SEQ] >= 0) ? col[AUTH_SEQ] : col[LABEL_SEQ];
+        int chainCol = (col[AUTH_ASYM] >= 0) ? col[AUTH_ASYM] : col[LABEL_ASYM];
+
+        // reads the rows, the current token is the first value of the first row
+        c = 0;
+        while(!done){
+            if(c == 0){
+                isAtom = (col[GROUP] < 0);
+                nameLen = 0;
+                bitName = 0;
+                alt = ' ';
+                authSeq = Integer.MIN_VALUE;
+            }
+            if(c == col[GROUP]){
+                isAtom = cif.is("ATOM");
+            }else if(c == col[LABEL_ATOM]){
+                nameLen = Math.min(4, cif.tokEnd - cif.tokStart);
+                System.arraycopy(cif.buf, cif.tokStart, name, 0, nameLen);
+                bitName = PdbAtomParser.nameBit(name[0], (nameLen > 1) ? name[1] : (byte)' ', mask);
+            }else if(c == col[COMP]){
+                System.arraycopy(cif.buf, cif.tokStart, comp, 0, Math.min(3, cif.tokEnd - cif.tokStart));
+            }else if(c == chainCol){
+                chain = cif.hashToken();
+                chainId = (cif.tokEnd == cif.tokStart || (!cif.tokQuoted && (cif.is(".") || cif.is("?")))) ? (byte)' ' : cif.buf[cif.tokStart];
+            }else if(c == seqCol){
+                authSeq = cif.intToken(Integer.MIN_VALUE);
+            }else if(c == col[MODEL]){
+                model = cif.intToken(1);
+            }else if(c == col[ALT]){
+                alt = cif.buf[cif.tokStart];
+                if(cif.tokEnd == cif.tokStart || (!cif.tokQuoted && (alt == '.' || alt == '?'))){
+                    alt = ' ';
+                }
+            }else if(isAtom && bitName != 0){
+                // the coordinates are only decoded for the atoms that are wanted
+                if(c == col[X]){
+                    x = cif.doubleToken();
+                }else if(c == col[Y]){
+                    y = cif.doubleToken();
+                }else if(c == col[Z]){
+                    z = cif.doubleToken();
+                }
+            }
+            c++;
+            if(c == ncols){
+                // end of the row
+                c = 0;
+                if(isAtom){
+                    if(firstModel < 0){
+                        firstModel = model;
+                        firstChain = chain;
+                        cif.chain = (char)(chainId & 0xff);
+                    }
+                    if(model != firstModel || chain != firstChain){
+                        done = true; // the first chain of the first model is finished
+                    }else if(authSeq > 0){
+                        res = authSeq;
+                        if(res > seq.length){
+                            seq = Arrays.copyOf(seq, Math.max(2*seq.length, res));
+                        }
+                        if(seq[res-1] == 0){
+                            seq[res-1] = ResidueAlphabet.seqres(comp[0], comp[1], comp[2]);
+                        }
+                        maxRes = Math.max(maxRes, res);
+                        if(atoms == null && bitName != 0){
+                            bit = PdbAtomParser.residueBit(bitName, ResidueAlphabet.code(seq[res-1]), name[0], (nameLen > 1) ? name[1] : (byte)' ');
+                            if(bit != 0){
+                                cif.keep(res - 1, bit, x, y, z);
+                            }
+                        }else if(res >= START && res < END && bitName != 0){
+                            i = res - START;
+                            bit = PdbAtomParser.residueBit(bitName, ResidueAlphabet.code(seq[res-1]), name[0], (nameLen > 1) ? name[1] : (byte)' ');
+                            if(bit != 0){
+                                if(alts != null && alt != ' '){
+                                    PdbAtomParser.keepAlt(alts, alt, i, bit, mask, ResidueAlphabet.code(seq[res-1]), x, y, z);
+                                }
+                                PdbAtomParser.put(have, i, bit, x, y, z, atoms);
+                            }
+                        }
+                    }
+                }
+            }
+            if(!done){
+                // the loop is over at the end of the file or at the next tag, loop_ or data block
+                done = !cif.next() || (!cif.tokQuoted && (cif.buf[cif.tokStart] == '_' || cif.is("loop_") || cif.startsWith("data_")));
+            }
+        }
+
+        seq = Arrays.copyOf(seq, maxRes);
+        for(i = 0; i < maxRes; i++){
+            if(seq[i] == 0){
+                seq[i] = 'G';
+            }
+        }
+        if(atoms != null){
+            PdbAtomParser.finish(have, mask, seq, START, END, atoms);
+        }
+        return seq;
+    }
+
+    /*
+     * readSideChains
+     * takes String, int, int, SideChainAtoms
+     * returns int
+     * input: (the name of the *.cif file, start residue, end residue, where to put the atoms)
+     *
+     * The mmCIF version of PdbAtomParser.parseSideChains: streams the _atom_site loop again and keeps every side
+     * chain heavy atom of residues START to END-1 of the first chain of the first model (not N, CA, C, O or OXT,
+     * and not a hydrogen) with the radius of its element. The element comes from type_symbol, or from the atom
+     * name if the file does not have it. Of the atoms with an alternate location only the first location in the
+     * file is kept (usually A). Returns the number of atoms kept.
+     */
+    public static int readSideChains(String ins, int START, int END, SideChainAtoms side) throws
+    IOException,
+    FileNotFoundException
+    {
+        CifAtomSiteReader cif = new CifAtomSiteReader(PdbInput.open(ins));
+        // the file is closed however the reading ends
+        try{
+            return sideChains(cif, ins, START, END, side);
+        }finally{
+            cif.in.close();
+        }
+    }
+
+    // reads the side chain atoms out of the open file (see readSideChains)
+    private static int sideChains(CifAtomSiteReader cif, String ins, int START, int END, SideChainAtoms side) throws IOException {
+        int col[] = new int[TAGS.length];
+        int ncols = cif.atomSiteLoop(col, ins), c, count = 0;
+        int seqCol = (col[AUTH_SEQ] >= 0) ? col[AUTH_SEQ] : col[LABEL_SEQ];
+        int chainCol = (col[AUTH_ASYM] >= 0) ? col[AUTH_ASYM] : col[LABEL_ASYM];
+        boolean done = false;
+
+        // the values of the row being read
+        byte name[] = new byte[4];
+        boolean isAtom = false;
+        byte alt = ' ', first = ' ', e = ' ';
+        int nameLen = 0, chain = 0, firstChain = 0, res = Integer.MIN_VALUE, model = 1, firstModel = -1;
+        double x = 0.0, y = 0.0, z = 0.0;
+
+        // reads the rows, the current token is the first value of the first row
+        c = 0;
+        while(!done){
+            if(c == 0){
+                isAtom = (col[GROUP] < 0);
+                nameLen = 0;
+                alt = ' ';
+                e = ' ';
+                res = Integer.MIN_VALUE;
+            }
+            if(c == col[GROUP]){
+                isAtom = cif.is("ATOM");
+            }else if(c == col[LABEL_ATOM]){
+                nameLen = Math.min(4, cif.tokEnd - cif.tokStart);
+                System.arraycopy(cif.buf, cif.tokStart, name, 0, nameLen);
+            }else if(c == chainCol){
+                chain = cif.hashToken();
+            }else if(c == seqCol){
+                res = cif.intToken(Integer.MIN_VALUE);
+            }else if(c == col[MODEL]){
+                model = cif.intToken(1);
+            }else if(c == col[ALT]){
+                alt = cif.buf[cif.tokStart];
+                if(cif.tokEnd == cif.tokStart || (!cif.tokQuoted && (alt == '.' || alt == '?'))){
+                    alt = ' ';
+                }
+            }else if(c == col[TYPE]){
+                e = cif.buf[cif.tokStart];
+                if(cif.tokEnd == cif.tokStart || (!cif.tokQuoted && (e == '.' || e == '?'))){
+                    e = ' ';
+                }
+            }else if(c == col[X]){
+                x = cif.doubleToken();
+            }else if(c == col[Y]){
+                y = cif.doubleToken();
+            }else if(c == col[Z]){
+                z = cif.doubleToken();
+            }
+            c++;
+            if(c == ncols){
+                // end of the row
+                c = 0;
+                if(isAtom && nameLen > 0){
+                    if(firstModel < 0){
+                        firstModel = model;
+                        firstChain = chain;
+                    }
+                    if(model != firstModel || chain != firstChain || res >= END){
+                        done = true; // the first chain of the first model is finished (or the residues that are wanted are)
+                    }else if(!isBackbone(name, nameLen)){
+                        if(alt != ' ' && first == ' '){
+                            first = alt;
+                        }
+                        if(e == ' '){
+                            e = (name[0] >= '0' && name[0] <= '9' && nameLen > 1) ? name[1] : name[0];
+                        }
+                        if(res >= START && (alt == ' ' || alt == first) && e != 'H' && e != 'D'){
+                            side.add(res - START, x, y, z, SideChainAtoms.radius((char)e));
+                            count++;
+                        }
+                    }
+                }
+            }
+            if(!done){
+                // the loop is over at the end of the file or at the next tag, loop_ or data block
+                done = !cif.next() || (!cif.tokQuoted && (cif.buf[cif.tokStart] == '_' || cif.is("loop_") || cif.startsWith("data_")));
+            }
+        }
+        return count;
+    }
+
+    // true for the backbone atoms N, CA, C, O and OXT
+    private static boolean isBackbone(byte name[], int nameLen){
+        switch(nameLen){
+            case 1: return name[0] == 'N' || name[0] == 'C' || name[0] == 'O';
+            case 2: return name[0] == 'C' && name[1] == 'A';
+            case 3: return name[0] == 'O' && name[1] == 'X' && name[2] == 'T';
+            default: return false;
+        }
+    }
+
+    /*
+     * atomSiteLoop
+     * takes int[], String
+     * returns int
+     * input: (where the column of each of the tags goes (-1 if it is not there), the name of the file (for the error))
+     *
+     * Streams through the file until the loop with the _atom_site tags and works out which column each
+     * tag is in. Returns the number of columns, the current token is then the first value of the first row.
+     * A file without an _atom_site loop is an IOException.
+     */
+    private int atomSiteLoop(int col[], String ins) throws IOException {
+        int ncols = 0, t;
+        boolean found = false;
+        while(!found && next()){
+            if(!tokQuoted && is("loop_")){
+                Arrays.fill(col, -1);
+                ncols = 0;
+                while(next() && !tokQuoted && buf[tokStart] == '_'){
+                    for(t = 0; t < TAGS.length; t++){
+                        if(is(TAGS[t])){
+                            col[t] = ncols;
+                        }
+                    }
+                    ncols++;
+                }
+                found = (col[X] >= 0 && col[Y] >= 0 && col[Z] >= 0 && (col[LABEL_ATOM] >= 0 || col[AUTH_ATOM] >= 0));
+            }
+        }
+        if(!found){
+            throw new IOException("no _atom_site loop in " + ins);
+        }
+        if(col[LABEL_ATOM] < 0){
+            col[LABEL_ATOM] = col[AUTH_ATOM];
+        }
+        return ncols;
+    }
+
+    /*
+     * next
+     * takes nothing
+     * returns boolean
+     * input: ()
+     *
+     * Moves on to the next token, false at the end of the file. Comments are skipped, a quoted value
+     * has its quotes taken off and a ; text field is turned into an empty token (nothing in _atom_site
+     * uses them).
+     */
+    private boolean next() throws IOException {
+        byte b;
+        while(true){
+            if(pos == lim && !fill(pos)){
+                return false;
+            }
+            b = buf[pos];
+            if(b == ' ' || b == '\t' || b == '\r' || b == '\n'){
+                bol = (b == '\n');
+                pos++;
+            }else if(b == '#'){
+                skipLine();
+            }else if(b == ';' && bol){
+                // text field, runs until a line that starts with ;
+                pos++;
+                skipLine();
+                while((pos < lim || fill(pos)) && buf[pos] != ';'){
+                    skipLine();
+                }
+                pos++;
+                tokStart = pos;
+                tokEnd = pos;
+                tokQuoted = true;
+                bol = false;
+                return true;
+            }else if(b == '\'' || b == '"'){
+                // quoted value, ends at the same quote followed by white space
+                pos++;
+                tokStart = pos;
+                while(pos < lim || more()){
+                    if(buf[pos] == b){
+                        if(pos + 1 == lim && !more()){
+                            break; // quote at the end of the file
+                        }
+                        if(isSpace(buf[pos+1])){
+                            break;
+                        }
+                    }
+                    pos++;
+                }
+                tokEnd = Math.min(pos, lim);
+                pos++;
+                tokQuoted = true;
+                bol = false;
+                return true;
+            }else{
+                tokStart = pos;
+                while((pos < lim || more()) && !isSpace(buf[pos])){
+                    pos++;
+                }
+                tokEnd = pos;
+                tokQuoted = false;
+                bol = false;
+                return true;
+            }
+        }
+    }
+
+    // skips to the start of the next line
+    private void skipLine() throws IOException {
+        while(true){
+            if(pos == lim && !fill(pos)){
+                return;
+            }
+            if(buf[pos++] == '\n'){
+                bol = true;
+                return;
+            }
+        }
+    }
+
+    /*
+     * fill
+     * takes int
+     * returns boolean
+     * input: (the first byte in the buffer that has to be kept)
+     *
+     * Moves the bytes from keep on to the front of the buffer (growing it if a single token fills it)
+     * and reads more of the file in after them. Returns false if nothing more could be read.
+     */
+    private boolean fill(int keep) throws IOException {
+        int kept = lim - keep;
+        if(kept == buf.length){
+            buf = Arrays.copyOf(buf, 2*buf.length);
+        }else if(keep > 0){
+            System.arraycopy(buf, keep, buf, 0, kept);
+        }
+        pos -= keep;
+        lim = kept;
+        if(eof){
+            return false;
+        }
+        int n = in.read(buf, lim, buf.length - lim);
+        if(n <= 0){
+            eof = true;
+            return false;
+        }
+        lim += n;
+        return true;
+    }
+
+    // reads more of the file while in the middle of a token, keeping the token
+    private boolean more() throws IOException {
+        int keep = tokStart;
+        tokStart = 0;
+        return fill(keep);
+    }
+
+    private static boolean isSpace(byte b){
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    // true if the current token is exactly s
+    private boolean is(String s){
+        int len = tokEnd - tokStart, i;
+        if(len != s.length()){
+            return false;
+        }
+        for(i = 0; i < len; i++){
+            if(buf[tokStart+i] != s.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // true if the current token starts with s
+    private boolean startsWith(String s){
+        int i;
+        if(tokEnd - tokStart < s.length()){
+            return false;
+        }
+        for(i = 0; i < s.length(); i++){
+            if(buf[tokStart+i] != s.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // a number for the current token that is the same for the same chain name
+    private int hashToken(){
+        int h = 0, i;
+        for(i = tokStart; i < tokEnd; i++){
+            h = 31*h + buf[i];
+        }
+        return h;
+    }
+
+    // the current token as an integer (missing, '.' or '?', gives def)
+    private int intToken(int def){
+        int val = 0, i;
+        boolean neg = false, any = false;
+        for(i = tokStart; i < tokEnd; i++){
+            if(buf[i] >= '0' && buf[i] <= '9'){
+                val = val*10 + (buf[i] - '0');
+                any = true;
+            }else if(buf[i] == '-'){
+                neg = true;
+            }
+        }
+        if(!any){
+            return def;
+        }
+        return neg ? -val : val;
+    }
+
+    // the current token as a double, a standard uncertainty in brackets like 1.234(5) is dropped
+    private double doubleToken(){
+        long val = 0;
+        int dec = -1, i, digits = 0;
+        boolean neg = false;
+        byte b;
+        for(i = tokStart; i < tokEnd; i++){
+            b = buf[i];
+            if(b >= '0' && b <= '9'){
+                val = val*10 + (b - '0');
+                digits++;
+                if(dec >= 0){
+                    dec++;
+                }
+            }else if(b == '.'){
+                dec = 0;
+            }else if(b == '-'){
+                neg = true;
+            }else if(b == '('){
+                i = tokEnd;
+            }else if(b != '+'){
+                // an exponent or something unusual, let Java sort it out
+                return Double.parseDouble(new String(buf, tokStart, tokEnd - tokStart, java.nio.charset.StandardCharsets.ISO_8859_1).replaceAll("\\(.*\\)", ""));
+            }
+        }
+        if(digits > 17 || dec > 8){
+            return Double.parseDouble(new String(buf, tokStart, tokEnd - tokStart, java.nio.charset.StandardCharsets.ISO_8859_1).replaceAll("\\(.*\\)", ""));
+        }
+        double d = (dec > 0) ? val/POW10[dec] : (double)val;
+        return neg ? -d : d;
+    }
+
+    private static final double POW10[] = {1.0, 10.0, 100.0, 1000.0, 10000.0, 100000.0, 1000000.0, 10000000.0, 100000000.0};
+}
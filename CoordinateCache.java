@@ -0,0 +1,166 @@
+/*
+ * CoordinateCache
+ *
+ * This class keeps the parsed coordinates of a structure in a small binary file next to it (the *.pdb file
+ * with .bhc added on), so running Reader3 on the same protien again with different switches does not have to
+ * read the text again. The cache is written after the first run and memory mapped on the runs after that.
+ *
+ * Layout (big endian):
+ * 0  int    magic "BHC1"
+ * 4  int    version
+ * 8  long   length of the coordinate file the cache was made from
+ * 16 long   last modified time of that file
+ * 24 int    START
+ * 28 int    END
+ * 32 int    which atoms were decoded (see PdbAtomParser.parseMask)
+ * 36 int    length of the chain (proLen)
+ * 40 int    the chain
+ * 44 int    the number of atoms
+ * 48        the sequence, one byte per residue, padded to 8 bytes
+ * then      (END-START) ints, the roles each residue has (see AtomTable.roleMask), padded to 8 bytes
+ * then      three columns of doubles, x, y and z of every atom in the order of the AtomTable
+ *
+ * The cache is up to date if the coordinate file has the same length and time as when it was written, it covers
+ * residues START to END and it has every atom the switches need. Otherwise the file is read and the cache is written again.
+ */
+
+import java.io.*; // needed for input and output
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public class CoordinateCache
+{
+    private static final int MAGIC = ('B' << 24) | ('H' << 16) | ('C' << 8) | '1';
+    private static final int VERSION = 2;
+    private static final int HEADER = 48; // bytes before the sequence
+
+    /*
+     * cacheName
+     * takes String
+     * returns String
+     * input: (the name of the coordinate file)
+     *
+     * Returns the name of the cache file for the coordinate file
+     */
+    public static String cacheName(String ins){
+        return ins + ".bhc";
+    }
+
+    /*
+     * load
+     * takes String, int, int, int, AtomTable
+     * returns char[]
+     * input: (the name of the coordinate file, start residue, end residue, which atoms are needed (see PdbAtomParser.parseMask),
+     *      the table to put the atoms in)
+     *
+     * If there is an up to date cache the table is filled from it and the sequence is returned.
+     * Returns null if there is no cache or it can not be used (or read), then the coordinate file has to be read.
+     */
+    public static char[] load(String ins, int START, int END, int mask, AtomTable atoms) throws
+    IOException
+    {
+        File source = new File(ins);
+        File cache = new File(cacheName(ins));
+        if(!cache.isFile() || cache.length() < HEADER){
+            return null;
+        }
+        MappedByteBuffer buf;
+        try(FileChannel ch = FileChannel.open(cache.toPath())){
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }catch(IOException e){
+            // the cache is only there to save time, the coordinate file is read instead
+            System.out.println("Error in CoordinateCache: could not read " + cache + " (" + e.getMessage() + "), reading " + ins + " instead");
+            return null;
+        }
+
+        int start = buf.getInt(24), end = buf.getInt(28), proLen = buf.getInt(36), count = buf.getInt(44), i, a, m;
+        if(buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION
+            || buf.getLong(8) != source.length() || buf.getLong(16) != source.lastModified()
+            || start > START || end < END || (buf.getInt(32) & mask) != mask){
+            return null;
+        }
+        int seqBytes = (proLen + 7) & ~7, roleBytes = (4*(end - start) + 7) & ~7;
+        if(buf.capacity() != HEADER + seqBytes + roleBytes + 24L*count){
+            return null;
+        }
+
+        char seq[] = new char[proLen];
+        for(i = 0; i < proLen; i++){
+            seq[i] = (char)(buf.get(HEADER + i) & 0xff);
+        }
+        // skips the atoms of the residues of the cache before START, then reads START to END
+        int roles = HEADER + seqBytes, first = 0;
+        for(i = 0; i < START - start; i++){
+            first += Integer.bitCount(buf.getInt(roles + 4*i));
+        }
+        buf.position(roles + roleBytes);
+        DoubleBuffer cols = buf.asDoubleBuffer();
+        a = first;
+        for(i = 0; i < END - START; i++){
+            for(m = buf.getInt(roles + 4*(START - start + i)); m != 0; m &= m - 1){
+                atoms.put(Integer.numberOfTrailingZeros(m), i, cols.get(a), cols.get(count + a), cols.get(2*count + a));
+                a++;
+            }
+        }
+        return seq;
+    }
+
+    /*
+     * save
+     * takes String, int, int, int, char, char[], AtomTable
+     * returns boolean
+     * input: (the name of the coordinate file, start residue, end residue, which atoms were decoded, the chain, the sequence,
+     *      the atoms of residues START to END)
+     *
+     * Writes the cache for the coordinate file. It is written to a temporary file first and then moved
+     * into place, so a run that is stopped half way never leaves a broken cache behind. The cache is only there
+     * to save time, so if it can not be written (a read only folder, a full disk) that is reported and the run
+     * goes on without it. Returns true if the cache was written.
+     */
+    public static boolean save(String ins, int START, int END, int mask, char chain, char seq[], AtomTable atoms){
+        File source = new File(ins);
+        File cache = new File(cacheName(ins));
+        File tmp = new File(cacheName(ins) + ".tmp");
+        int seqBytes = (seq.length + 7) & ~7, roleBytes = (4*(END - START) + 7) & ~7, count = atoms.atoms(), i, a;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + seqBytes + roleBytes + 24*count);
+
+        buf.putInt(MAGIC).putInt(VERSION).putLong(source.length()).putLong(source.lastModified());
+        buf.putInt(START).putInt(END).putInt(mask).putInt(seq.length).putInt(chain).putInt(count);
+        for(i = 0; i < seq.length; i++){
+            buf.put((byte)seq[i]);
+        }
+        buf.position(HEADER + seqBytes);
+        for(i = 0; i < END - START; i++){
+            buf.putInt(atoms.roleMask(i));
+        }
+        buf.position(HEADER + seqBytes + roleBytes);
+        DoubleBuffer cols = buf.asDoubleBuffer();
+        for(a = 0; a < count; a++){
+            cols.put(a, atoms.atomX(a));
+            cols.put(count + a, atoms.atomY(a));
+            cols.put(2*count + a, atoms.atomZ(a));
+        }
+        buf.rewind();
+
+        try{
+            try(FileOutputStream out = new FileOutputStream(tmp)){
+                FileChannel ch = out.getChannel();
+                while(buf.hasRemaining()){
+                    ch.write(buf);
+                }
+            }
+            Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }catch(IOException e){
+            System.out.println("Error in CoordinateCache: could not write " + cache + " (" + e.getMessage() + "), going on without it");
+            if(tmp.isFile()){
+                tmp.delete(); // a half written cache
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * CorpusStore
+ *
+ * This class keeps a whole corpus of parsed structures (thousands of beta helices) in one file, so what-if runs
+ * over the corpus do not have to read every *.pdb file again. The file is memory mapped and the AtomTable of a
+ * structure is a view straight onto the mapped columns, the coordinates are never copied onto the heap and the
+ * store opens again in the next run just as it was left.
+ *
+ * Making or adding to a store:
+ *      java CorpusStore [-single] corpus.bhs files, directories or @lists
+ * (directories and @lists as in pdbConvert, *.cif files too), and listing what is in it:
+ *      java CorpusStore corpus.bhs
+ * Reader3 reads its structure out of the store when CorpusOn is switched on.
+ *
+ * Every structure is the first chain of its file, all of its residues, with every atom Reader3 can use
+ * (PdbAtomParser.PARSE_ALL). They are found by the name of the file (without the directory and .gz) and the chain.
+ *
+ * Layout (big endian):
+ * 0  int    magic "BHS1"
+ * 4  int    version
+ * 8  int    bytes per coordinate (8 for doubles, 4 for floats)
+ * 12 int    the number of structures
+ * 16 long   where the index starts (the end of the structures)
+ * 24        (unused up to 64)
+ * 64        the structures one after the other, each one is
+ *           the sequence (one byte per residue), the role masks (an int per residue), the offsets (an int per residue
+ *           and one more), the role column (a byte per atom) and the x, y and z columns, each padded to 8 bytes
+ * then      the index, for every structure: where it starts (long), START, END, which atoms (mask), the length of the
+ *           chain, the number of atoms, the chain, the length of the name (ints) and the name, padded to 8 bytes
+ *
+ * A structure that is added again goes on the end and the index points at the new one. The whole file is mapped
+ * at once, so a store can not be bigger than 2 GB.
+ */
+
+import java.io.*; // needed for input and output
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel; // needed for memory mapping the store
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService; // needed for reading many files at once
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CorpusStore
+{
+    private static final int MAGIC = ('B' << 24) | ('H' << 16) | ('S' << 8) | '1';
+    private static final int VERSION = 1;
+    private static final int HEADER = 64; // bytes before the first structure
+    private static final int ENTRY = 36; // bytes of an index entry before the name
+
+    private final String name;
+    private final RandomAccessFile file;
+    private final FileChannel ch;
+    private final boolean write;
+    private final boolean single; // the coordinates are floats
+    private long end; // where the next structure goes (the index is written there when the store is closed)
+    private boolean changed = false;
+    private MappedByteBuffer map = null;
+
+    // the index
+    private int count = 0;
+    private long at[] = new long[16]; // where each structure starts
+    private int start[] = new int[16], stop[] = new int[16], mask[] = new int[16], proLen[] = new int[16], atoms[] = new int[16];
+    private char chain[] = new char[16];
+    private String id[] = new String[16];
+    private final HashMap<String, Integer> byKey = new HashMap<String, Integer>(); // "name chain" to the structure
+    private final HashMap<String, Integer> byId = new HashMap<String, Integer>(); // name to its first chain
+
+    /*
+     * main
+     *
+     * Adds the files named on the command line to the store (read in parallel, one per core),
+     * or lists what is in the store if no files are given
+     */
+    public static void main(String args[]) throws
+    IOException
+    {
+        int i = 0, k;
+        boolean single = false;
+        if(i < args.length && args[i].equals("-single")){
+            single = true; // a new store keeps the coordinates as floats
+            i++;
+        }
+        String name = (i < args.length) ? args[i++] : "corpus.bhs";
+        CorpusStore store = open(name, i < args.length, single);
+        if(i < args.length){
+            addAll(store, pdbConvert.listFiles(Arrays.copyOfRange(args, i, args.length), true));
+        }else{
+            for(k = 0; k < store.size(); k++){
+                System.out.println(store.id(k) + " " + store.chain(k) + ": residues " + store.start(k) + "-" + (store.end(k) - 1) + ", " + store.atomCount(k) + " atoms");
+            }
+            System.out.println(store.size() + " structure(s) in " + name);
+        }
+        store.close();
+    }
+
+    /*
+     * addAll
+     * takes CorpusStore, List<File>
+     * returns int
+     * input: (the store, the coordinate files to add)
+     *
+     * Reads the files on a pool of threads (one per core) and adds them to the store as they are done.
+     * A file that fails is reported and the rest carry on. Returns the number of files that were added.
+     */
+    public static int addAll(CorpusStore store, List<File> files) throws
+    IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+        List<Future<?>> jobs = new ArrayList<Future<?>>();
+        int i, done = 0;
+        for(File g : files){
+            final File in = g;
+            jobs.add(pool.submit(() -> {
+                store.add(in.getPath());
+                return null;
+            }));
+        }
+        for(i = 0; i < jobs.size(); i++){
+            try{
+                jobs.get(i).get();
+                done++;
+            }catch(Exception e){
+                Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                System.out.println("Error in CorpusStore: " + files.get(i) + ": " + cause);
+            }
+        }
+        pool.shutdown();
+        System.out.println("Added " + done + " of " + files.size() + " file(s) to " + store.name);
+        return done;
+    }
+
+    /*
+     * open
+     * takes String, boolean, boolean
+     * returns CorpusStore
+     * input: (the store file, is it going to be added to, keep the coordinates as floats (only used for a new store))
+     *
+     * Opens a store. If it is going to be added to and it is not there yet an empty one is made.
+     */
+    public static CorpusStore open(String name, boolean write, boolean single) throws
+    IOException,
+    FileNotFoundException
+    {
+        File f = new File(name);
+        if(write && !f.exists()){
+            try(RandomAccessFile raf = new RandomAccessFile(f, "rw")){
+                ByteBuffer head = ByteBuffer.allocate(HEADER);
+                head.putInt(MAGIC).putInt(VERSION).putInt(single ? 4 : 8).putInt(0).putLong(HEADER);
+                head.rewind();
+                raf.getChannel().write(head, 0);
+            }
+        }
+        return new CorpusStore(name, write);
+    }
+
+    // reads the header and the index
+    private CorpusStore(String name, boolean write) throws
+    IOException
+    {
+        this.name = name;
+        this.write = write;
+        file = new RandomAccessFile(name, write ? "rw" : "r");
+        ch = file.getChannel();
+        ByteBuffer head = ByteBuffer.allocate(HEADER);
+        while(head.hasRemaining() && ch.read(head, head.position()) > 0){
+        }
+        if(head.getInt(0) != MAGIC || head.getInt(4) != VERSION){
+            file.close();
+            throw new IOException(name + " is not a corpus store");
+        }
+        single = (head.getInt(8) == 4);
+        int n = head.getInt(12), k, len;
+        end = head.getLong(16);
+
+        ByteBuffer index = ByteBuffer.allocate((int)(ch.size() - end));
+        while(index.hasRemaining() && ch.read(index, end + index.position()) > 0){
+        }
+        index.flip();
+        byte bytes[];
+        for(k = 0; k < n; k++){
+            index(index.getLong(), index.getInt(), index.getInt(), index.getInt(), index.getInt(), index.getInt(), (char)index.getInt(), null);
+            len = index.getInt();
+            bytes = new byte[len];
+            index.get(bytes);
+            index.position(index.position() + (pad(ENTRY + len) - ENTRY - len));
+            id[k] = new String(bytes, StandardCharsets.UTF_8);
+            key(k);
+        }
+        if(!write){
+            map();
+        }
+    }
+
+    /*
+     * find
+     * takes String, char
+     * returns int
+     * input: (the name of the structure (its file name), the chain)
+     *
+     * Returns which structure it is in the store, -1 if it is not there
+     */
+    public synchronized int find(String id, char chain){
+        Integer k = byKey.get(id + " " + chain);
+        return (k == null) ? -1 : k;
+    }
+
+    /*
+     * find
+     * takes String
+     * returns int
+     * input: (the name of the structure)
+     *
+     * Returns the first chain of the structure (the one Reader3 reads), -1 if it is not there
+     */
+    public synchronized int find(String id){
+        Integer k = byId.get(PdbInput.baseName(new File(id).getName()));
+        return (k == null) ? -1 : k;
+    }
+
+    /*
+     * size, id, chain, start, end, mask, atomCount
+     * takes int (except size)
+     * input: (which structure)
+     *
+     * What the index says about a structure: the residues it has are start to end-1,
+     * mask is which atoms were read (see PdbAtomParser.parseMask)
+     */
+    public synchronized int size(){
+        return count;
+    }
+
+    public synchronized String id(int k){
+        return id[k];
+    }
+
+    public synchronized char chain(int k){
+        return chain[k];
+    }
+
+    public synchronized int start(int k){
+        return start[k];
+    }
+
+    public synchronized int end(int k){
+        return stop[k];
+    }
+
+    public synchronized int mask(int k){
+        return mask[k];
+    }
+
+    public synchronized int atomCount(int k){
+        return atoms[k];
+    }
+
+    /*
+     * seq
+     * takes int
+     * returns char[]
+     * input: (which structure)
+     *
+     * Returns the sequence of a structure, seq[r-1] is residue r
+     */
+    public synchronized char[] seq(int k) throws IOException {
+        ByteBuffer m = mapped(k);
+        char seq[] = new char[proLen[k]];
+        int i, base = (int)at[k];
+        for(i = 0; i < seq.length; i++){
+            seq[i] = (char)(m.get(base + i) & 0xff);
+        }
+        return seq;
+    }
+
+    /*
+     * atoms
+     * takes int, int, int
+     * returns AtomTable
+     * input: (which structure, start residue, end residue)
+     *
+     * Returns residues START to END-1 of a structure as a read only AtomTable that reads the mapped store directly.
+     * Returns null if the structure does not have all of those residues.
+     */
+    public synchronized AtomTable atoms(int k, int START, int END) throws IOException {
+        if(START < start[k] || END > stop[k] || END < START){
+            return null;
+        }
+        ByteBuffer m = mapped(k);
+        int len = stop[k] - start[k], p = single ? 4 : 8;
+        int rolesAt = (int)at[k] + pad(proLen[k]);
+        int offAt = rolesAt + pad(4*len);
+        int roleAt = offAt + pad(4*(len + 1));
+        int xAt = roleAt + pad(atoms[k]);
+        int yAt = xAt + pad(p*atoms[k]);
+        int zAt = yAt + pad(p*atoms[k]);
+        int skip = START - start[k];
+        return AtomTable.view(m, END - START, single, offAt + 4*skip, rolesAt + 4*skip, roleAt, xAt, yAt, zAt);
+    }
+
+    /*
+     * add
+     * takes String
+     * returns int
+     * input: (the coordinate file)
+     *
+     * Reads the first chain of the file (*.pdb, *.ent, *.cif, or any of them .gz) and adds it to the store.
+     * The reading is done without holding the store, so many files can be read at once. Returns which structure it is.
+     */
+    public int add(String ins) throws
+    IOException,
+    FileNotFoundException
+    {
+        int START, END;
+        char seq[];
+        char c = ' ';
+        AtomTable t;
+        if(CifAtomSiteReader.isCif(ins)){
+            // the length of the chain is only known at the end of the file, the reader holds on to the atoms until then
+            CifAtomSiteReader cif = CifAtomSiteReader.readChain(ins, PdbAtomParser.PARSE_ALL, single);
+            seq = cif.seq;
+            c = cif.chain;
+            START = 1;
+            END = cif.residues + 1;
+            t = cif.atoms;
+        }else{
+            ByteBuffer pdb = PdbInput.load(ins);
+            StructureIndex index = StructureIndex.scan(pdb);
+            if(index.atomStart < 0){
+                throw new IOException("no ATOM records in " + ins);
+            }
+            seq = index.seq;
+            c = index.chain;
+            START = Math.max(1, index.firstRes);
+            END = Math.min(index.lastRes, seq.length) + 1;
+            t = new AtomTable(END - START, single);
+            PdbAtomParser.parseAtoms(pdb, (START <= index.lastRes && index.resOffset[START] >= 0) ? index.resOffset[START] : index.atomStart, START, END, PdbAtomParser.PARSE_ALL, seq, t);
+        }
+        return add(PdbInput.baseName(new File(ins).getName()), c, START, END, PdbAtomParser.PARSE_ALL, seq, t);
+    }
+
+    /*
+     * add
+     * takes String, char, int, int, int, char[], AtomTable
+     * returns int
+     * input: (the name of the structure, the chain, start residue, end residue, which atoms were read, the sequence, the atoms)
+     *
+     * Writes a structure on the end of the store and puts it in the index. Returns which structure it is.
+     */
+    public synchronized int add(String name, char chain, int START, int END, int mask, char seq[], AtomTable t) throws IOException {
+        if(!write){
+            throw new IOException(this.name + " was opened read only");
+        }
+        int len = END - START, n = t.atoms(), p = single ? 4 : 8, i, a, base = t.first(0);
+        ByteBuffer b = ByteBuffer.allocate(pad(seq.length) + pad(4*len) + pad(4*(len + 1)) + pad(n) + 3*pad(p*n));
+        for(i = 0; i < seq.length; i++){
+            b.put((byte)seq[i]);
+        }
+        b.position(pad(b.position()));
+        for(i = 0; i < len; i++){
+            b.putInt(t.roleMask(i));
+        }
+        b.position(pad(b.position()));
+        for(i = 0; i <= len; i++){
+            b.putInt(t.first(i) - base);
+        }
+        b.position(pad(b.position()));
+        for(a = base; a < base + n; a++){
+            b.put((byte)t.atomRole(a));
+        }
+        b.position(pad(b.position()));
+        for(i = 0; i < 3; i++){
+            for(a = base; a < base + n; a++){
+                if(single){
+                    b.putFloat((float)((i == 0) ? t.atomX(a) : (i == 1) ? t.atomY(a) : t.atomZ(a)));
+                }else{
+                    b.putDouble((i == 0) ? t.atomX(a) : (i == 1) ? t.atomY(a) : t.atomZ(a));
+                }
+            }
+            b.position(pad(b.position()));
+        }
+        b.rewind();
+        long where = end;
+        while(b.hasRemaining()){
+            where += ch.write(b, where);
+        }
+        index(end, START, END, mask, seq.length, n, chain, name);
+        end = where;
+        changed = true;
+        return count - 1;
+    }
+
+    /*
+     * close
+     * takes nothing
+     * returns void
+     * input: ()
+     *
+     * Writes the index and the header if anything was added and closes the file. The AtomTables
+     * of the store can still be used after it is closed (the mapping stays until they are gone).
+     */
+    public synchronized void close() throws IOException {
+        if(changed){
+            int size = 0, k;
+            byte bytes[][] = new byte[count][];
+            for(k = 0; k < count; k++){
+                bytes[k] = id[k].getBytes(StandardCharsets.UTF_8);
+                size += pad(ENTRY + bytes[k].length);
+            }
+            ByteBuffer index = ByteBuffer.allocate(size);
+            for(k = 0; k < count; k++){
+                index.putLong(at[k]).putInt(start[k]).putInt(stop[k]).putInt(mask[k]).putInt(proLen[k]).putInt(atoms[k]).putInt(chain[k]);
+                index.putInt(bytes[k].length).put(bytes[k]);
+                index.position(pad(index.position()));
+            }
+            index.rewind();
+            long where = end;
+            while(index.hasRemaining()){
+                where += ch.write(index, where);
+            }
+            ch.truncate(where);
+            ByteBuffer head = ByteBuffer.allocate(12);
+            head.putInt(count).putLong(end);
+            head.rewind();
+            ch.write(head, 12);
+            ch.force(true);
+            changed = false;
+        }
+        ch.close();
+        file.close();
+    }
+
+    // puts a structure in the index (the name is filled in by the caller if it is null)
+    private void index(long where, int START, int END, int m, int n, int atomCount, char c, String name){
+        if(count == at.length){
+            at = Arrays.copyOf(at, 2*count);
+            start = Arrays.copyOf(start, 2*count);
+            stop = Arrays.copyOf(stop, 2*count);
+            mask = Arrays.copyOf(mask, 2*count);
+            proLen = Arrays.copyOf(proLen, 2*count);
+            atoms = Arrays.copyOf(atoms, 2*count);
+            chain = Arrays.copyOf(chain, 2*count);
+            id = Arrays.copyOf(id, 2*count);
+        }
+        at[count] = where;
+        start[count] = START;
+        stop[count] = END;
+        mask[count] = m;
+        proLen[count] = n;
+        atoms[count] = atomCount;
+        chain[count] = c;
+        id[count] = name;
+        count++;
+        if(name != null){
+            key(count - 1);
+        }
+    }
+
+    // puts a structure in the lookup tables, a structure added again replaces the old one
+    private void key(int k){
+        Integer old = byId.get(id[k]);
+        byKey.put(id[k] + " " + chain[k], k);
+        if(old == null || chain[old] == chain[k]){
+            byId.put(id[k], k);
+        }
+    }
+
+    // the mapping, made again if structure k was added after it was made
+    private ByteBuffer mapped(int k) throws IOException {
+        if(map == null || at[k] >= map.capacity()){
+            map();
+        }
+        return map;
+    }
+
+    // maps the structures (everything before the index)
+    private void map() throws IOException {
+        if(end > Integer.MAX_VALUE){
+            throw new IOException(name + " is over 2 GB, split the corpus into more than one store");
+        }
+        map = ch.map(FileChannel.MapMode.READ_ONLY, 0, end);
+    }
+
+    // rounds up to a multiple of 8 bytes
+    private static int pad(int n){
+        return (n + 7) & ~7;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * DistanceKernels
+ *
+ * This class does the distance loops that the geometry spends its time in, over flat coordinate columns
+ * (x[i], y[i], z[i], see AtomTable.roleColumn) instead of one atom at a time:
+ *
+ * squared  the squared distances from one point to a run of atoms (the C alpha band of CaDistances and the
+ *          donor to acceptor windows of getHbond)
+ * nearest  the atom of a run that is closest to a point (the C alphas of one cell of a CaGrid, which is how a
+ *          Monte Carlo point or a voxel finds its closest C alpha)
+ *
+ * This is the plain Java version. If the VectorDistanceKernels subclass (in vector/, built on its own, see
+ * there) is on the class path and the JVM was started with --add-modules jdk.incubator.vector it is loaded
+ * instead, which does the same loops a SIMD register at a time. It is looked up by name when the class is
+ * first used so nothing else needs the incubator module to compile or run, and anything that goes wrong
+ * loading it (or not having built it) leaves this version in place.
+ *
+ * Both versions add up the squares in the same order and neither uses fma, so they give the same bits,
+ * and nearest picks the first atom when two are the same distance away (the same as the old loops).
+ */
+
+public class DistanceKernels
+{
+    private static final DistanceKernels KERNELS = load();
+
+    // the vector kernels if they can be loaded and are wider than one lane, this class if not
+    private static DistanceKernels load(){
+        try{
+            DistanceKernels k = (DistanceKernels)Class.forName("VectorDistanceKernels").getDeclaredConstructor().newInstance();
+            if(k.lanes() > 1){
+                return k;
+            }
+        }catch(Throwable e){
+            // no incubator module (or no vector class), the scalar loops below are used
+        }
+        return new DistanceKernels();
+    }
+
+    /*
+     * get
+     * takes nothing
+     * returns DistanceKernels
+     * input: ()
+     *
+     * Returns the kernels chosen at startup
+     */
+    public static DistanceKernels get(){
+        return KERNELS;
+    }
+
+    /*
+     * lanes
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how many distances the kernels work out at a time (1 for these)
+     */
+    public int lanes(){
+        return 1;
+    }
+
+    /*
+     * squared
+     * takes double, double, double, double[], double[], double[], int, int, double[], int
+     * returns void
+     * input: (x, y, z of the point, the x, y and z columns, the first atom, one past the last atom,
+     *      where the distances go, where the first one goes)
+     *
+     * Puts the squared distance from the point to atom i in out[at + i - from], for i = from to to-1
+     */
+    public void squared(double px, double py, double pz, double x[], double y[], double z[], int from, int to, double out[], int at){
+        int i;
+        double dx, dy, dz;
+        for(i = from; i < to; i++){
+            dx = px - x[i];
+            dy = py - y[i];
+            dz = pz - z[i];
+            out[at + i - from] = dx*dx + dy*dy + dz*dz;
+        }
+    }
+
+    /*
+     * nearest
+     * takes double, double, double, double[], double[], double[], int, int
+     * returns int
+     * input: (x, y, z of the point, the x, y and z columns, the first atom, one past the last atom)
+     *
+     * Returns the atom from to to-1 closest to the point (the first one on a tie), -1 if there are none
+     */
+    public int nearest(double px, double py, double pz, double x[], double y[], double z[], int from, int to){
+        int i, best = -1;
+        double d, dx, dy, dz, bestD = Double.POSITIVE_INFINITY;
+        for(i = from; i < to; i++){
+            dx = px - x[i];
+            dy = py - y[i];
+            dz = pz - z[i];
+            d = dx*dx + dy*dy + dz*dz;
+            if(d < bestD){
+                bestD = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+}
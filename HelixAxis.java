@@ -0,0 +1,374 @@
+/*
+ * HelixAxis
+ *
+ * This class is a second way of telling whether a point is inside the helix, next to the planes of CBisInside.
+ * Instead of voting over the planes to the neighbouring C alphas it works in cylindrical coordinates around the
+ * axis of the helix:
+ *
+ * The axis is fitted once. The whole C alpha trace gives the principal axis (the direction the C alphas are spread
+ * out the most along, through their centre). Then it is refined rung by rung: every residue gets the centre of the
+ * rung it is in (the C alphas one period around it, the period comes from the rung map) and the direction from the
+ * centre of the rung below to the centre of the rung above.
+ *
+ * Around that local axis the rung is a polygon (its C alphas, in order). How far the polygon is from the centre is
+ * kept for BINS directions around the axis, measured from the residue's own C alpha.
+ *
+ * A point is then inside if its distance from the local axis is less than the polygon's at the same angle, which is
+ * a few multiplications and one lookup with no search for neighbours, and does not care which way the helix turns.
+ * In strict mode the point also has to be between the lowest and highest C alpha along the principal axis (the caps).
+ *
+ * The axis is kept by the AtomTable until a C alpha is moved (see AtomTable.axis).
+ */
+
+public class HelixAxis
+{
+    public static final int BINS = 36; // how many directions around the axis the rung polygons are kept for
+
+    private final int len;
+    private final double centre[] = new double[3]; // the centre of all the C alphas
+    private final double dir[] = new double[3]; // the principal axis (from the first residue towards the last)
+    private double low, high; // the lowest and highest C alpha along the principal axis
+
+    // for residue i, at 3*i: the centre of its rung, the local axis and the two directions across it
+    // (u points at the residue's own C alpha, v is the axis times u)
+    private final double c[], d[], u[], v[];
+    private final double radius[]; // radius[BINS*i + b] is how far the rung polygon of residue i is from its centre at angle b
+    private final double height[]; // where the centre of each rung is along the principal axis
+    private final int byHeight[]; // the residues in order of height (for points that do not come with a residue)
+
+    /*
+     * HelixAxis
+     * takes AtomTable
+     * input: (the atoms (only the C alphas are used))
+     *
+     * Fits the axis and works out the rung polygons
+     */
+    public HelixAxis(AtomTable atoms){
+        len = atoms.length();
+        c = new double[3*len];
+        d = new double[3*len];
+        u = new double[3*len];
+        v = new double[3*len];
+        radius = new double[BINS*len];
+        height = new double[len];
+        int i, k, n, b, p, a, last = len - 1;
+        double ca[] = new double[3*len];
+        for(i = 0; i < len; i++){
+            ca[3*i] = atoms.x(AtomTable.CA, i);
+            ca[3*i+1] = atoms.y(AtomTable.CA, i);
+            ca[3*i+2] = atoms.z(AtomTable.CA, i);
+        }
+        principal(ca);
+
+        // the period of every residue, from the rung map (or the most common one if the residue has none)
+        RungMap rungs = atoms.rungs(RungMap.FAR);
+        int count[] = new int[RungMap.FAR + 1], period[] = new int[len], common = 0;
+        for(i = 0; i < len; i++){
+            p = (rungs.up(i) != 0) ? rungs.up(i) : rungs.down(i);
+            period[i] = p;
+            count[p]++;
+        }
+        for(k = 1; k <= RungMap.FAR; k++){
+            if(count[k] > count[common] || common == 0 && count[k] > 0){
+                common = k;
+            }
+        }
+        if(common == 0){
+            common = Math.max(len, 1); // no rungs at all, the whole chain is one
+        }
+
+        // the centre of every rung
+        int start[] = new int[len];
+        for(i = 0; i < len; i++){
+            p = Math.min((period[i] != 0) ? period[i] : common, len);
+            period[i] = p;
+            a = Math.max(0, Math.min(i - p/2, len - p));
+            start[i] = a;
+            for(k = a; k < a + p; k++){
+                c[3*i] += ca[3*k];
+                c[3*i+1] += ca[3*k+1];
+                c[3*i+2] += ca[3*k+2];
+            }
+            c[3*i] /= p;
+            c[3*i+1] /= p;
+            c[3*i+2] /= p;
+            height[i] = (c[3*i] - centre[0])*dir[0] + (c[3*i+1] - centre[1])*dir[1] + (c[3*i+2] - centre[2])*dir[2];
+        }
+
+        // the local axis, from the rung below to the rung above (the principal axis where they are the same rung)
+        double w[] = new double[3], m;
+        double pu[] = new double[Math.max(len, 1)], pv[] = new double[Math.max(len, 1)];
+        for(i = 0; i < len; i++){
+            int lo = Math.max(0, i - period[i]), hi = Math.min(last, i + period[i]);
+            for(k = 0; k < 3; k++){
+                w[k] = c[3*hi+k] - c[3*lo+k];
+            }
+            m = Math.sqrt(w[0]*w[0] + w[1]*w[1] + w[2]*w[2]);
+            if(m < 1e-6 || w[0]*dir[0] + w[1]*dir[1] + w[2]*dir[2] <= 0){
+                w[0] = dir[0];
+                w[1] = dir[1];
+                w[2] = dir[2];
+                m = 1.0;
+            }
+            for(k = 0; k < 3; k++){
+                d[3*i+k] = w[k]/m;
+            }
+            // u points from the centre at the residue's own C alpha, across the axis
+            for(k = 0; k < 3; k++){
+                w[k] = ca[3*i+k] - c[3*i+k];
+            }
+            m = w[0]*d[3*i] + w[1]*d[3*i+1] + w[2]*d[3*i+2];
+            for(k = 0; k < 3; k++){
+                w[k] -= m*d[3*i+k];
+            }
+            m = Math.sqrt(w[0]*w[0] + w[1]*w[1] + w[2]*w[2]);
+            if(m < 1e-6){
+                // the C alpha is on the axis, any direction across it will do
+                w[0] = (Math.abs(d[3*i]) < 0.9) ? 1.0 : 0.0;
+                w[1] = (Math.abs(d[3*i]) < 0.9) ? 0.0 : 1.0;
+                w[2] = 0.0;
+                m = w[0]*d[3*i] + w[1]*d[3*i+1];
+                for(k = 0; k < 3; k++){
+                    w[k] -= m*d[3*i+k];
+                }
+                m = Math.sqrt(w[0]*w[0] + w[1]*w[1] + w[2]*w[2]);
+            }
+            for(k = 0; k < 3; k++){
+                u[3*i+k] = w[k]/m;
+            }
+            v[3*i] = d[3*i+1]*u[3*i+2] - d[3*i+2]*u[3*i+1];
+            v[3*i+1] = d[3*i+2]*u[3*i] - d[3*i]*u[3*i+2];
+            v[3*i+2] = d[3*i]*u[3*i+1] - d[3*i+1]*u[3*i];
+
+            // the rung polygon across the axis, then how far it is from the centre in each direction
+            p = period[i];
+            for(k = 0; k < p; k++){
+                n = start[i] + k;
+                pu[k] = (ca[3*n] - c[3*i])*u[3*i] + (ca[3*n+1] - c[3*i+1])*u[3*i+1] + (ca[3*n+2] - c[3*i+2])*u[3*i+2];
+                pv[k] = (ca[3*n] - c[3*i])*v[3*i] + (ca[3*n+1] - c[3*i+1])*v[3*i+1] + (ca[3*n+2] - c[3*i+2])*v[3*i+2];
+            }
+            for(b = 0; b < BINS; b++){
+                radius[BINS*i + b] = ray(pu, pv, p, 2.0*Math.PI*b/BINS);
+            }
+        }
+
+        // the residues in order of height and the caps
+        Integer order[] = new Integer[len];
+        for(i = 0; i < len; i++){
+            order[i] = i;
+        }
+        java.util.Arrays.sort(order, (x, y) -> Double.compare(height[x], height[y]));
+        byHeight = new int[len];
+        for(i = 0; i < len; i++){
+            byHeight[i] = order[i];
+        }
+        low = Double.MAX_VALUE;
+        high = -Double.MAX_VALUE;
+        for(i = 0; i < len; i++){
+            m = (ca[3*i] - centre[0])*dir[0] + (ca[3*i+1] - centre[1])*dir[1] + (ca[3*i+2] - centre[2])*dir[2];
+            low = Math.min(low, m);
+            high = Math.max(high, m);
+        }
+    }
+
+    // fits the principal axis of the C alphas (the eigenvector of the largest eigenvalue of their spread)
+    private void principal(double ca[]){
+        int i, k, it;
+        double cov[] = new double[9], x, y, z, m;
+        for(i = 0; i < len; i++){
+            centre[0] += ca[3*i];
+            centre[1] += ca[3*i+1];
+            centre[2] += ca[3*i+2];
+        }
+        for(k = 0; k < 3; k++){
+            centre[k] /= Math.max(len, 1);
+        }
+        for(i = 0; i < len; i++){
+            x = ca[3*i] - centre[0];
+            y = ca[3*i+1] - centre[1];
+            z = ca[3*i+2] - centre[2];
+            cov[0] += x*x; cov[1] += x*y; cov[2] += x*z;
+            cov[4] += y*y; cov[5] += y*z;
+            cov[8] += z*z;
+        }
+        cov[3] = cov[1];
+        cov[6] = cov[2];
+        cov[7] = cov[5];
+        // power iteration, starting from the first C alpha to the last (already close to the axis)
+        if(len > 1){
+            dir[0] = ca[3*(len-1)] - ca[0];
+            dir[1] = ca[3*(len-1)+1] - ca[1];
+            dir[2] = ca[3*(len-1)+2] - ca[2];
+        }
+        if(dir[0] == 0 && dir[1] == 0 && dir[2] == 0){
+            dir[2] = 1.0;
+        }
+        double next[] = new double[3];
+        for(it = 0; it < 100; it++){
+            for(k = 0; k < 3; k++){
+                next[k] = cov[3*k]*dir[0] + cov[3*k+1]*dir[1] + cov[3*k+2]*dir[2];
+            }
+            m = Math.sqrt(next[0]*next[0] + next[1]*next[1] + next[2]*next[2]);
+            if(m == 0){
+                break;
+            }
+            for(k = 0; k < 3; k++){
+                dir[k] = next[k]/m;
+            }
+        }
+        m = Math.sqrt(dir[0]*dir[0] + dir[1]*dir[1] + dir[2]*dir[2]);
+        for(k = 0; k < 3; k++){
+            dir[k] /= m;
+        }
+        // points from the first residue towards the last
+        if(len > 1 && (ca[3*(len-1)] - ca[0])*dir[0] + (ca[3*(len-1)+1] - ca[1])*dir[1] + (ca[3*(len-1)+2] - ca[2])*dir[2] < 0){
+            for(k = 0; k < 3; k++){
+                dir[k] = -dir[k];
+            }
+        }
+    }
+
+    // how far out from the centre a ray at angle t meets the closed polygon (pu, pv), 0 if it does not
+    private static double ray(double pu[], double pv[], int n, double t){
+        double cu = Math.cos(t), cv = Math.sin(t), best = 0.0;
+        double eu, ev, den, s, r;
+        int k, l;
+        for(k = 0; k < n; k++){
+            l = (k + 1) % n;
+            eu = pu[l] - pu[k];
+            ev = pv[l] - pv[k];
+            den = cu*ev - cv*eu;
+            if(Math.abs(den) < 1e-12){
+                continue;
+            }
+            r = (pu[k]*ev - pv[k]*eu)/den; // along the ray
+            s = (pu[k]*cv - pv[k]*cu)/den; // along the edge
+            if(r > 0 && s >= 0 && s <= 1 && r > best){
+                best = r;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * inside
+     * takes int, double, double, double, boolean
+     * returns boolean
+     * input: (the residue whose rung the point is in (usually the closest C alpha), x, y, z of the point,
+     *      put caps on the helix?)
+     *
+     * True if the point is inside the rung polygon around the local axis
+     */
+    public boolean inside(int res, double x, double y, double z, boolean strict){
+        int at = 3*res;
+        if(strict){
+            double s = (x - centre[0])*dir[0] + (y - centre[1])*dir[1] + (z - centre[2])*dir[2];
+            if(s < low || s > high){
+                return false;
+            }
+        }
+        double wx = x - c[at], wy = y - c[at+1], wz = z - c[at+2];
+        double h = wx*d[at] + wy*d[at+1] + wz*d[at+2];
+        wx -= h*d[at];
+        wy -= h*d[at+1];
+        wz -= h*d[at+2];
+        double pu = wx*u[at] + wy*u[at+1] + wz*u[at+2];
+        double pv = wx*v[at] + wy*v[at+1] + wz*v[at+2];
+        double t = Math.atan2(pv, pu);
+        if(t < 0){
+            t += 2.0*Math.PI;
+        }
+        // the polygon's distance at this angle, in between the two directions it was kept for
+        double f = t*BINS/(2.0*Math.PI);
+        int b = (int)f;
+        f -= b;
+        b %= BINS;
+        double r = (1.0 - f)*radius[BINS*res + b] + f*radius[BINS*res + (b + 1) % BINS];
+        return pu*pu + pv*pv < r*r;
+    }
+
+    /*
+     * inside
+     * takes double, double, double, boolean
+     * returns boolean
+     * input: (x, y, z of the point, put caps on the helix?)
+     *
+     * Same as above for a point that does not come with a residue, it is tested against the rung whose centre
+     * is at the closest height along the axis
+     */
+    public boolean inside(double x, double y, double z, boolean strict){
+        return inside(rungAt(x, y, z), x, y, z, strict);
+    }
+
+    /*
+     * rungAt
+     * takes double, double, double
+     * returns int
+     * input: (x, y, z of the point)
+     *
+     * Returns the residue whose rung centre is closest in height along the axis to the point
+     */
+    public int rungAt(double x, double y, double z){
+        double s = (x - centre[0])*dir[0] + (y - centre[1])*dir[1] + (z - centre[2])*dir[2];
+        int lo = 0, hi = len - 1, mid;
+        while(lo < hi){
+            mid = (lo + hi) >>> 1;
+            if(height[byHeight[mid]] < s){
+                lo = mid + 1;
+            }else{
+                hi = mid;
+            }
+        }
+        if(lo > 0 && s - height[byHeight[lo-1]] < height[byHeight[lo]] - s){
+            lo--;
+        }
+        return byHeight[lo];
+    }
+
+    /*
+     * axis
+     * takes nothing
+     * returns double[]
+     * input: ()
+     *
+     * Returns the principal axis, a point on it (the centre of the C alphas) then its direction: {x, y, z, dx, dy, dz}
+     */
+    public double[] axis(){
+        return new double[]{centre[0], centre[1], centre[2], dir[0], dir[1], dir[2]};
+    }
+
+    /*
+     * local
+     * takes int
+     * returns double[]
+     * input: (residue index (0 is START))
+     *
+     * Returns the local axis of the residue's rung, the centre of the rung then the direction: {x, y, z, dx, dy, dz}
+     */
+    public double[] local(int res){
+        int at = 3*res;
+        return new double[]{c[at], c[at+1], c[at+2], d[at], d[at+1], d[at+2]};
+    }
+
+    /*
+     * cylindrical
+     * takes int, double, double, double
+     * returns double[]
+     * input: (the residue whose rung the point is in, x, y, z of the point)
+     *
+     * Returns the point in cylindrical coordinates around the local axis of the rung:
+     * {distance from the axis, angle from the residue's C alpha (radians, 0 to 2 pi), height above the rung centre}
+     */
+    public double[] cylindrical(int res, double x, double y, double z){
+        int at = 3*res;
+        double wx = x - c[at], wy = y - c[at+1], wz = z - c[at+2];
+        double h = wx*d[at] + wy*d[at+1] + wz*d[at+2];
+        wx -= h*d[at];
+        wy -= h*d[at+1];
+        wz -= h*d[at+2];
+        double pu = wx*u[at] + wy*u[at+1] + wz*u[at+2];
+        double pv = wx*v[at] + wy*v[at+1] + wz*v[at+2];
+        double t = Math.atan2(pv, pu);
+        return new double[]{Math.sqrt(pu*pu + pv*pv), (t < 0) ? t + 2.0*Math.PI : t, h};
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * MonteCarloVolume
+ *
+ * This class does the Monte Carlo integration of findVolume: points are thrown into the box around the
+ * C alphas and the volume of the helix is the box times the share of the points that land inside it.
+ * A point is inside if CBisInside says so when it is treated as a C beta of the closest C alpha
+ * (found with a CaGrid) or if it is inside the fitted helix axis (see HelixAxis).
+ *
+ * The points can be split over the threads of a fork-join pool. Every worker gets its own SplittableRandom,
+ * split off one made from the seed in worker order, so the same seed and number of workers always throw the
+ * same points and give the same volume. Each worker counts its own hits and the counts are only added up
+ * once the workers are done, so the workers never touch anything shared but the (read only) atoms.
+ * fixed and converge make one pool for all their points (converge hands it every batch).
+ *
+ * Instead of random points the box can be filled with a Halton sequence (the radical inverses of the point
+ * number in bases 2, 3 and 5), which covers it more evenly so the volume settles with fewer points. Point k
+ * is always the same point so the Halton volume does not depend on the workers at all.
+ *
+ * The points thrown so far are kept, so the volume comes with an error: a point is inside with chance p so
+ * the share inside has the binomial standard error sqrt(p(1-p)/n). converge throws the points in batches and
+ * stops once that error is a small enough part of the share (or it runs out of points). For Halton points the
+ * binomial error is an overestimate, they do better than independent points, so their interval is only a
+ * conservative bound (see isBound) and converge stops later than it has to.
+ *
+ * Everything the test needs (the frames or the axis and the C alpha grid, see CaGrid) is made before the workers
+ * start, the AtomTable makes them lazily and that is not safe to do from more than one thread.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom; // needed for a random stream per worker
+import java.util.concurrent.ForkJoinPool; // needed for the workers
+import java.util.concurrent.ForkJoinTask;
+
+public class MonteCarloVolume
+{
+    // where the points come from
+    public static final int RANDOM = 0; // a SplittableRandom stream per worker
+    public static final int HALTON = 1; // the Halton sequence
+
+    public static final int BATCH = 20000; // how many points converge throws between looking at the error
+    public static final int MOST = 5000000; // the most points converge throws
+    public static final double Z95 = 1.959963984540054; // how many standard errors either side make a 95% confidence interval
+
+    private final AtomTable atoms;
+    private final int len;
+    private final boolean strict, isLH, axis;
+    private final double max[] = new double[3];
+    private final double min[] = new double[3];
+    private final double x[], y[], z[]; // the C alpha columns
+    private final CaGrid grid; // finds the closest C alpha
+    private long hits = 0, thrown = 0; // the points inside and all the points so far
+    private int sampling = RANDOM; // where the points came from (see isBound)
+
+    /*
+     * MonteCarloVolume
+     * takes AtomTable, boolean, boolean, boolean
+     * input: (the atoms (only the C alphas are used), put caps on the helix? (see CBisInside),
+     *      is the helix left handed?, test the points against the helix axis instead of CBisInside?)
+     *
+     * Finds the box around the C alphas and makes everything the test needs
+     */
+    public MonteCarloVolume(AtomTable atoms, boolean strict, boolean isLH, boolean axis){
+        this.atoms = atoms;
+        this.strict = strict;
+        this.isLH = isLH;
+        this.axis = axis;
+        len = atoms.length();
+        x = atoms.roleColumn(AtomTable.CA, 0);
+        y = atoms.roleColumn(AtomTable.CA, 1);
+        z = atoms.roleColumn(AtomTable.CA, 2);
+        int i;
+        max[0] = -9000.0;
+        max[1] = -9000.0;
+        max[2] = -9000.0;
+        // Searches for the maximum range in all three orthogonal directions that the C alphas include
+        for(i = 0; i < len; i++){
+            if(x[i] > max[0]){
+                max[0] = x[i];
+            }
+            if(y[i] > max[1]){
+                max[1] = y[i];
+            }
+            if(z[i] > max[2]){
+                max[2] = z[i];
+            }
+        }
+        // Searches for the minimum range in all three directions that the C alphas include
+        min[0] = max[0];
+        min[1] = max[1];
+        min[2] = max[2];
+        for(i = 0; i < len; i++){
+            if(x[i] < min[0]){
+                min[0] = x[i];
+            }
+            if(y[i] < min[1]){
+                min[1] = y[i];
+            }
+            if(z[i] < min[2]){
+                min[2] = z[i];
+            }
+        }
+        if(axis){
+            atoms.axis();
+        }else{
+            atoms.frames();
+        }
+        grid = atoms.caGrid();
+    }
+
+    /*
+     * box
+     * takes int, double
+     * returns double
+     * input: (which coordinate (x = 0, y = 1, z = 2), a number from 0 to 1)
+     *
+     * Returns the coordinate that far across the box
+     */
+    public double box(int c, double u){
+        return u*(max[c]-min[c]) + min[c];
+    }
+
+    /*
+     * volume
+     * takes double
+     * returns double
+     * input: (the share of the points that were inside)
+     *
+     * Returns that share of the volume of the box, the monte carlo integration formula V = (in/total)*(space of possible values)
+     */
+    public double volume(double share){
+        return share*(max[0]-min[0])*(max[1]-min[1])*(max[2]-min[2]);
+    }
+
+    /*
+     * inside
+     * takes double, double, double
+     * returns boolean
+     * input: (x, y, z of the point)
+     *
+     * Returns true if the point is inside the helix
+     */
+    public boolean inside(double px, double py, double pz){
+        if(axis){
+            return atoms.axis().inside(px, py, pz, strict);
+        }
+        // the closest C alpha, the point is treated as its C beta
+        return atoms.frames().inside(grid.nearest(px, py, pz), px, py, pz, strict, isLH);
+    }
+
+    /*
+     * count
+     * takes int, SplittableRandom
+     * returns long
+     * input: (how many points, where the points come from)
+     *
+     * Throws the points on this thread and returns how many were inside
+     */
+    public long count(int points, SplittableRandom rand){
+        long in = 0;
+        int i;
+        double px, py, pz;
+        for(i = 0; i < points; i++){
+            px = box(0, rand.nextDouble());
+            py = box(1, rand.nextDouble());
+            pz = box(2, rand.nextDouble());
+            if(inside(px, py, pz)){
+                in++;
+            }
+        }
+        return in;
+    }
+
+    /*
+     * count
+     * takes int, ForkJoinPool, SplittableRandom
+     * returns long
+     * input: (how many points, the workers, where the streams of the workers are split off)
+     *
+     * Splits the points over the workers of the pool (the first points%workers get one more) and returns how many
+     * were inside. The same root and number of workers give the same answer every time.
+     */
+    public long count(int points, ForkJoinPool pool, SplittableRandom root){
+        List<ForkJoinTask<Long>> parts = new ArrayList<ForkJoinTask<Long>>();
+        long in = 0;
+        int w, workers = pool.getParallelism();
+        for(w = 0; w < workers; w++){
+            final SplittableRandom rand = root.split();
+            final int share = points/workers + ((w < points%workers) ? 1 : 0);
+            parts.add(pool.submit(() -> count(share, rand)));
+        }
+        for(ForkJoinTask<Long> part : parts){
+            in += part.join();
+        }
+        return in;
+    }
+
+    /*
+     * halton
+     * takes long, int
+     * returns long
+     * input: (the number of the first point, how many points)
+     *
+     * Throws Halton points first to first+points-1 on this thread and returns how many were inside
+     */
+    public long halton(long first, int points){
+        long in = 0, k;
+        for(k = first; k < first + points; k++){
+            // point 0 of the sequence is the corner of the box, so the points start at 1
+            if(inside(box(0, radicalInverse(k + 1, 2)), box(1, radicalInverse(k + 1, 3)), box(2, radicalInverse(k + 1, 5)))){
+                in++;
+            }
+        }
+        return in;
+    }
+
+    // the digits of k in the base, mirrored about the decimal point (0.d1 d2 d3 ... for k = ... d3 d2 d1)
+    private static double radicalInverse(long k, int base){
+        double f = 1.0, r = 0.0;
+        while(k > 0){
+            f /= base;
+            r += f*(k % base);
+            k /= base;
+        }
+        return r;
+    }
+
+    /*
+     * halton
+     * takes long, int, ForkJoinPool
+     * returns long
+     * input: (the number of the first point, how many points, the workers)
+     *
+     * Splits Halton points first to first+points-1 over the workers of the pool in runs and returns how many were inside
+     */
+    public long halton(long first, int points, ForkJoinPool pool){
+        List<ForkJoinTask<Long>> parts = new ArrayList<ForkJoinTask<Long>>();
+        long in = 0, from = first;
+        int w, workers = pool.getParallelism();
+        for(w = 0; w < workers; w++){
+            final long run = from;
+            final int share = points/workers + ((w < points%workers) ? 1 : 0);
+            parts.add(pool.submit(() -> halton(run, share)));
+            from += share;
+        }
+        for(ForkJoinTask<Long> part : parts){
+            in += part.join();
+        }
+        return in;
+    }
+
+    /*
+     * add
+     * takes long, long
+     * returns void
+     * input: (how many points were inside, how many points were thrown)
+     *
+     * Counts points that were thrown somewhere else (findVolume's single java.util.Random)
+     */
+    public void add(long in, long points){
+        hits += in;
+        thrown += points;
+    }
+
+    /*
+     * fixed
+     * takes int, int, long, int
+     * returns void
+     * input: (how many points, how many workers, the seed, RANDOM or HALTON)
+     *
+     * Throws that many points over the workers
+     */
+    public void fixed(int points, int workers, long seed, int sampling){
+        this.sampling = sampling;
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try{
+            if(sampling == HALTON){
+                add(halton(thrown, points, pool), points);
+            }else{
+                add(count(points, pool, new SplittableRandom(seed)), points);
+            }
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * converge
+     * takes double, int, long, int
+     * returns void
+     * input: (the standard error to stop at as a part of the volume, how many workers, the seed, RANDOM or HALTON)
+     *
+     * Throws points in batches of BATCH until the relative standard error of the volume is at most precision
+     * (or MOST points have been thrown). The same seed, workers and precision always stop at the same place.
+     * One pool of workers does all the batches.
+     */
+    public void converge(double precision, int workers, long seed, int sampling){
+        this.sampling = sampling;
+        SplittableRandom root = new SplittableRandom(seed);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try{
+            do{
+                if(sampling == HALTON){
+                    add(halton(thrown, BATCH, pool), BATCH);
+                }else{
+                    add(count(BATCH, pool, root), BATCH);
+                }
+            }while(thrown < MOST && !(hits > 0 && error()/volume() <= precision));
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * volume
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Returns the volume of the helix from the points so far
+     */
+    public double volume(){
+        return volume((double)hits/(double)thrown);
+    }
+
+    /*
+     * error
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Returns the standard error of the volume, the binomial error of the share inside sqrt(p(1-p)/n) times the box
+     */
+    public double error(){
+        double p = (double)hits/(double)thrown;
+        return volume(Math.sqrt(p*(1.0 - p)/(double)thrown));
+    }
+
+    /*
+     * low, high
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Return the ends of the 95% confidence interval of the volume (never below 0). For Halton points they are
+     * a conservative bound rather than an interval (see isBound)
+     */
+    public double low(){
+        return Math.max(volume() - Z95*error(), 0.0);
+    }
+
+    public double high(){
+        return volume() + Z95*error();
+    }
+
+    /*
+     * isBound
+     * takes nothing
+     * returns boolean
+     * input: ()
+     *
+     * True if the points were Halton points, then error, low and high are from the binomial error of independent
+     * points, which overestimates the error of the Halton volume, so low to high is wider than a true 95% interval
+     */
+    public boolean isBound(){
+        return sampling == HALTON;
+    }
+
+    /*
+     * points
+     * takes nothing
+     * returns long
+     * input: ()
+     *
+     * Returns how many points have been thrown
+     */
+    public long points(){
+        return thrown;
+    }
+}
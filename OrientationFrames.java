@@ -0,0 +1,212 @@
+/*
+ * OrientationFrames
+ *
+ * This class holds everything CBisInside needs to know about a residue that does not depend on the point
+ * being tested. CBisInside used to build the vectors from the closest C alpha to its neighbours along the chain
+ * and to the C alphas above and below, take their cross products and (in strict mode) look for the corners of
+ * the top and bottom rungs to make the caps, all over again for every point. All of that only depends on the
+ * C alphas, so it is worked out once per structure:
+ *
+ * For every residue
+ *   the position of its C alpha
+ *   the (up to) four cross products that point into the helix (upper right, upper left, lower left, lower right)
+ *   which of the four tests can be done (there has to be a C alpha above or below and on that side)
+ *   whether it is in a side loop (no C alpha above or below in the middle of the chain, never "in")
+ * For the whole helix
+ *   the bottom and top cap planes (normal and constant) and which side of each is "in"
+ *
+ * Testing a point is then at most four dot products with the cross products and two with the caps.
+ * The frames are kept by the AtomTable until a C alpha is moved (see AtomTable.frames).
+ */
+
+public class OrientationFrames
+{
+    // the four tests, the bits of tests[]
+    private static final int UPPER_RIGHT = 1;
+    private static final int UPPER_LEFT = 2;
+    private static final int LOWER_LEFT = 4;
+    private static final int LOWER_RIGHT = 8;
+
+    private final int len;
+    private final double ca[]; // ca[3*i] to ca[3*i+2] is the C alpha of residue i
+    private final double normal[]; // normal[12*i + 3*t] to normal[12*i + 3*t+2] is cross product t of residue i (t = 0 upper right, 1 upper left, 2 lower left, 3 lower right)
+    private final byte tests[]; // which of the four tests residue i has
+    private final boolean loop[]; // true if residue i is in a side loop
+
+    // the caps, normal then constant (the plane is n.x + d = 0), and which side is "in" (-1 below, 1 above, 0 neither)
+    private final double bottom[] = new double[4];
+    private final double top[] = new double[4];
+    private int bottomSide, topSide;
+
+    /*
+     * OrientationFrames
+     * takes AtomTable
+     * input: (the atoms (only the C alphas are used))
+     *
+     * Works out the frames of every residue and the caps
+     */
+    public OrientationFrames(AtomTable atoms){
+        len = atoms.length();
+        ca = new double[3*len];
+        normal = new double[12*len];
+        tests = new byte[len];
+        loop = new boolean[len];
+        RungMap rungs = atoms.rungs(RungMap.FAR);
+        int i, j, last = len - 1, Nplus, Nminus;
+        double CACAp1[] = new double[3]; // Vector that points from the C alpha to the next C alpha in the series
+        double CACAm1[] = new double[3]; // Vector that points from the C alpha to the previous one in the series
+        double CACApN[] = new double[3]; // Vector that points from the C alpha to the one directly above it
+        double CACAmN[] = new double[3]; // Vector that points from the C alpha to the one directly below it
+        for(j = 0; j < len; j++){
+            ca[3*j] = atoms.x(AtomTable.CA, j);
+            ca[3*j+1] = atoms.y(AtomTable.CA, j);
+            ca[3*j+2] = atoms.z(AtomTable.CA, j);
+        }
+        for(j = 0; j < len; j++){
+            Nplus = rungs.up(j);
+            Nminus = rungs.down(j);
+            // the vectors that do not exist stay 0, the same as CBisInside always had them
+            for(i = 0; i < 3; i++){
+                CACApN[i] = (Nplus != 0) ? ca[3*(j+Nplus)+i] - ca[3*j+i] : 0.0;
+                CACAmN[i] = (Nminus != 0) ? ca[3*(j-Nminus)+i] - ca[3*j+i] : 0.0;
+                CACAp1[i] = (j != last) ? ca[3*(j+1)+i] - ca[3*j+i] : 0.0;
+                CACAm1[i] = (j != 0) ? ca[3*(j-1)+i] - ca[3*j+i] : 0.0;
+            }
+            if(Nplus != 0 && j != 0){
+                tests[j] |= UPPER_RIGHT;
+                cross(CACAp1, CACApN, 12*j);
+            }
+            if(Nplus != 0 && j != last){
+                tests[j] |= UPPER_LEFT;
+                cross(CACApN, CACAm1, 12*j + 3);
+            }
+            if(Nminus != 0 && j != 0){
+                tests[j] |= LOWER_LEFT;
+                cross(CACAm1, CACAmN, 12*j + 6);
+            }
+            if(Nminus != 0 && j != last){
+                tests[j] |= LOWER_RIGHT;
+                cross(CACAmN, CACAp1, 12*j + 9);
+            }
+            // If there is no C alpha directly above and below but the residue is in the middle of
+            // the sequence then it must be in a side loop and therefore cannot be "in"
+            loop[j] = (Nplus == 0 || Nminus == 0) && (j+25 < last && j-25 > 0);
+        }
+        // the top cap starts from the corners of the bottom one (if it finds less than three the rest are left over)
+        double Corner[][] = new double[3][3];
+        bottomSide = cap(atoms, true, Corner, bottom);
+        topSide = cap(atoms, false, Corner, top);
+    }
+
+    // the cross product of a and b, into normal[at] to normal[at+2]
+    private void cross(double a[], double b[], int at){
+        normal[at] = a[1]*b[2] - b[1]*a[2];
+        normal[at+1] = a[2]*b[0] - b[2]*a[0];
+        normal[at+2] = a[0]*b[1] - b[0]*a[1];
+    }
+
+    /*
+     * cap
+     * takes AtomTable, boolean, double[][], double[]
+     * returns int
+     * input: (the atoms, the bottom cap (true) or the top cap (false), the corners, where the plane goes)
+     *
+     * Finds the plane through the first (or last) three corners of the helix and returns which side of it is "in"
+     * (see CBisInside for how the caps are made)
+     */
+    private int cap(AtomTable atoms, boolean bottomCap, double Corner[][], double plane[]){
+        double d, v;
+        int i, k = 0, last = len - 1, from = bottomCap ? 0 : last-1;
+        if(bottomCap){
+            // finds the first 3 corners
+            for(i = 1; i < last && k < 3; i++){
+                if(Reader3.onCorner(i, atoms)){
+                    corner(Corner[k++], i, from);
+                }
+            }
+        }else{
+            // finds the last 3 corners
+            for(i = last-2; i > 0 && k < 3; i--){
+                if(Reader3.onCorner(i, atoms)){
+                    corner(Corner[k++], i, from);
+                }
+            }
+        }
+        // finds the orthogonal vector to the plane definded by the first (last) two corners and the end
+        plane[0] = Corner[1][0]*Corner[0][1] - Corner[0][0]*Corner[1][1];
+        plane[1] = Corner[1][1]*Corner[0][2] - Corner[0][1]*Corner[1][2];
+        plane[2] = Corner[1][2]*Corner[0][0] - Corner[0][2]*Corner[1][0];
+        // determines the constant d for the plane function (from the first C alpha for both caps)
+        d = (-1.0)*ca[0]*plane[0] - ca[1]*plane[1] - ca[2]*plane[2];
+        plane[3] = d;
+        // orients what is meant by "in" by the plane inequality
+        v = plane[0]*Corner[2][0] + plane[1]*Corner[2][1] + plane[2]*Corner[2][2] + d;
+        if(v < 0){
+            return -1;
+        }
+        if(v >= 0){
+            return 1;
+        }
+        return 0;
+    }
+
+    // the vector from C alpha "from" to corner i
+    private void corner(double c[], int i, int from){
+        c[0] = ca[3*i] - ca[3*from];
+        c[1] = ca[3*i+1] - ca[3*from+1];
+        c[2] = ca[3*i+2] - ca[3*from+2];
+    }
+
+    /*
+     * inside
+     * takes int, double, double, double, boolean, boolean
+     * returns boolean
+     * input: (the residue that the point is compared to (usually the closest C alpha), x, y, z of the test point,
+     *      put caps on the helix?, is the helix left handed?)
+     *
+     * The test of CBisInside: the point is in if it is on the inside of more than half of the planes of the residue
+     */
+    public boolean inside(int res, double x, double y, double z, boolean strict, boolean isLH){
+        int t, at, tests = 0, in = 0, mask = this.tests[res];
+        // Defining the vector that points from the closest C alpha to the test point
+        double cx = x - ca[3*res], cy = y - ca[3*res+1], cz = z - ca[3*res+2];
+        double dot;
+        for(t = 0; t < 4; t++){
+            if((mask & (1 << t)) != 0){
+                tests++;
+                at = 12*res + 3*t;
+                dot = normal[at]*cx + normal[at+1]*cy + normal[at+2]*cz;
+                if(dot > 0){
+                    if(isLH){
+                        in++;
+                    }
+                }else{
+                    if(!isLH){
+                        in++;
+                    }
+                }
+            }
+        }
+        if(loop[res]){
+            return false;
+        }
+        if(strict){
+            if(outside(bottom, bottomSide, x, y, z) || outside(top, topSide, x, y, z)){
+                return false;
+            }
+        }
+        return ((double)in)/((double)tests) > .5;
+    }
+
+    // true if the point is on the wrong side of a cap
+    private static boolean outside(double plane[], int side, double x, double y, double z){
+        double p = plane[0]*x + plane[1]*y + plane[2]*z + plane[3];
+        if(side < 0){
+            return 0 < p;
+        }
+        if(side > 0){
+            return 0 > p;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,470 @@
+/*
+ * PdbAtomParser
+ *
+ * This class reads the ATOM records of a *.pdb file without turning any of the lines into Strings.
+ * The file is memory mapped and the fixed column fields are decoded straight out of the bytes:
+ * columns 13-16 atom name
+ * columns 18-20 residue name
+ * columns 23-26 residue number
+ * columns 31-38, 39-46, 47-54 the x, y and z coordinates
+ * (these are the 1 based column numbers of the pdb format, the code below uses 0 based offsets)
+ *
+ * It fills in the AtomTable that Reader3 works on (the backbone, the C beta and the side chain
+ * donor/acceptor atoms), and the SideChainAtoms of CavityFinder (every side chain atom).
+ */
+
+import java.io.*; // needed for input and output
+import java.nio.ByteBuffer; // needed for the byte level decoding
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel; // needed for memory mapping the file
+
+public class PdbAtomParser
+{
+    // powers of ten for turning the decimal digits of a coordinate into a double
+    private static final double POW10[] = {1.0, 10.0, 100.0, 1000.0, 10000.0, 100000.0, 1000000.0, 10000000.0, 100000000.0};
+
+    // bits used to remember which atoms of a residue have already been found (the first one found is kept),
+    // bit r is the atom of role r in the AtomTable
+    static final int HAVE_N = 1 << AtomTable.N, HAVE_CA = 1 << AtomTable.CA, HAVE_CP = 1 << AtomTable.CP, HAVE_O = 1 << AtomTable.O, HAVE_CB = 1 << AtomTable.CB;
+    static final int HAVE_NE = 1 << AtomTable.NE, HAVE_OACC = 1 << AtomTable.OACC, HAVE_NDON = 1 << AtomTable.NDON, HAVE_NACC = 1 << AtomTable.NACC, HAVE_ODON = 1 << AtomTable.ODON;
+
+    // which atoms parseAtoms should decode, everything else is skipped without being looked at
+    public static final int PARSE_CA = 1; // C alpha (always decoded)
+    public static final int PARSE_N = 2; // backbone N and C'
+    public static final int PARSE_O = 4; // backbone O
+    public static final int PARSE_CB = 8; // C beta
+    public static final int PARSE_SIDE = 16; // side chain hydrogen bonding atoms
+    public static final int PARSE_ALL = 31;
+
+    /*
+     * map
+     * takes String
+     * returns MappedByteBuffer
+     * input: (the name of the *.pdb file)
+     *
+     * This function memory maps the entire file read only. The channel is closed right away,
+     * the mapping stays valid until the buffer is garbage collected.
+     */
+    public static MappedByteBuffer map(String ins) throws
+    IOException,
+    FileNotFoundException
+    {
+        RandomAccessFile raf = new RandomAccessFile(ins, "r");
+        FileChannel ch = raf.getChannel();
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        ch.close();
+        raf.close();
+        return buf;
+    }
+
+    /*
+     * parseAtoms
+     * takes ByteBuffer, int, int, int, int, char[], AtomTable
+     * returns int
+     * input: (the mapped file, offset to start reading at (the first record of START from the StructureIndex), start residue, end residue,
+     *      which atoms to decode (the PARSE_ bits above, see parseMask), sequence array, the table to put the atoms in)
+     *
+     * This function walks through every ATOM record of residues START to END-1 and decodes the coordinates
+     * of the atoms that Reader3 needs into the table (residue 0 is START). It returns the number of
+     * ATOM records that were decoded.
+     *
+     * The atoms picked up are the same as the old line by line reader:
+     * every residue: N, CA, C', O and CB (GLY uses its O in place of the CB)
+     * ASN: CG (bond angle atom), OD1 (acceptor) and ND2 (donor)
+     * GLN: CD (bond angle atom), OE1 (acceptor) and NE2 (donor)
+     * HIS: ND1 (acceptor) and NE2 (bond angle atom)
+     * SER, THR, TYR: the side chain O (both donor and acceptor)
+     *
+     * The atom name is looked at before anything else on the line. If it is not one of the atoms asked for
+     * in the mask the record is skipped without decoding the residue number or the coordinates, so a
+     * C alpha only run (PARSE_CA) touches nothing but the CA records.
+     */
+    public static int parseAtoms(ByteBuffer buf, int from, int START, int END, int mask, char seq[], AtomTable atoms){
+        return parseAtoms(buf, from, START, END, mask, seq, atoms, null);
+    }
+
+    /*
+     * parseAtoms
+     * takes ByteBuffer, int, int, int, int, char[], AtomTable, AltLocSet
+     * returns int
+     * input: (same as above, plus where to keep the atoms that have an alternate location (null to ignore them))
+     *
+     * Same as above, only every wanted atom with an alternate location (column 17) is also kept in alts,
+     * the table still gets the first one of each atom.
+     */
+    public static int parseAtoms(ByteBuffer buf, int from, int START, int END, int mask, char seq[], AtomTable atoms, AltLocSet alts){
+        int have[] = new int[END - START];
+        int pos = Math.max(from, 0), next, limit = buf.limit();
+        int res, i, count = 0, bit;
+        byte a1, a2, alt;
+        double x, y, z;
+
+        while(pos < limit){
+            next = nextLine(buf, pos);
+            if(isChainEnd(buf, pos, next)){
+                pos = limit; // TER or END, the chain is finished
+            }else if(isRecord(buf, pos, next, 'A', 'T', 'O', 'M') && next - pos > 54){
+                a1 = buf.get(pos + 13);
+                a2 = buf.get(pos + 14);
+                bit = nameBit(a1, a2, mask);
+                if(bit != 0){
+                    res = parseInt(buf, pos + 22, pos + 26);
+                    if(res >= END){
+                        pos = limit;
+                    }else if(res >= START){
+                        i = res - START;
+                        bit = residueBit(bit, ResidueAlphabet.code(seq[res-1]), a1, a2);
+                        alt = buf.get(pos + 16);
+                        if(bit != 0 && ((have[i] & bit) == 0 || (alts != null && alt != ' '))){
+                            x = parseCoord(buf, pos + 30, pos + 38);
+                            y = parseCoord(buf, pos + 38, pos + 46);
+                            z = parseCoord(buf, pos + 46, pos + 54);
+                            if(alts != null && alt != ' '){
+                                keepAlt(alts, alt, i, bit, mask, ResidueAlphabet.code(seq[res-1]), x, y, z);
+                            }
+                            count += put(have, i, bit, x, y, z, atoms);
+                        }
+                    }
+                }
+            }
+            if(pos != limit){
+                pos = next;
+            }
+        }
+        finish(have, mask, seq, START, END, atoms);
+        return count;
+    }
+
+    /*
+     * parseSideChains
+     * takes ByteBuffer, int, int, int, SideChainAtoms
+     * returns int
+     * input: (the mapped file, offset to start reading at (the first record of START from the StructureIndex), start residue, end residue,
+     *      where to put the atoms)
+     *
+     * Walks through the ATOM records of residues START to END-1 like parseAtoms and keeps every side chain heavy atom
+     * (not N, CA, C, O or OXT, and not a hydrogen) with the radius of its element. The element comes from
+     * columns 77-78, or from the atom name if the file does not have them. Of the atoms with an alternate location
+     * only the first location in the file is kept (usually A). Returns the number of atoms kept.
+     */
+    public static int parseSideChains(ByteBuffer buf, int from, int START, int END, SideChainAtoms side){
+        int pos = Math.max(from, 0), next, limit = buf.limit();
+        int res, count = 0;
+        byte a0, a1, a2, a3, alt, first = ' ', e;
+        boolean backbone;
+        while(pos < limit){
+            next = nextLine(buf, pos);
+            if(isChainEnd(buf, pos, next)){
+                pos = limit; // TER or END, the chain is finished
+            }else if(isRecord(buf, pos, next, 'A', 'T', 'O', 'M') && next - pos > 54){
+                a0 = buf.get(pos + 12);
+                a1 = buf.get(pos + 13);
+                a2 = buf.get(pos + 14);
+                a3 = buf.get(pos + 15);
+                // the backbone (a name that starts in column 14 is a one letter element, column 13 is the start of a four letter name)
+                backbone = a0 == ' ' && ((a2 == ' ' && (a1 == 'N' || a1 == 'C' || a1 == 'O')) || (a1 == 'C' && a2 == 'A' && a3 == ' ') || (a1 == 'O' && a2 == 'X' && a3 == 'T'));
+                if(!backbone){
+                    res = parseInt(buf, pos + 22, pos + 26);
+                    alt = buf.get(pos + 16);
+                    if(alt != ' ' && first == ' '){
+                        first = alt;
+                    }
+                    if(res >= END){
+                        pos = limit;
+                    }else if(res >= START && (alt == ' ' || alt == first)){
+                        if(next - pos > 78 && buf.get(pos + 77) > ' '){
+                            e = (buf.get(pos + 76) > ' ') ? buf.get(pos + 76) : buf.get(pos + 77);
+                        }else{
+                            e = (a0 == ' ' || (a0 >= '0' && a0 <= '9')) ? a1 : a0;
+                        }
+                        if(e != 'H' && e != 'D'){
+                            side.add(res - START, parseCoord(buf, pos + 30, pos + 38), parseCoord(buf, pos + 38, pos + 46), parseCoord(buf, pos + 46, pos + 54), SideChainAtoms.radius((char)e));
+                            count++;
+                        }
+                    }
+                }
+            }
+            if(pos != limit){
+                pos = next;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * parseMask
+     * takes boolean, boolean, boolean
+     * returns int
+     * input: (are the phi/psi angles needed (RamPlot, RamRot, RamStats), are the C betas needed (VolumeStats, HydroStats, StackStats, TotStats),
+     *      are the hydrogen bonds needed (HydroOn))
+     *
+     * Works out the smallest set of atoms that the switched on parts of Reader3 need. The C alphas are always
+     * decoded (every geometry function needs them), the Monte Carlo and approximate volumes need nothing else.
+     */
+    public static int parseMask(boolean dihedrals, boolean betas, boolean hbonds){
+        int mask = PARSE_CA;
+        if(dihedrals || hbonds){
+            mask |= PARSE_N; // N and C'
+        }
+        if(betas || hbonds){
+            mask |= PARSE_CB | PARSE_O; // a GLY uses its O as the C beta
+        }
+        if(hbonds){
+            mask |= PARSE_SIDE;
+        }
+        return mask;
+    }
+
+    /*
+     * nameBit
+     * takes byte, byte, int
+     * returns int
+     * input: (first letter of the atom name, second letter of the atom name, which atoms to decode)
+     *
+     * Works out which atom this is from the name alone. Returns its bit, 0 if it is not wanted,
+     * or -1 if it is a side chain atom (which one depends on the residue, see residueBit)
+     */
+    static int nameBit(byte a1, byte a2, int mask){
+        if(a1 == 'C' && a2 == 'A'){
+            return HAVE_CA;
+        }
+        if(a2 == ' '){
+            // single letter backbone names
+            if(a1 == 'N'){
+                return ((mask & PARSE_N) != 0) ? HAVE_N : 0;
+            }
+            if(a1 == 'C'){
+                return ((mask & PARSE_N) != 0) ? HAVE_CP : 0;
+            }
+            if(a1 == 'O'){
+                return ((mask & PARSE_O) != 0) ? HAVE_O : 0;
+            }
+            return 0;
+        }
+        if(a1 == 'C' && a2 == 'B'){
+            return ((mask & PARSE_CB) != 0) ? HAVE_CB : 0;
+        }
+        return ((mask & PARSE_SIDE) != 0) ? -1 : 0;
+    }
+
+    /*
+     * residueBit
+     * takes int, byte, byte, byte
+     * returns int
+     * input: (the bit from nameBit, the residue code (see ResidueAlphabet), first letter of the atom name, second letter of the atom name)
+     *
+     * Finishes the job of nameBit once the residue is known: picks out the side chain hydrogen bonding
+     * atoms and drops the C beta of a GLY (there should not be one). Returns 0 if the atom is not wanted.
+     */
+    static int residueBit(int bit, byte r, byte a1, byte a2){
+        if(bit == -1){
+            return sideChainBit(r, a1, a2);
+        }
+        if(bit == HAVE_CB && r == ResidueAlphabet.GLY){
+            return 0;
+        }
+        return bit;
+    }
+    /*
+     * sideChainBit
+     * takes byte, byte, byte
+     * returns int
+     * input: (the residue code (see ResidueAlphabet), first letter of the atom name, second letter of the atom name)
+     *
+     * Returns the bit of the side chain hydrogen bonding atom that this is (0 if it is not one of them)
+     */
+    static int sideChainBit(byte r, byte a1, byte a2){
+        switch(r){
+            case ResidueAlphabet.ASN:
+                if(a1 == 'C' && a2 == 'G'){ return HAVE_NE; }
+                if(a1 == 'O' && a2 == 'D'){ return HAVE_OACC; }
+                if(a1 == 'N' && a2 == 'D'){ return HAVE_NDON; }
+                break;
+            case ResidueAlphabet.GLN:
+                if(a1 == 'C' && a2 == 'D'){ return HAVE_NE; }
+                if(a1 == 'O' && a2 == 'E'){ return HAVE_OACC; }
+                if(a1 == 'N' && a2 == 'E'){ return HAVE_NDON; }
+                break;
+            case ResidueAlphabet.HIS:
+                if(a1 == 'N' && a2 == 'D'){ return HAVE_NACC; }
+                if(a1 == 'N' && a2 == 'E'){ return HAVE_NE; }
+                break;
+            case ResidueAlphabet.SER:
+            case ResidueAlphabet.THR:
+            case ResidueAlphabet.TYR:
+                if(a1 == 'O'){ return HAVE_ODON; }
+                break;
+            default: break;
+        }
+        return 0;
+    }
+
+    /*
+     * put
+     * takes int[], int, int, double, double, double, AtomTable
+     * returns int
+     * input: (found atom bits, residue index, bit for this atom, x, y, z, the table to put the atom in)
+     *
+     * Stores the atom in the table unless this atom was already found for the residue
+     * (the first record wins, just like the old reader). Returns 1 if it was stored.
+     */
+    static int put(int have[], int i, int bit, double x, double y, double z, AtomTable atoms){
+        if((have[i] & bit) != 0){
+            return 0;
+        }
+        have[i] |= bit;
+        atoms.put(Integer.numberOfTrailingZeros(bit), i, x, y, z);
+        if(bit == HAVE_ODON){
+            // the SER, THR and TYR oxygen is both the donor and the acceptor
+            atoms.put(AtomTable.OACC, i, x, y, z);
+        }
+        return 1;
+    }
+
+    /*
+     * keepAlt
+     * takes AltLocSet, byte, int, int, int, byte, double, double, double
+     * returns void
+     * input: (where the alternate locations are kept, the alternate location letter, residue index, bit for this atom,
+     *      which atoms were decoded, the residue code (see ResidueAlphabet), x, y, z)
+     *
+     * Keeps an atom that has an alternate location. The O of a GLY is kept as its C beta too (see finish)
+     */
+    static void keepAlt(AltLocSet alts, byte alt, int i, int bit, int mask, byte r, double x, double y, double z){
+        alts.add(alt, i, bit, x, y, z);
+        if(bit == HAVE_O && r == ResidueAlphabet.GLY && (mask & PARSE_CB) != 0){
+            alts.add(alt, i, HAVE_CB, x, y, z);
+        }
+    }
+
+    /*
+     * finish
+     * takes int[], int, char[], int, int, AtomTable
+     * returns void
+     * input: (found atom bits, which atoms were decoded, sequence array, start residue, end residue, the table the atoms are in)
+     *
+     * GLY has no C beta so its O stands in for it, and any missing backbone atom that was asked for is reported
+     */
+    static void finish(int have[], int mask, char seq[], int START, int END, AtomTable atoms){
+        int need = HAVE_CA, i;
+        if((mask & PARSE_N) != 0){
+            need |= HAVE_N | HAVE_CP;
+        }
+        if((mask & PARSE_O) != 0){
+            need |= HAVE_O;
+        }
+        for(i = 0; i < END - START; i++){
+            if((mask & PARSE_CB) != 0 && START+i-1 < seq.length && ResidueAlphabet.code(seq[START+i-1]) == ResidueAlphabet.GLY && atoms.has(AtomTable.O, i)){
+                atoms.put(AtomTable.CB, i, atoms.x(AtomTable.O, i), atoms.y(AtomTable.O, i), atoms.z(AtomTable.O, i));
+            }
+            if((have[i] & need) != need){
+                System.out.println("Error in parseAtoms: missing backbone atom in residue " + (START+i));
+            }
+        }
+    }
+
+    /*
+     * nextLine
+     * takes ByteBuffer, int
+     * returns int
+     * input: (the mapped file, offset of the start of a line)
+     *
+     * Returns the offset of the start of the next line (just past the '\n')
+     */
+    public static int nextLine(ByteBuffer buf, int pos){
+        int limit = buf.limit();
+        while(pos < limit && buf.get(pos) != '\n'){
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /*
+     * isRecord
+     * takes ByteBuffer, int, int, char, char, char, char
+     * returns boolean
+     * input: (the mapped file, start of the line, start of the next line, the first four letters of the record name)
+     *
+     * Checks the record name of a line, a space also matches the end of a short line (so "END" matches "END\n")
+     */
+    public static boolean isRecord(ByteBuffer buf, int pos, int next, char c0, char c1, char c2, char c3){
+        int len = next - pos - 1;
+        if(len < 3){
+            return false;
+        }
+        if(buf.get(pos) != c0 || buf.get(pos+1) != c1 || buf.get(pos+2) != c2){
+            return false;
+        }
+        if(len < 4){
+            return c3 == ' ';
+        }
+        byte b = buf.get(pos+3);
+        return b == c3 || (c3 == ' ' && (b == '\r' || b == '\n'));
+    }
+
+    /*
+     * isChainEnd
+     * takes ByteBuffer, int, int
+     * returns boolean
+     * input: (the mapped file, start of the line, start of the next line)
+     *
+     * True if the line is a TER, END or ENDMDL record (the end of the first chain or model)
+     */
+    public static boolean isChainEnd(ByteBuffer buf, int pos, int next){
+        return isRecord(buf, pos, next, 'T', 'E', 'R', ' ') || isRecord(buf, pos, next, 'E', 'N', 'D', ' ') || isRecord(buf, pos, next, 'E', 'N', 'D', 'M');
+    }
+
+    /*
+     * parseInt
+     * takes ByteBuffer, int, int
+     * returns int
+     * input: (the mapped file, first byte of the field, one past the last byte of the field)
+     *
+     * Decodes a right justified (possibly negative) integer field, blanks are skipped
+     */
+    public static int parseInt(ByteBuffer buf, int from, int to){
+        int val = 0, i;
+        boolean neg = false;
+        byte b;
+        for(i = from; i < to; i++){
+            b = buf.get(i);
+            if(b >= '0' && b <= '9'){
+                val = val*10 + (b - '0');
+            }else if(b == '-'){
+                neg = true;
+            }
+        }
+        return neg ? -val : val;
+    }
+
+    /*
+     * parseCoord
+     * takes ByteBuffer, int, int
+     * returns double
+     * input: (the mapped file, first byte of the field, one past the last byte of the field)
+     *
+     * Decodes a fixed point number like "  -12.345". The digits are collected into a long and
+     * divided by the right power of ten, which gives exactly the same double as Double.parseDouble
+     */
+    public static double parseCoord(ByteBuffer buf, int from, int to){
+        long val = 0;
+        int dec = -1, i;
+        boolean neg = false;
+        byte b;
+        for(i = from; i < to; i++){
+            b = buf.get(i);
+            if(b >= '0' && b <= '9'){
+                val = val*10 + (b - '0');
+                if(dec >= 0){
+                    dec++;
+                }
+            }else if(b == '.'){
+                dec = 0;
+            }else if(b == '-'){
+                neg = true;
+            }
+        }
+        double d = (dec > 0) ? val/POW10[dec] : (double)val;
+        return neg ? -d : d;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * PdbInput
+ *
+ * This class opens coordinate files for Reader3 and pdbConvert. A plain *.pdb (or *.ent) file is memory mapped,
+ * a compressed *.pdb.gz or *.ent.gz file is read directly without decompressing it to disk first.
+ *
+ * load is for the StructureIndex and PdbAtomParser, which need the whole file in one buffer before they start,
+ * so a compressed file is simply inflated straight into the buffer on the calling thread. There is no overlap for
+ * a *.pdb.gz: the index only starts once the whole file is inflated. A file that inflates to more than a Java
+ * array can hold (about 2 GB) can not be loaded.
+ *
+ * open is for the line readers (CifAtomSiteReader), which work through the file as it comes. For them the
+ * decompression is done on its own thread. It inflates the file in blocks and hands each block over through
+ * a small queue, so the reader works on one block while the next is being inflated. A reader that stops early
+ * closes the stream, which stops the thread and closes the file.
+ */
+
+import java.io.*; // needed for input and output
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue; // needed for handing blocks between the threads
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream; // needed for reading compressed files
+
+public class PdbInput
+{
+    private static final int BLOCK = 1 << 16; // size of the blocks that are inflated at a time
+    private static final int QUEUED = 16; // how many blocks the inflate thread can get ahead by
+    private static final byte DONE[] = new byte[0]; // marks the end of the file in the queue
+    private static final int MAX_LOAD = Integer.MAX_VALUE - 8; // the biggest array the JVM will make
+
+    /*
+     * isCompressed
+     * takes String
+     * returns boolean
+     * input: (the name of the coordinate file)
+     *
+     * True if the file is gzip compressed (*.gz)
+     */
+    public static boolean isCompressed(String ins){
+        return ins.endsWith(".gz");
+    }
+
+    /*
+     * baseName
+     * takes String
+     * returns String
+     * input: (the name of the coordinate file)
+     *
+     * Returns the name of the file without the .gz, for naming the files that are written out
+     */
+    public static String baseName(String ins){
+        if(isCompressed(ins)){
+            return ins.substring(0, ins.length() - 3);
+        }
+        return ins;
+    }
+
+    /*
+     * load
+     * takes String
+     * returns ByteBuffer
+     * input: (the name of the coordinate file)
+     *
+     * Returns the whole file as a buffer for the StructureIndex and PdbAtomParser. A plain file is memory mapped,
+     * a compressed one is inflated into a heap buffer (an IOException if it is bigger than MAX_LOAD uncompressed).
+     */
+    public static ByteBuffer load(String ins) throws
+    IOException,
+    FileNotFoundException
+    {
+        if(!isCompressed(ins)){
+            return PdbAtomParser.map(ins);
+        }
+        InputStream in = new GZIPInputStream(new FileInputStream(ins), BLOCK);
+        byte data[] = new byte[(int)Math.min(MAX_LOAD, Math.max(BLOCK, 4*new File(ins).length()))];
+        int len = 0, n;
+        try{
+            while((n = in.read(data, len, data.length - len)) > 0){
+                len += n;
+                if(len == data.length){
+                    if(len == MAX_LOAD){
+                        // full, the file is too big unless this was the very end of it
+                        if(in.read() >= 0){
+                            throw new IOException(ins + " is more than " + MAX_LOAD + " bytes uncompressed, too big to load");
+                        }
+                        break;
+                    }
+                    data = Arrays.copyOf(data, (int)Math.min(MAX_LOAD, 2L*len));
+                }
+            }
+        }finally{
+            in.close();
+        }
+        return ByteBuffer.wrap(data, 0, len).slice();
+    }
+
+    /*
+     * open
+     * takes String
+     * returns InputStream
+     * input: (the name of the coordinate file)
+     *
+     * Returns a stream of the (uncompressed) contents of the file. For a compressed file the inflating
+     * is started on a background thread right away and the stream reads the blocks as they come out.
+     * Close the stream when done with it, even before the end of the file, so the thread stops.
+     */
+    public static InputStream open(String ins) throws
+    IOException,
+    FileNotFoundException
+    {
+        if(!isCompressed(ins)){
+            return new BufferedInputStream(new FileInputStream(ins), BLOCK);
+        }
+        Inflate pump = new Inflate(new GZIPInputStream(new FileInputStream(ins), BLOCK));
+        pump.thread = new Thread(pump, "inflate " + ins);
+        pump.thread.setDaemon(true);
+        pump.thread.start();
+        return new BlockStream(pump);
+    }
+
+    /*
+     * Inflate
+     *
+     * The background thread. Reads the compressed file block by block and puts the blocks in the queue,
+     * then puts DONE in the queue. If reading fails the error is kept so the reading side can throw it.
+     * If it is interrupted (the reading side was closed) it stops where it is. The file is closed either way.
+     */
+    private static class Inflate implements Runnable
+    {
+        private final InputStream in;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUED);
+        private volatile IOException error = null;
+        private Thread thread; // the thread running it (see open)
+
+        Inflate(InputStream in){
+            this.in = in;
+        }
+
+        public void run(){
+            byte block[];
+            int len, n;
+            try{
+                try{
+                    while(true){
+                        block = new byte[BLOCK];
+                        len = 0;
+                        while(len < BLOCK && (n = in.read(block, len, BLOCK - len)) > 0){
+                            len += n;
+                        }
+                        if(len == 0){
+                            break;
+                        }
+                        queue.put(len == BLOCK ? block : Arrays.copyOf(block, len));
+                    }
+                }catch(IOException e){
+                    error = e;
+                }finally{
+                    try{ in.close(); }catch(IOException e){}
+                }
+                queue.put(DONE);
+            }catch(InterruptedException e){
+                // the reading side was closed, nobody is waiting for the rest
+            }
+        }
+    }
+
+    /*
+     * BlockStream
+     *
+     * The reading side, an InputStream that hands out the inflated blocks in order
+     */
+    private static class BlockStream extends InputStream
+    {
+        private final Inflate pump;
+        private byte block[] = null;
+        private int pos = 0;
+        private boolean done = false;
+
+        BlockStream(Inflate pump){
+            this.pump = pump;
+        }
+
+        // gets the next block from the queue, false at the end of the file
+        private boolean fill() throws IOException {
+            while(!done && (block == null || pos == block.length)){
+                try{
+                    block = pump.queue.take();
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while inflating");
+                }
+                pos = 0;
+                if(block == DONE){
+                    done = true;
+                    if(pump.error != null){
+                        throw pump.error;
+                    }
+                }
+            }
+            return !done;
+        }
+
+        public int read() throws IOException {
+            if(!fill()){
+                return -1;
+            }
+            return block[pos++] & 0xff;
+        }
+
+        // stops the inflate thread (if it is not finished) and waits for it to close the file
+        public void close() throws IOException {
+            if(!done){
+                done = true;
+                pump.thread.interrupt();
+                pump.queue.clear(); // the blocks nobody will read
+                try{
+                    pump.thread.join();
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while closing");
+                }
+            }
+        }
+
+        public int read(byte b[], int off, int len) throws IOException {
+            if(len == 0){
+                return 0;
+            }
+            if(!fill()){
+                return -1;
+            }
+            int n = Math.min(len, block.length - pos);
+            System.arraycopy(block, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
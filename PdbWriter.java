@@ -0,0 +1,257 @@
+/*
+ * PdbWriter
+ *
+ * This class writes *.pdb files for transPDB and pdbConvert. Every record is put together in a byte buffer
+ * that is used over and over (the coordinates are formatted straight into their columns) and the buffer is
+ * handed to the file channel when it fills up. No Strings are made for the records, so writing out a large
+ * structure goes as fast as the disk will take it.
+ *
+ * The coordinates are written in the fixed columns of the pdb format:
+ * columns 31-38, 39-46, 47-54 the x, y and z coordinates, 8 wide with 3 decimal places
+ * (1 based column numbers, the code below uses 0 based offsets)
+ */
+
+import java.io.*; // needed for input and output
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class PdbWriter
+{
+    private static final int BLOCK = 1 << 16; // size of the output buffer
+    private static final String NEWLINE = System.lineSeparator(); // the same line ending PrintWriter used
+
+    private final FileOutputStream file;
+    private final FileChannel ch;
+    private final ByteBuffer out = ByteBuffer.allocate(BLOCK);
+    private final byte digits[] = new byte[24]; // scratch space for formatting a number
+
+    /*
+     * PdbWriter
+     * takes String
+     * input: (the name of the file to write)
+     *
+     * Opens (and empties) the file
+     */
+    public PdbWriter(String outs) throws
+    IOException,
+    FileNotFoundException
+    {
+        file = new FileOutputStream(outs);
+        ch = file.getChannel();
+    }
+
+    /*
+     * print
+     * takes String
+     * returns void
+     * input: (the text to write)
+     *
+     * Writes the text one byte per character (the pdb format is plain ASCII)
+     */
+    public void print(String s) throws IOException {
+        int i, len = s.length();
+        for(i = 0; i < len; i++){
+            if(!out.hasRemaining()){
+                flush();
+            }
+            out.put((byte)s.charAt(i));
+        }
+    }
+
+    /*
+     * println
+     * takes String
+     * returns void
+     * input: (the text to write)
+     *
+     * Writes the text and ends the line
+     */
+    public void println(String s) throws IOException {
+        print(s);
+        print(NEWLINE);
+    }
+
+    /*
+     * print
+     * takes int
+     * returns void
+     * input: (the number to write)
+     *
+     * Writes an integer without making a String of it
+     */
+    public void print(int n) throws IOException {
+        int len = 0;
+        long v = n;
+        if(v < 0){
+            put((byte)'-');
+            v = -v;
+        }
+        do{
+            digits[len++] = (byte)('0' + v%10);
+            v /= 10;
+        }while(v > 0);
+        if(out.remaining() < len){
+            flush();
+        }
+        while(len > 0){
+            out.put(digits[--len]);
+        }
+    }
+
+    /*
+     * write
+     * takes byte[], int, int
+     * returns void
+     * input: (the bytes, first one to write, how many)
+     *
+     * Writes some bytes as they are (like the three letter code of a residue out of the StructureIndex)
+     */
+    public void write(byte b[], int off, int len) throws IOException {
+        if(out.remaining() < len){
+            flush();
+        }
+        if(len > out.remaining()){
+            ByteBuffer run = ByteBuffer.wrap(b, off, len);
+            while(run.hasRemaining()){
+                ch.write(run);
+            }
+        }else{
+            out.put(b, off, len);
+        }
+    }
+
+    /*
+     * copy
+     * takes ByteBuffer, int, int
+     * returns void
+     * input: (buffer holding the records (usually the mapped input file), first byte, one past the last byte)
+     *
+     * Writes a run of records exactly as they are. A long run is handed to the channel in one go
+     * instead of going through the output buffer.
+     */
+    public void copy(ByteBuffer src, int from, int to) throws IOException {
+        ByteBuffer run = src.duplicate();
+        run.limit(to);
+        run.position(from);
+        if(run.remaining() <= out.remaining()){
+            out.put(run);
+        }else{
+            flush();
+            while(run.hasRemaining()){
+                ch.write(run);
+            }
+        }
+    }
+
+    /*
+     * transfer
+     * takes String, long, long
+     * returns void
+     * input: (the file holding the records, first byte, one past the last byte)
+     *
+     * Writes a run of records straight from another file with a channel to channel transfer,
+     * the bytes never have to be copied through this program
+     */
+    public void transfer(String ins, long from, long to) throws IOException {
+        flush();
+        try(FileChannel src = new FileInputStream(ins).getChannel()){
+            while(from < to){
+                from += src.transferTo(from, to - from, ch);
+            }
+        }
+    }
+
+    /*
+     * atom
+     * takes ByteBuffer, int, int, double, double, double
+     * returns void
+     * input: (buffer holding the record, start of the record, start of the next line, x, y, z)
+     *
+     * Writes an ATOM (or HETATM) record with new coordinates. Everything before column 31 and after
+     * column 54 is copied over as it is, the coordinates are formatted into their columns in between.
+     */
+    public void atom(ByteBuffer src, int pos, int next, double x, double y, double z) throws IOException {
+        int end = next;
+        if(end > pos && src.get(end-1) == '\n'){
+            end--; // the line ending is copied after the coordinates
+        }
+        if(out.remaining() < 54 + (next - pos)){
+            flush();
+        }
+        int i;
+        for(i = pos; i < pos + 30; i++){
+            out.put(i < end ? src.get(i) : (byte)' ');
+        }
+        coord(x);
+        coord(y);
+        coord(z);
+        if(pos + 54 < next){
+            for(i = pos + 54; i < next; i++){
+                out.put(src.get(i));
+            }
+        }else{
+            print(NEWLINE);
+        }
+    }
+
+    // formats a coordinate 8 wide with 3 decimal places ("%8.3f") into the buffer
+    private void coord(double v){
+        long t = Math.round(Math.abs(v)*1000.0);
+        boolean neg = (v < 0 && t != 0);
+        int len = 0, i;
+        do{
+            digits[len++] = (byte)('0' + t%10);
+            t /= 10;
+            if(len == 3){
+                digits[len++] = '.';
+            }
+        }while(t > 0 || len < 5);
+        if(neg){
+            digits[len++] = '-';
+        }
+        for(i = len; i < 8; i++){
+            out.put((byte)' ');
+        }
+        while(len > 0){
+            out.put(digits[--len]);
+        }
+    }
+
+    // writes a single byte
+    private void put(byte b) throws IOException {
+        if(!out.hasRemaining()){
+            flush();
+        }
+        out.put(b);
+    }
+
+    /*
+     * flush
+     * takes nothing
+     * returns void
+     * input: ()
+     *
+     * Hands everything in the buffer to the file
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while(out.hasRemaining()){
+            ch.write(out);
+        }
+        out.clear();
+    }
+
+    /*
+     * close
+     * takes nothing
+     * returns void
+     * input: ()
+     *
+     * Writes out what is left in the buffer and closes the file
+     */
+    public void close() throws IOException {
+        flush();
+        ch.close();
+        file.close();
+    }
+}
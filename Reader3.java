@@ -20,6 +20,7 @@
  */
 
 import java.io.*; // needed for input and output
+import java.nio.ByteBuffer; // needed for reading the *.pdb file in a single pass
 import java.util.Random; // needed for Monte Carlo integration
 
 public class Reader3
@@ -37,7 +38,7 @@ public class Reader3
     int END = 61; // Where the beta helix ends (residue number)
     boolean isLH = true; // Is the helix left handed? (true = yes)
     
-    // Define the *.pdb file here, only change what is in the quotes
+    // Define the *.pdb file here, only change what is in the quotes (a compressed *.pdb.gz or *.ent.gz works too, and so does an mmCIF *.cif or *.cif.gz)
     String ins = "DI_v2.pdb";
     
     // ***************************************************************
@@ -49,6 +50,18 @@ public class Reader3
     // ********************************************************************
     
     boolean MCon = false; // turns on or off the Monte Carlo integration (off will run faster)
+    int MCWorkers = 4; // how many threads the Monte Carlo integration is split over (see MonteCarloVolume), 0 for the old single java.util.Random (seeded with MCSeed too)
+    long MCSeed = 1; // the seed of the Monte Carlo points, the same seed and MCWorkers always give the same volume
+    int MCSampling = MonteCarloVolume.RANDOM; // where the Monte Carlo points come from: MonteCarloVolume.RANDOM or MonteCarloVolume.HALTON (a low discrepancy sequence)
+    double MCPrecision = 0.0; // the standard error (as a part of the volume) the Monte Carlo integration stops at, 0 for a fixed 500000 points
+    boolean MCAxis = false; // turns on or off testing the Monte Carlo points against the fitted helix axis instead of the CBisInside planes (see HelixAxis)
+    boolean VoxelOn = false; // turns on or off finding the volume of the helix from a grid of voxels instead of random points (see VoxelGrid)
+    double VoxelSize = 0.5; // the edge of a voxel (A), the voxel volume gets better (and slower) as it gets smaller
+    boolean VoxelAxis = false; // turns on or off testing the voxels against the fitted helix axis instead of the CBisInside planes (see HelixAxis)
+    boolean RungVolumeOn = false; // turns on or off finding the volume of the helix from the area of every rung times its rise (see RungSections), works for any helix
+    boolean CavityOn = false; // turns on or off finding the empty pockets in the core between the side chains that point in (see CavityFinder)
+    double CavityMin = 10.0; // the smallest cavity that is reported (A^3), anything smaller is a speck between atoms
+    boolean CavityAxis = false; // turns on or off taking the inside of the helix the cavities are looked for in from the fitted helix axis instead of the CBisInside planes (see HelixAxis)
     boolean VolumeStats = true; // turns on or off the volume (packing) statistics
     boolean HydroStats = true; // turns on or off the hydrophobisity statistics
     boolean RamPlot = false; // turns on or off the Ramachandran plot
@@ -58,810 +71,730 @@ public class Reader3
     boolean StackStats = true; // turns on or off the Stacking statistics
     boolean HydroOn = false; // turns on or off the hydrogen bond finding
     boolean TotStats = true; // turns on or off the total statistic including orientation of individual residues
+    boolean AxisCheck = false; // turns on or off comparing the helix axis test with CBisInside for every C beta
+    boolean RungSweep = false; // turns on or off finding the residue above and below from the autocorrelation of the C alpha distances instead of the getNplus search (see RungMap)
+    boolean CacheOn = false; // turns on or off writing the binary coordinate cache (*.bhc, next to the *.pdb file) that lets later runs skip reading the *.pdb file (an up to date cache that is there is always read)
+    boolean CorpusOn = false; // turns on or off reading the structure out of the corpus store below if it is in there (see CorpusStore)
+    String corpus = "corpus.bhs"; // the corpus store that CorpusOn reads
+    boolean AltLocOn = false; // turns on or off the orientation, hydrophobisity and stacking statistics for each alternate location (altLoc) conformer
+    boolean EchoOn = true; // turns on or off printing the results to the screen (they always go in stats_*.dat), off for batch runs
+    boolean SingleOn = false; // turns on or off keeping the coordinates as floats (half the memory, for keeping a lot of structures around)
+    int ResultFormat = ResultSink.CSV; // the machine readable results_* file: ResultSink.CSV (*.csv) or ResultSink.JSONL (*.jsonl)
     
     // ******************** END OF SWITCHES ********************************
     
     // Variable declaration for input and output in main
-    BufferedReader fin = new BufferedReader(new FileReader("" + ins + ""));
-    BufferedReader fin2 = new BufferedReader(new FileReader("" + ins + ""));
-    BufferedReader fin3 = new BufferedReader(new FileReader("" + ins + ""));
-    PrintWriter fout = new PrintWriter(new FileOutputStream("stats_" + ins + ".dat"), true); // Where basic statistics are stored
-    PrintWriter debug = new PrintWriter(new FileOutputStream("RAM.dat"), true); // Where the Ramachandran plot is stored
-        String line = null;
-        String line2 = null;
-        String data = null;
-        String data2 = null;
-        String data3 = null;
-        int proLen = 0;
-        double CBpos[][] = new double[END-START][3]; // x = 0, y = 1, z = 2
-        double CApos[][] = new double[END-START][3]; // x = 0, y = 1, z = 2
-    double CPpos[][] = new double[END-START][3]; // etc.
-    double Npos[][] = new double[END-START][3];
-    double Opos[][] = new double[END-START][3];
-    double NdonPos[][] = new double[END-START][3];
-    double OdonPos[][] = new double[END-START][3];
-    double NaccPos[][] = new double[END-START][3];
-    double OaccPos[][] = new double[END-START][3];
-    double NePos[][] = new double[END-START][3];
-        double volume = 0.0, volumeTot = 0.0, volumeApprox = 0.0;
-        double hydro = 0.0;
-        int i = 0,j,ci=0;
-        boolean stop = false;
-        boolean isCoord = false;
+    boolean isCif = CifAtomSiteReader.isCif(ins); // mmCIF files are streamed instead of mapped
+    // Where basic statistics are stored (stats_*.dat, the screen and the results_* file), written on a background thread (see ResultSink)
+    ResultSink sink = new ResultSink(ins, "stats_" + ins + ".dat", "results_" + ins + ((ResultFormat == ResultSink.JSONL) ? ".jsonl" : ".csv"), ResultFormat, EchoOn);
+    // the sink is closed however main ends, so the writing thread never keeps the program running after an error
+    try{
+        PrintWriter debug = new PrintWriter(new BufferedWriter(new FileWriter("RAM.dat"))); // Where the Ramachandran plot is stored
+            int proLen = 0;
+        // The atoms of residues START to END (C beta, C alpha, C', N, O and the side chain donors and acceptors), see AtomTable
+        AtomTable atoms = new AtomTable(END-START, SingleOn);
+            double volume = 0.0, volumeTot = 0.0, volumeApprox = 0.0;
+            double hydro = 0.0;
+            int i = 0,j;
+            boolean stop = false;
         
-    /*
-     * INPUT
-     */
-       
-    // Reads in lines and discards them until it gets to a line that starts with "SEQRES"   
-        while( stop != true ){
-            line = fin.readLine();
-            //System.out.println("line: " + line);
-            stop = (line.substring(0,4).compareTo("ATOM")==0);
-            if(stop == true){
-                    isCoord = true;
-            }else{
-            stop = (line.substring(0,6).compareTo("SEQRES")==0);
-            ci++;
+        /*
+         * INPUT
+         */
+    
+        // Only the atoms that the switched on statistics need are decoded, a geometry only run (MCon and the volumes) reads nothing but the C alphas
+        int parseMask = PdbAtomParser.parseMask(RamPlot || RamRot || RamStats, VolumeStats || HydroStats || StackStats || TotStats || AltLocOn || CavityOn, HydroOn);
+        char seq[] = null;
+        char chain = ' ';
+        AltLocSet alts = AltLocOn ? new AltLocSet() : null; // the atoms with alternate locations (the cache does not keep them)
+    
+        // A structure in the corpus store is worked on right where it is, out of the memory mapped store (see CorpusStore)
+        if(CorpusOn && !AltLocOn && new File(corpus).isFile()){
+            CorpusStore store = CorpusStore.open(corpus, false, false);
+            int k = store.find(ins);
+            if(k >= 0 && (store.mask(k) & parseMask) == parseMask && store.atoms(k, START, END) != null){
+                atoms = store.atoms(k, START, END);
+                seq = store.seq(k);
+                chain = store.chain(k);
             }
+            store.close();
         }
-        //System.out.println("Out of loop 1: " + isCoord);
-        
-        
-    if(isCoord == false){     
-        proLen = Integer.parseInt(line.substring(14,17).trim());
-    }else{
-        stop = false;
-        while( stop != true ){
-            data2 = fin2.readLine();
-            stop = (data2.substring(0,3).compareTo("END")==0);
-            if(stop == false){
-                if(data2.substring(0,3).compareTo("TER")==0){
-                    stop = true;
-                    //end = Integer.parseInt(line.substring(23,26).trim());
-                }
-            }
-            if(stop != false){
-                System.out.println(data3);
-                proLen = Integer.parseInt(data3.substring(23,26).trim());
-            }
-            data3 = data2.toString();
+    
+        // A run on the same file as before loads the coordinates from the cache instead, if one was written (see CoordinateCache)
+        if(seq == null && !AltLocOn){
+            seq = CoordinateCache.load(ins, START, END, parseMask, atoms);
         }
-        stop = false;
-    }
-    //System.out.println("Defined seq[]: " + proLen);
-        char seq[] = new char[proLen];
-    if(isCoord == false){    
-        data = line.substring(19);
-      
-    // Reads in the entire aminoacid sequence and converts it to the single letter form and then stores it in an array
-        while( stop == true ){
-            for(j = 0; j < 13; j++){
-                if(i < proLen){
-                    seq[i] = seqres(data.substring(0+(4*j),3+(4*j)));
-                    //System.out.println(data.substring(0+(4*j),3+(4*j)) + " " + seqres(data.substring(0+(4*j),3+(4*j))));
-                    i++;
+    
+        if(seq != null){
+            proLen = seq.length;
+        }else{
+            if(isCif){
+                // Streams the _atom_site loop of the *.cif file, the sequence comes from the residues of the first chain (see CifAtomSiteReader)
+                seq = CifAtomSiteReader.read(ins, START, END, parseMask, atoms, alts);
+                proLen = seq.length;
+            }else{
+                ByteBuffer pdb = PdbInput.load(ins); // the *.pdb file (or *.pdb.gz), mapped once and read in a single pass
+            
+                // One pass over the file finds the sequence (SEQRES, or the ATOM records if there is none),
+                // the length of the chain and where every residue's ATOM records are (see StructureIndex)
+                StructureIndex index = StructureIndex.scan(pdb);
+                proLen = index.proLen;
+                seq = index.seq;
+                chain = index.chain;
+                if(START > index.lastRes || index.resOffset[START] < 0){
+                    System.out.println("Error in input: no ATOM records for residue " + START);
                 }
+            
+                // Decodes the coordinates of residues START to END straight out of the memory mapped file (see PdbAtomParser)
+                PdbAtomParser.parseAtoms(pdb, (START <= index.lastRes) ? index.resOffset[START] : index.atomStart, START, END, parseMask, seq, atoms, alts);
             }
-            line = fin.readLine();
-        // This makes sure we are still looking at the sequence and not some other part of the pdb file
-            stop = (line.substring(0,6).compareTo("SEQRES")==0);
-        // This makes sure we are only looking at the 'A' form of the protien
-        if(stop == true){
-            stop = (line.substring(11,12).compareTo("A")==0);
-        if(stop == false){
-            stop = (line.substring(13,14).compareTo(" ")==0);
-        }
-        }
-            if(stop == true){
-                data = line.substring(19);
+            if(CacheOn && !SingleOn){ // the cache keeps the coordinates as they were read
+                CoordinateCache.save(ins, START, END, parseMask, chain, seq, atoms);
             }
         }
-    }else{
-        int resp = 1;
-        while( stop != true ){
-            for(i = 0; i < START-1; i++){seq[i] = seqres("GLY");}
-            for(i = 0; i <= ci; i++){line2 = fin3.readLine();}
-            resp = Integer.parseInt(line2.substring(23,26).trim());
-            //System.out.println("resp: " + resp);
-            seq[resp-1] = seqres(line2.substring(17,20));
-            if(resp == proLen){
-                stop = true;
-            }
-            line2 = fin3.readLine();
+        atoms.trim();
+        byte code[] = ResidueAlphabet.encode(seq); // the sequence as residue codes, code[r-1] is residue r (see ResidueAlphabet)
+        atoms.caDistances(); // the C alpha distances every neighbor search reads, worked out once (see CaDistances)
+        atoms.rungFinder(RungSweep ? RungMap.SWEEP : RungMap.SEARCH);
+        RungMap rungs = atoms.rungs(RungMap.NEAR); // the residue above and below every residue (see RungMap)
+        atoms.frames(); // the planes CBisInside tests against (see OrientationFrames)
+        if(MCAxis || VoxelAxis || CavityAxis || AxisCheck){
+            atoms.axis(); // the fitted helix axis (see HelixAxis)
         }
-    }
-    //for(i = 0; i < proLen; i++){System.out.println("Seq[" + i + "]: " + seq[i]);}
-    //System.out.println("Seq initialized");
-    //System.out.println("line: " + line);
     
-            
-        stop = false;
-        
-    // Reads through and discards data until it finds the individual atomic information
-        while( stop != true ){
-            stop = (line.substring(0,4).compareTo("ATOM")==0);
-            if(stop != true){
-                line = fin.readLine();
-            }
-        }
-        System.out.println("line: " + line);
-        stop = false;
-        
-    // Reads through and discards data until it finds the amino acid that we wanted to start with (START)
-        while( stop !=true ){
-            if( Integer.parseInt(line.substring(23,26).trim()) == (START) ){
-                stop = true;
-            }
-        if(stop == false){
-            line = fin.readLine();
+            /*
+         * OUTPUT
+         */
+         
+        //Calculates the volume of the helix using Monte Carlo techniques
+        MonteCarloVolume mc = null; // the integration, for the error of the volume
+        if(MCon){
+                mc = findVolume(atoms,END-START,true,isLH,MCAxis,MCWorkers,MCSeed,MCSampling,MCPrecision);
+                volumeTot = mc.volume();
         }
+    
+        // Calculates the volume of the helix from a grid of voxels, the grid is kept for the analyses that need the inside of the helix
+        VoxelGrid voxels = null;
+        if(VoxelOn){
+            voxels = new VoxelGrid(atoms, VoxelSize, true, isLH, VoxelAxis, MCWorkers);
         }
-//System.out.println("line: " + line);
-        stop = false;
         
-        for(i = 0; i < (END-START); i++){
-        // Finds the position of the backbone N for a particular amino acid
-        while( stop != true ){
-            //System.out.println("line: " + line);
-                data = line.substring(13,15);
-            //System.out.println("data: " + data);
-        data = data.trim();
-        //System.out.println("data: " + data);
-                if(data.compareTo("N") == 0){
-                    //System.out.println("IN N: " + i);
-                    //System.out.println("line: " + line);
-                    stop = true;
+        // VOLUME STATS
+        if(VolumeStats){
+            //Calculates the volume of the helix using a triangular cylinder approximation
+            volumeApprox = findVolApp(atoms,START,END,sink);
+    
+            //finds the volume of all side chains pointing in
+                for(i = 0; i < (END-START); i++){
+                    if(CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,END-START,false,isLH)){
+                        volume += ResidueAlphabet.VOL[code[START+i-1]];
+                    }
                 }
-        if(stop == false){
-            line = fin.readLine();
-        }
-            }
-            Npos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-            Npos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-            Npos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-            
-            stop = false;
-        
-        // finds the coords of the C alpha
-            while( stop != true ){
-                line = fin.readLine();
-                data = line.substring(13,15);
-                if(data.compareTo("CA") == 0){
-                    stop = true;
+            //Output of data and various statistics
+            sink.println("Volume: " + volume);
+                sink.println("Volume total (of helix) (MC): " + volumeTot);
+            sink.println("Volume ratio V/Vt(MC): " + (volume/volumeTot));
+            if(mc != null){
+                // the 95% confidence interval of the Monte Carlo volume, and so of the ratio (the ends swap over)
+                // (for Halton points the binomial error overestimates, so the interval is only a conservative bound)
+                String interval = mc.isBound() ? "95% bound (conservative, Halton points)" : "95% interval";
+                sink.println("Volume total (of helix) (MC) " + interval + ": " + mc.low() + " to " + mc.high() + " from " + mc.points() + " points");
+                if(mc.low() > 0){
+                    sink.println("Volume ratio V/Vt(MC) " + interval + ": " + (volume/mc.high()) + " to " + (volume/mc.low()));
+                    sink.record("montecarlo", "total", volumeTot, "error", mc.error(), "low", mc.low(), "high", mc.high(), "points", mc.points(), "bound", mc.isBound(), "ratioLow", volume/mc.high(), "ratioHigh", volume/mc.low());
+                }else{
+                    // the interval of the volume reaches 0, so the ratio has no upper end
+                    sink.println("Volume ratio V/Vt(MC) " + interval + ": " + (volume/mc.high()) + " or more");
+                    sink.record("montecarlo", "total", volumeTot, "error", mc.error(), "low", mc.low(), "high", mc.high(), "points", mc.points(), "bound", mc.isBound(), "ratioLow", volume/mc.high());
                 }
             }
-            CApos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-            CApos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-            CApos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-            
-            stop = false;
-        
-        // finds the coords for the C'
-        while( stop != true ){
-                line = fin.readLine();
-                data = line.substring(13,15);
-        data = data.trim();
-                if(data.compareTo("C") == 0){
-                    stop = true;
+            if(voxels != null){
+                sink.println("Volume total (of helix) (voxels): " + voxels.volume() + " from " + voxels.count() + " voxels of " + VoxelSize + " A");
+                sink.println("Volume ratio V/Vt(voxels): " + (volume/voxels.volume()));
+                sink.record("voxels", "total", voxels.volume(), "ratio", volume/voxels.volume(), "voxels", voxels.count(), "size", VoxelSize);
+            }
+            if(RungVolumeOn){
+                // the cross section of every rung and the volume they add up to
+                RungSections sections = new RungSections(atoms);
+                for(j = 0; j < sections.rungs(); j++){
+                    sink.file("Rung " + (j+1) + " (residues " + (START+sections.first(j)) + " to " + (START+sections.first(j)+sections.period(j)-1) + "): area " + sections.area(j) + " rise " + sections.rise(j));
+                    sink.record("rung", "rung", j+1, "first", START+sections.first(j), "residues", sections.period(j), "area", sections.area(j), "rise", sections.rise(j));
                 }
+                sink.println("Volume total (of helix) (rungs): " + sections.volume() + " from " + sections.rungs() + " rungs");
+                sink.println("Volume ratio V/Vt(rungs): " + (volume/sections.volume()));
+                sink.record("rungs", "total", sections.volume(), "ratio", volume/sections.volume(), "rungs", sections.rungs());
             }
-            CPpos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-            CPpos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-            CPpos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-            
-            stop = false;
-            
-        // Finds the coords of the backbone O
-        while( stop != true ){
-                line = fin.readLine();
-                data = line.substring(13,15);
-        data = data.trim();
-                if(data.compareTo("O") == 0){
-                    stop = true;
-                }
+            if(isLH){
+                sink.println("Volume total (of helix) (Ap): " + volumeApprox);
+                    sink.console("Volume ratio V/Vt(Ap): " + (volume/volumeApprox));
+                    sink.file("Volume ratio V/Vt: " + (volume/volumeApprox));
             }
-            Opos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-            Opos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-            Opos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        
-        stop = false;
-        
-        /*
-         * This finds the coords of the C Beta (and thus the orientation of the side chain
-         * unless the residue is GLY at which point it finds the coords of the oxygen.
-         */
-            if(seq[START+i-1] != 'G'){
-                while( stop != true ){
-                    line = fin.readLine();
-                    System.out.println(line);
-                    data = line.substring(13,15);
-                    if(data.compareTo("CB") == 0){
-                        //System.out.println("IN CB: " + i);
-                        //System.out.println("line: " + line);
-                        stop = true;
+            sink.record("volume", "inside", volume, "totalMC", volumeTot, "ratioMC", volume/volumeTot, "totalAp", volumeApprox, "ratioAp", volume/volumeApprox);
+        }
+    
+        // CAVITIES
+        // every side chain atom is read out of the coordinate file again, a structure that is only in the corpus store does not have them
+        if(CavityOn && !new File(ins).isFile()){
+            System.out.println("Error in cavities: " + ins + " is not there to read the side chains from, no cavities were found");
+        }else if(CavityOn){
+            // the inside of the helix (the voxel volume grid if there is one made the same way) with the side chains that point in put in it
+            VoxelGrid interior = (voxels != null && VoxelAxis == CavityAxis) ? voxels : new VoxelGrid(atoms, VoxelSize, true, isLH, CavityAxis, MCWorkers);
+            boolean inward[] = new boolean[END-START];
+                for(i = 0; i < (END-START); i++){
+                    inward[i] = CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,END-START,false,isLH);
+                }
+            CavityFinder cavities = new CavityFinder(interior, readSideChains(ins, isCif, START, END), inward, CavityMin, MCWorkers);
+            double cavityTot = 0.0;
+            String lining;
+                for(j = 0; j < cavities.cavities(); j++){
+                    cavityTot += cavities.volume(j);
+                    lining = "";
+                    for(int r : cavities.lining(j)){
+                        lining += ((lining.length() > 0) ? " " : "") + (START+r) + seq[START+r-1];
                     }
+                    sink.println("Cavity " + (j+1) + ": volume " + cavities.volume(j) + " at (" + cavities.x(j) + ", " + cavities.y(j) + ", " + cavities.z(j) + ") lined by " + lining);
+                    sink.record("cavity", "cavity", j+1, "volume", cavities.volume(j), "x", cavities.x(j), "y", cavities.y(j), "z", cavities.z(j), "lining", lining);
                 }
-                CBpos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                CBpos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                CBpos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-            }else{
-                CBpos[i][0] = Opos[i][0];
-                CBpos[i][1] = Opos[i][1];
-                CBpos[i][2] = Opos[i][2];
-            }
-            
-            stop = false;
+            sink.println("Cavities: " + cavities.cavities() + " of " + CavityMin + " A^3 or more, " + cavityTot + " A^3 in all");
+            sink.println("Volume filled by the side chains pointing in: " + cavities.filled() + " of " + interior.volume() + " inside the helix");
+            sink.record("cavities", "cavities", cavities.cavities(), "total", cavityTot, "filled", cavities.filled(), "inside", interior.volume());
+        }
         
-        /*
-         * If the residue is a GLN or ASN then finds the coords of the
-         * H bond accepting Oxygen and the
-         * H bond donating Nitrogen
-         */
-        if(seq[START+i-1] == 'Q' || seq[START+i-1] == 'N'){
-            while( stop != true ){
-                    data = line.substring(13,15);
-            data = data.trim();
-            if(seq[START+i-1] == 'N'){
-                        if(data.compareTo("CG") == 0){
-                            stop = true;
-                        }
-            }else{
-                if(data.compareTo("CD") == 0){
-                            stop = true;
-                        }
-            }
-            if(stop == false){
-                line = fin.readLine();
-            }
+        // HYDROPHOBISITY
+        if(HydroStats){
+            int hydroStati[] = new int[5];
+            int hydroStato[] = new int[5];
+            int hydroOut = 0;
+                for(i = 0; i < (END-START); i++){
+                    if(CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,END-START,false,isLH)){ //Checks whether or not the amino acid is inside or outside
+                        hydro += ResidueAlphabet.HYDRO[code[START+i-1]]; // adds to the running hydro count for inside
+                hydroStati[ResidueAlphabet.HYDRO_TYPE[code[START+i-1]]]++; //keeps track of what type of hydrophobisity it has: acid, base, hydrophobe, hydrophile
+                // HYDRO_TYPE: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
+                if(code[START+i-1] == ResidueAlphabet.GLY){
+                    hydroStati[4]++; // keeps track of the number of GLY that point in
                 }
-        NePos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                NePos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                NePos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        
-        stop = false;
-        
-        while( stop != true ){
-                    data = line.substring(13,14);
-            data = data.trim();
-                    if(data.compareTo("O") == 0){
-                        stop = true;
-                    }
-            if(stop == false){
-                line = fin.readLine();
-            }
+                    }else{
+                    hydroOut += ResidueAlphabet.HYDRO[code[START+i-1]]; // adds to the running count of the outside hydrophobisity
+                hydroStato[ResidueAlphabet.HYDRO_TYPE[code[START+i-1]]]++; // keeps track of the types that are facing out
+                // HYDRO_TYPE: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
+                if(code[START+i-1] == ResidueAlphabet.GLY){
+                    hydroStato[4]++; // keeps track of the number of GLY
                 }
-        OaccPos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                OaccPos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                OaccPos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        
-        stop = false;
-        
-        while( stop != true ){
-                    data = line.substring(13,14);
-            data = data.trim();
-                    if(data.compareTo("N") == 0){
-                        stop = true;
-                    }
-            if(stop == false){
-                line = fin.readLine();
-            }
                 }
-        NdonPos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                NdonPos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                NdonPos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        }
-        
-        stop = false;
-        // If the residue is HIS, finds the coords of the H bond accepting Nitrogen
-        if(seq[START+i-1] == 'H'){
-            //System.out.println("H STOP: "+ seq[START+i-1]);
-            while( stop != true ){
-                //System.out.println("line: " + line);
-                    data = line.substring(13,15);
-            //data = data.trim();
-                    if(data.compareTo("ND") == 0){
-                        stop = true;
-                        //System.out.println("ND STOP: "+ seq[START+i-1]);
-                    }
-            if(stop == false){
-                line = fin.readLine();
-            }
                 }
-        NaccPos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                NaccPos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                NaccPos[i][2] = Double.parseDouble(line.substring(47,54).trim());
+            // Output of data and various statistics
+            sink.println("Hydrophobisity:");
+            sink.println("IN: " + hydroStati[0] + " Hydrophobic residue(s) " + hydroStati[1] + " Hydrophilic residue(s) including " + hydroStati[4] + " GLY residue(s)");
+            sink.println("IN: " + hydroStati[2] + " basic residue(s) " + hydroStati[3] + " acidic residue(s)");
+            sink.println("IN: Total hydrophobisity: " + hydro);
+            sink.println("OUT: " + hydroStato[0] + " Hydrophobic residue(s) " + hydroStato[1] + " Hydrophilic residue(s) including " + hydroStato[4] + " GLY residue(s)");
+            sink.println("OUT: " + hydroStato[2] + " basic residue(s) " + hydroStato[3] + " acidic residue(s)");
+            sink.println("OUT: Total hydrophobisity: " + hydroOut);
+            sink.record("hydrophobicity", "region", "all", "side", "in", "hydrophobic", hydroStati[0], "hydrophilic", hydroStati[1], "gly", hydroStati[4], "basic", hydroStati[2], "acidic", hydroStati[3], "total", hydro);
+            sink.record("hydrophobicity", "region", "all", "side", "out", "hydrophobic", hydroStato[0], "hydrophilic", hydroStato[1], "gly", hydroStato[4], "basic", hydroStato[2], "acidic", hydroStato[3], "total", hydroOut);
         
-        stop = false;
-        
-        while( stop != true ){
-                    data = line.substring(13,15);
-            data = data.trim();
-                    if(data.compareTo("NE") == 0){
-                        stop = true;
+            // Burried Hydrophobisity
+            // This looks at the hydrdophobisity of the residues NOT on the top, bottom or loop of the helix
+            for(i = 0; i < 5; i++){
+                hydroStati[i] = 0;
+                hydroStato[i] = 0;
+            }
+            hydroOut = 0;
+                for(i = 0; i < (END-START); i++){
+                if(rungs.up(i) != 0 && rungs.down(i) != 0){
+                        if(CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,END-START,false,isLH)){ //Checks whether or not the amino acid is inside or outside
+                            hydro += ResidueAlphabet.HYDRO[code[START+i-1]]; // adds to the running hydro count for inside
+                    hydroStati[ResidueAlphabet.HYDRO_TYPE[code[START+i-1]]]++; //keeps track of what type of hydrophobisity it has: acid, base, hydrophobe, hydrophile
+                    // HYDRO_TYPE: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
+                    if(code[START+i-1] == ResidueAlphabet.GLY){
+                        hydroStati[4]++; // keeps track of the number of GLY that point in
+                    }
+                        }else{
+                        hydroOut += ResidueAlphabet.HYDRO[code[START+i-1]]; // adds to the running count of the outside hydrophobisity
+                    hydroStato[ResidueAlphabet.HYDRO_TYPE[code[START+i-1]]]++; // keeps track of the types that are facing out
+                    // HYDRO_TYPE: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
+                    if(code[START+i-1] == ResidueAlphabet.GLY){
+                        hydroStato[4]++; // keeps track of the number of GLY
                     }
-            if(stop == false){
-                line = fin.readLine();
-            }
-                }
-        NePos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                NePos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                NePos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        }
-        
-        stop = false;
-        
-        /*
-         * If the residue is SER, THR, or TYR; finds the coords of
-         * the H bond donnor Oxygen
-         * and the H bond acceptor Oxygen
-         */
-        if(seq[START+i-1] == 'S' || seq[START+i-1] == 'T' || seq[START+i-1] == 'Y'){
-            while( stop != true ){ 
-                    line = fin.readLine();
-                    data = line.substring(13,14);
-                    if(data.compareTo("O") == 0){
-                        stop = true;
                     }
-            if(stop == false){
-                line = fin.readLine();
             }
                 }
-                OdonPos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                OdonPos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                OdonPos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        OaccPos[i][0] = Double.parseDouble(line.substring(31,38).trim());
-                OaccPos[i][1] = Double.parseDouble(line.substring(39,46).trim());
-                OaccPos[i][2] = Double.parseDouble(line.substring(47,54).trim());
-        }
+            // Output of data and various statistics
+            sink.println("Burried Hydrophobisity:");
+            sink.println("IN: " + hydroStati[0] + " Hydrophobic residue(s) " + hydroStati[1] + " Hydrophilic residue(s) including " + hydroStati[4] + " GLY residue(s)");
+            sink.println("IN: " + hydroStati[2] + " basic residue(s) " + hydroStati[3] + " acidic residue(s)");
+            sink.println("IN: Total hydrophobisity: " + hydro);
+            sink.println("OUT: " + hydroStato[0] + " Hydrophobic residue(s) " + hydroStato[1] + " Hydrophilic residue(s) including " + hydroStato[4] + " GLY residue(s)");
+            sink.println("OUT: " + hydroStato[2] + " basic residue(s) " + hydroStato[3] + " acidic residue(s)");
+            sink.println("OUT: Total hydrophobisity: " + hydroOut);
+            sink.record("hydrophobicity", "region", "buried", "side", "in", "hydrophobic", hydroStati[0], "hydrophilic", hydroStati[1], "gly", hydroStati[4], "basic", hydroStati[2], "acidic", hydroStati[3], "total", hydro);
+            sink.record("hydrophobicity", "region", "buried", "side", "out", "hydrophobic", hydroStato[0], "hydrophilic", hydroStato[1], "gly", hydroStato[4], "basic", hydroStato[2], "acidic", hydroStato[3], "total", hydroOut);
         
-        line = fin.readLine();
-        stop = false;
-            //System.out.println("CA: " + CApos[i][0] + " " + CApos[i][1] + " " + CApos[i][2]);
-            //System.out.println("CB: " + CBpos[i][0] + " " + CBpos[i][1] + " " + CBpos[i][2]);
         }
     
-    fin.close();
-    
-        /*
-     * OUTPUT
-     */
-         
-    //Calculates the volume of the helix using Monte Carlo techniques
-    if(MCon){
-            volumeTot = findVolume(CApos,END-START,true,isLH);
-    }
-        
-    // VOLUME STATS
-    if(VolumeStats){
-        //Calculates the volume of the helix using a triangular cylinder approximation
-        volumeApprox = findVolApp(CApos,START,END);
-    
-        //finds the volume of all side chains pointing in
+        // Ramachandran plot
+        // Plots the phi vs. psi angles of each residue on the helix
+        boolean includeGLY = false; // used by the plot and its rotation
+        BackboneDihedrals dihedrals = (RamPlot || RamRot || RamStats) ? atoms.dihedrals() : null; // phi and psi of every residue, worked out once
+        if(RamPlot){
+            double phi, psi;
             for(i = 0; i < (END-START); i++){
-                if(CBisInside(i,CBpos[i][0],CBpos[i][1],CBpos[i][2],CApos,END-START,false,isLH)){
-                    volume += getVol(seq[START+i-1]);
+                if(includeGLY || code[START+i-1] != ResidueAlphabet.GLY){
+                    phi = dihedrals.phi(i);
+                    psi = dihedrals.psi(i);
+                    debug.println(i + " " + phi + " " + psi);
+                    sink.record("ramachandran", "residue", START+i, "aa", seq[START+i-1], "phi", phi, "psi", psi);
                 }
             }
-        //Output of data and various statistics
-        System.out.println("Volume: " + volume);
-            System.out.println("Volume total (of helix) (MC): " + volumeTot);
-        System.out.println("Volume ratio V/Vt(MC): " + (volume/volumeTot));
-        if(isLH){
-            System.out.println("Volume total (of helix) (Ap): " + volumeApprox);
-                System.out.println("Volume ratio V/Vt(Ap): " + (volume/volumeApprox));
         }
-        fout.println("Volume: " + volume);
-            fout.println("Volume total (of helix) (MC): " + volumeTot);
-        fout.println("Volume ratio V/Vt(MC): " + (volume/volumeTot));
-        if(isLH){
-            fout.println("Volume total (of helix) (Ap): " + volumeApprox);
-                fout.println("Volume ratio V/Vt: " + (volume/volumeApprox));
-        }
-    }
-        
-    // HYDROPHOBISITY
-    if(HydroStats){
-        int hydroStati[] = new int[5];
-        int hydroStato[] = new int[5];
-        int hydroOut = 0;
-            for(i = 0; i < (END-START); i++){
-                if(CBisInside(i,CBpos[i][0],CBpos[i][1],CBpos[i][2],CApos,END-START,false,isLH)){ //Checks whether or not the amino acid is inside or outside
-                    hydro += getHydro(seq[START+i-1]); // adds to the running hydro count for inside
-            hydroStati[getHydroType(seq[START+i-1])]++; //keeps track of what type of hydrophobisity it has: acid, base, hydrophobe, hydrophile
-            // getHydroType: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
-            if(seq[START+i-1] == 'G'){
-                hydroStati[4]++; // keeps track of the number of GLY that point in
-            }
-                }else{
-                hydroOut += getHydro(seq[START+i-1]); // adds to the running count of the outside hydrophobisity
-            hydroStato[getHydroType(seq[START+i-1])]++; // keeps track of the types that are facing out
-            // getHydroType: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
-            if(seq[START+i-1] == 'G'){
-                hydroStato[4]++; // keeps track of the number of GLY
-            }
-            }
-            }
-        // Output of data and various statistics
-        System.out.println("Hydrophobisity:");
-        System.out.println("IN: " + hydroStati[0] + " Hydrophobic residue(s) " + hydroStati[1] + " Hydrophilic residue(s) including " + hydroStati[4] + " GLY residue(s)");
-        System.out.println("IN: " + hydroStati[2] + " basic residue(s) " + hydroStati[3] + " acidic residue(s)");
-        System.out.println("IN: Total hydrophobisity: " + hydro);
-        System.out.println("OUT: " + hydroStato[0] + " Hydrophobic residue(s) " + hydroStato[1] + " Hydrophilic residue(s) including " + hydroStato[4] + " GLY residue(s)");
-        System.out.println("OUT: " + hydroStato[2] + " basic residue(s) " + hydroStato[3] + " acidic residue(s)");
-        System.out.println("OUT: Total hydrophobisity: " + hydroOut);
-        fout.println("Hydrophobisity:");
-        fout.println("IN: " + hydroStati[0] + " Hydrophobic residue(s) " + hydroStati[1] + " Hydrophilic residue(s) including " + hydroStati[4] + " GLY residue(s)");
-        fout.println("IN: " + hydroStati[2] + " basic residue(s) " + hydroStati[3] + " acidic residue(s)");
-        fout.println("IN: Total hydrophobisity: " + hydro);
-        fout.println("OUT: " + hydroStato[0] + " Hydrophobic residue(s) " + hydroStato[1] + " Hydrophilic residue(s) including " + hydroStato[4] + " GLY residue(s)");
-        fout.println("OUT: " + hydroStato[2] + " basic residue(s) " + hydroStato[3] + " acidic residue(s)");
-        fout.println("OUT: Total hydrophobisity: " + hydroOut);
-        
-        // Burried Hydrophobisity
-        // This looks at the hydrdophobisity of the residues NOT on the top, bottom or loop of the helix
-        for(i = 0; i < 5; i++){
-            hydroStati[i] = 0;
-            hydroStato[i] = 0;
-        }
-        hydroOut = 0;
-            for(i = 0; i < (END-START); i++){
-            if(getNplus(i, 3, 0, 9, Math.min(30,(END-START) - i), CApos) !=0 && getNminus(i, 3, 0, 9, Math.min(30,i), CApos) != 0){
-                    if(CBisInside(i,CBpos[i][0],CBpos[i][1],CBpos[i][2],CApos,END-START,false,isLH)){ //Checks whether or not the amino acid is inside or outside
-                        hydro += getHydro(seq[START+i-1]); // adds to the running hydro count for inside
-                hydroStati[getHydroType(seq[START+i-1])]++; //keeps track of what type of hydrophobisity it has: acid, base, hydrophobe, hydrophile
-                // getHydroType: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
-                if(seq[START+i-1] == 'G'){
-                    hydroStati[4]++; // keeps track of the number of GLY that point in
-                }
-                    }else{
-                    hydroOut += getHydro(seq[START+i-1]); // adds to the running count of the outside hydrophobisity
-                hydroStato[getHydroType(seq[START+i-1])]++; // keeps track of the types that are facing out
-                // getHydroType: 0 = hydrophobe, 1 = hydrophile, 2 = base, 3 = acid
-                if(seq[START+i-1] == 'G'){
-                    hydroStato[4]++; // keeps track of the number of GLY
-                }
-                }
-        }
-            }
-        // Output of data and various statistics
-        System.out.println("Burried Hydrophobisity:");
-        System.out.println("IN: " + hydroStati[0] + " Hydrophobic residue(s) " + hydroStati[1] + " Hydrophilic residue(s) including " + hydroStati[4] + " GLY residue(s)");
-        System.out.println("IN: " + hydroStati[2] + " basic residue(s) " + hydroStati[3] + " acidic residue(s)");
-        System.out.println("IN: Total hydrophobisity: " + hydro);
-        System.out.println("OUT: " + hydroStato[0] + " Hydrophobic residue(s) " + hydroStato[1] + " Hydrophilic residue(s) including " + hydroStato[4] + " GLY residue(s)");
-        System.out.println("OUT: " + hydroStato[2] + " basic residue(s) " + hydroStato[3] + " acidic residue(s)");
-        System.out.println("OUT: Total hydrophobisity: " + hydroOut);
-        fout.println("Burried Hydrophobisity:");
-        fout.println("IN: " + hydroStati[0] + " Hydrophobic residue(s) " + hydroStati[1] + " Hydrophilic residue(s) including " + hydroStati[4] + " GLY residue(s)");
-        fout.println("IN: " + hydroStati[2] + " basic residue(s) " + hydroStati[3] + " acidic residue(s)");
-        fout.println("IN: Total hydrophobisity: " + hydro);
-        fout.println("OUT: " + hydroStato[0] + " Hydrophobic residue(s) " + hydroStato[1] + " Hydrophilic residue(s) including " + hydroStato[4] + " GLY residue(s)");
-        fout.println("OUT: " + hydroStato[2] + " basic residue(s) " + hydroStato[3] + " acidic residue(s)");
-        fout.println("OUT: Total hydrophobisity: " + hydroOut);
-        
-    }
+        debug.close();
     
-    // Ramachandran plot
-    // Plots the phi vs. psi angles of each residue on the helix
-    if(RamPlot){
-        boolean includeGLY = false;
-        for(i = 0; i < (END-START); i++){
-            if(!includeGLY){
-            if(seq[START+i-1] != 'G'){
-                    debug.println(i + " " + getPhi(i, CApos, Npos, CPpos, END-START) + " " + getPsi(i, CApos, Npos, CPpos, END-START));
-                }
-        }else{
-            debug.println(i + " " + getPhi(i, CApos, Npos, CPpos, END-START) + " " + getPsi(i, CApos, Npos, CPpos, END-START));
-        }
-        }
-    }
-    
-    if(RamRot){
-        double theta = 3.14159/4;
-            PrintWriter foutRR = new PrintWriter(new FileOutputStream("rotRAM.dat"), true);
-        double phi, psi, temp;
-        int space1, space2;
-        i = 0;
-        stop = false;
-        line = null;
-        data = null;
-        int sector;
-        double vphi[] = new double[2];
-        double vpsi[] = new double[2];
-        double vrot[] = new double[2];
-        double nvrot[] = new double[2];
-        double pvrot[] = new double[2];
-        double npvrot[] = new double[2];
-        double beta = 0.0;
-        double dot, magPhiPsi;
+        if(RamRot){
+            double theta = 3.14159/4;
+                PrintWriter foutRR = new PrintWriter(new BufferedWriter(new FileWriter("rotRAM.dat")));
+            double phi, psi, temp;
+            int k = 0; // the residues written out so far (the same numbering RAM.dat has)
+            int sector;
+            double vphi[] = new double[2];
+            double vpsi[] = new double[2];
+            double vrot[] = new double[2];
+            double nvrot[] = new double[2];
+            double pvrot[] = new double[2];
+            double npvrot[] = new double[2];
+            double beta = 0.0;
+            double dot, magPhiPsi;
     
-        vrot[0] = Math.cos(theta);
-        vrot[1] = -1.0*Math.sin(theta);
+            vrot[0] = Math.cos(theta);
+            vrot[1] = -1.0*Math.sin(theta);
     
-        nvrot[0] = -1.0*vrot[0];http://www.pricegrabber.com/
-        nvrot[1] = -1.0*vrot[1];
+            nvrot[0] = -1.0*vrot[0];http://www.pricegrabber.com/
+            nvrot[1] = -1.0*vrot[1];
     
-        pvrot[0] = Math.sin(theta);
-        pvrot[1] = Math.cos(theta);
+            pvrot[0] = Math.sin(theta);
+            pvrot[1] = Math.cos(theta);
     
-        npvrot[0] = -1.0*pvrot[0];
-        npvrot[1] = -1.0*pvrot[1];
+            npvrot[0] = -1.0*pvrot[0];
+            npvrot[1] = -1.0*pvrot[1];
     
-        while(stop != true){
-            line = fin.readLine();
-            stop = (line.substring(0,3).compareTo("END")==0);
-            if(stop != true){
-                space1 = line.indexOf(' ');
-            data = line.substring(space1+1);
-            space2 = data.indexOf(' ');
-            space2 = space1 + space2 + 2;
-                phi = Double.parseDouble(line.substring(space1+1,space2).trim());
-            psi = Double.parseDouble(line.substring(space2).trim());
+            for(i = 0; i < (END-START); i++){
+                // the residues that are on the plot, straight from the dihedrals instead of read back out of RAM.dat
+                if(includeGLY || code[START+i-1] != ResidueAlphabet.GLY){
+                    phi = dihedrals.phi(i);
+                psi = dihedrals.psi(i);
         
-            magPhiPsi = Math.sqrt(phi*phi + psi*psi);
+                magPhiPsi = Math.sqrt(phi*phi + psi*psi);
         
-            sector = getSector(phi, psi, vrot[0], vrot[1], pvrot[0], pvrot[1]);
+                sector = getSector(phi, psi, vrot[0], vrot[1], pvrot[0], pvrot[1]);
         
-            switch(sector){
-                case 1:
-                    dot = phi*nvrot[0] + psi*nvrot[1];
-                beta = Math.abs(Math.acos(dot/magPhiPsi));
-                beta = 2.0*beta;
-                temp = phi;
-                phi = Math.cos(beta)*phi + Math.sin(beta)*psi;
-                psi = -1.0*Math.sin(beta)*temp + Math.cos(beta)*psi;
-                break;
-                case 2:
-                    dot = phi*nvrot[0] + psi*nvrot[1];
-                beta = Math.abs(Math.acos(dot/magPhiPsi));
-                beta = 2.0*beta;
-                temp = phi;
-                phi = Math.cos(beta)*phi - Math.sin(beta)*psi;
-                psi = Math.sin(beta)*temp + Math.cos(beta)*psi;
-                break;
-                case 3:
-                    dot = phi*vrot[0] + psi*vrot[1];
-                beta = Math.abs(Math.acos(dot/magPhiPsi));
-                beta = 2.0*beta;
-                temp = phi;
-                phi = Math.cos(beta)*phi + Math.sin(beta)*psi;
-                psi = -1.0*Math.sin(beta)*temp + Math.cos(beta)*psi;
-                break;
-                case 4:
-                    dot = phi*vrot[0] + psi*vrot[1];
-                beta = Math.abs(Math.acos(dot/magPhiPsi));
-                beta = 2.0*beta;
-                temp = phi;
-                phi = Math.cos(beta)*phi - Math.sin(beta)*psi;
-                psi = Math.sin(beta)*temp + Math.cos(beta)*psi;
-                break;
-                default: break;
-            }
-            foutRR.println("residue["+i+"].setDihedrals(" + phi + "," + psi + ");");
-                i++;
+                switch(sector){
+                    case 1:
+                        dot = phi*nvrot[0] + psi*nvrot[1];
+                    beta = Math.abs(Math.acos(dot/magPhiPsi));
+                    beta = 2.0*beta;
+                    temp = phi;
+                    phi = Math.cos(beta)*phi + Math.sin(beta)*psi;
+                    psi = -1.0*Math.sin(beta)*temp + Math.cos(beta)*psi;
+                    break;
+                    case 2:
+                        dot = phi*nvrot[0] + psi*nvrot[1];
+                    beta = Math.abs(Math.acos(dot/magPhiPsi));
+                    beta = 2.0*beta;
+                    temp = phi;
+                    phi = Math.cos(beta)*phi - Math.sin(beta)*psi;
+                    psi = Math.sin(beta)*temp + Math.cos(beta)*psi;
+                    break;
+                    case 3:
+                        dot = phi*vrot[0] + psi*vrot[1];
+                    beta = Math.abs(Math.acos(dot/magPhiPsi));
+                    beta = 2.0*beta;
+                    temp = phi;
+                    phi = Math.cos(beta)*phi + Math.sin(beta)*psi;
+                    psi = -1.0*Math.sin(beta)*temp + Math.cos(beta)*psi;
+                    break;
+                    case 4:
+                        dot = phi*vrot[0] + psi*vrot[1];
+                    beta = Math.abs(Math.acos(dot/magPhiPsi));
+                    beta = 2.0*beta;
+                    temp = phi;
+                    phi = Math.cos(beta)*phi - Math.sin(beta)*psi;
+                    psi = Math.sin(beta)*temp + Math.cos(beta)*psi;
+                    break;
+                    default: break;
+                }
+                foutRR.println("residue["+k+"].setDihedrals(" + phi + "," + psi + ");");
+                    k++;
+                }
             }
+            foutRR.close();
         }
-    }
     
-    // Ramachandran Statistics
-    if(RamStats){
-        int resType[] = new int[END-START];
-        int resTypeT[] = new int[END-START];
-        boolean counted[] = new boolean[END-START];
-        int typeTot[] = new int[3];
-        int typeT[] = new int[3];
-        int tot = 0, tottot = 0;
-        int typeCount = 1;
-        for(i = 0; i < (END-START); i++){
-            counted[i] = false;
-        }
-        for(i = 0; i < (END-START); i++){
-            if(i != 0 && i != (END-START-1)){
-                if(onCorner(i, CApos)){
-                //System.out.println("CORNER AT: " + (START+i));
-                    for(j = -1; j < 1; j++){
-                if(counted[i+j] == false){
-                    if(seq[START+i+j-1] != 'G'){
-                            resTypeT[i+j] = classifyPhiPsi(getPhi((i+j), CApos, Npos, CPpos, END-START),getPsi((i+j), CApos, Npos, CPpos, END-START));
-                                typeT[resTypeT[i+j]]++;
-                            tot++;
-                    counted[i+j] = true;
-                }
-                    }
-                    }
-            }
-            }
-            if(seq[START+i-1] != 'G'){
-                resType[i] = classifyPhiPsi(getPhi((i), CApos, Npos, CPpos, END-START),getPsi((i), CApos, Npos, CPpos, END-START));
-                typeTot[resType[i]]++;
-                tottot++;
+        // Ramachandran Statistics
+        if(RamStats){
+            int resType[] = new int[END-START];
+            int resTypeT[] = new int[END-START];
+            boolean counted[] = new boolean[END-START];
+            int typeTot[] = new int[3];
+            int typeT[] = new int[3];
+            int tot = 0, tottot = 0;
+            int typeCount = 1;
+            for(i = 0; i < (END-START); i++){
+                counted[i] = false;
             }
-        }
-        System.out.println("Ramachandran Plot stored in RAM.dat");
-        System.out.println("There were " + typeTot[0] + " (" + ((double)typeTot[0]/(double)tottot) + ") Beta residues, " + typeTot[1] + " (" + ((double)typeTot[1]/(double)tottot) + ") RH alpha and " + typeTot[2] + " (" + ((double)typeTot[2]/(double)tottot) + ") LH alpha of " + tottot + " non-GLY residues.");
-        System.out.println("On the turns: " + typeT[0] + " (" + ((double)typeT[0]/(double)tot) + ") were Beta, " + typeT[1] + " (" + ((double)typeT[1]/(double)tot) + ") RH alpha and " + typeT[2] + " (" + ((double)typeT[2]/(double)tot) + ") LH alpha of " + tot + " non-GLY residues");
-        fout.println("There were " + typeTot[0] + " (" + ((double)typeTot[0]/(double)tottot) + ") Beta residues, " + typeTot[1] + " (" + ((double)typeTot[1]/(double)tottot) + ") RH alpha and " + typeTot[2] + " (" + ((double)typeTot[2]/(double)tottot) + ") LH alpha of " + tottot + " non-GLY residues.");
-        fout.println("On the turns: " + typeT[0] + " (" + ((double)typeT[0]/(double)tot) + ") were Beta, " + typeT[1] + " (" + ((double)typeT[1]/(double)tot) + ") RH alpha and " + typeT[2] + " (" + ((double)typeT[2]/(double)tot) + ") LH alpha of " + tot + " non-GLY residues");
-        for(i = 0; i < (END-START); i++){
-            if(resType[i] != 0){
-            for(j = 1; j < Math.min((typeTot[1] + typeTot[2]), (END-START) - i - 1); j++){
-                if(resType[i+j] != 0){
-                typeCount++;
-            }else{
-                i = i + j - 1;
-                j = (typeTot[1] + typeTot[2]);
+            for(i = 0; i < (END-START); i++){
+                if(i != 0 && i != (END-START-1)){
+                    if(onCorner(i, atoms)){
+                    //System.out.println("CORNER AT: " + (START+i));
+                        for(j = -1; j < 1; j++){
+                    if(counted[i+j] == false){
+                        if(code[START+i+j-1] != ResidueAlphabet.GLY){
+                                resTypeT[i+j] = classifyPhiPsi(dihedrals.phi(i+j),dihedrals.psi(i+j));
+                                    typeT[resTypeT[i+j]]++;
+                                tot++;
+                        counted[i+j] = true;
+                    }
+                        }
+                        }
+                }
+                }
+                if(code[START+i-1] != ResidueAlphabet.GLY){
+                    resType[i] = classifyPhiPsi(dihedrals.phi(i),dihedrals.psi(i));
+                    typeTot[resType[i]]++;
+                    tottot++;
+                }
             }
+            sink.console("Ramachandran Plot stored in RAM.dat");
+            sink.println("There were " + typeTot[0] + " (" + ((double)typeTot[0]/(double)tottot) + ") Beta residues, " + typeTot[1] + " (" + ((double)typeTot[1]/(double)tottot) + ") RH alpha and " + typeTot[2] + " (" + ((double)typeTot[2]/(double)tottot) + ") LH alpha of " + tottot + " non-GLY residues.");
+            sink.println("On the turns: " + typeT[0] + " (" + ((double)typeT[0]/(double)tot) + ") were Beta, " + typeT[1] + " (" + ((double)typeT[1]/(double)tot) + ") RH alpha and " + typeT[2] + " (" + ((double)typeT[2]/(double)tot) + ") LH alpha of " + tot + " non-GLY residues");
+            sink.record("ramachandran_stats", "beta", typeTot[0], "rhAlpha", typeTot[1], "lhAlpha", typeTot[2], "residues", tottot, "turnBeta", typeT[0], "turnRhAlpha", typeT[1], "turnLhAlpha", typeT[2], "turnResidues", tot);
+            for(i = 0; i < (END-START); i++){
+                if(resType[i] != 0){
+                for(j = 1; j < Math.min((typeTot[1] + typeTot[2]), (END-START) - i - 1); j++){
+                    if(resType[i+j] != 0){
+                    typeCount++;
+                }else{
+                    i = i + j - 1;
+                    j = (typeTot[1] + typeTot[2]);
+                }
+                }
+                if(typeCount > 1){
+                    sink.println("There was a sequence of " + typeCount + " alpha pieces in a row (" + (START + i) + "-" + (START + i + typeCount - 1) + ").");
+                    sink.record("alpha_run", "length", typeCount, "from", START + i, "to", START + i + typeCount - 1);
+                typeCount = 1;
+                }
             }
-            if(typeCount > 1){
-                System.out.println("There was a sequence of " + typeCount + " alpha pieces in a row (" + (START + i) + "-" + (START + i + typeCount - 1) + ").");
-                fout.println("There was a sequence of " + typeCount + " alpha pieces in a row (" + (START + i) + "-" + (START + i + typeCount - 1) + ").");
-            typeCount = 1;
             }
         }
-        }
-    }
     
-    // Transformation of *.pbd coordinate file
-    if(TransformPDB){
-        boolean rotX = false;
-        boolean rotY = false;
-        boolean rotZ = false;
-        transPDB(rotX, rotY, rotZ, ins);
-    }
+        // Transformation of *.pbd coordinate file
+        if(TransformPDB){
+            boolean rotX = false;
+            boolean rotY = false;
+            boolean rotZ = false;
+            transPDB(rotX, rotY, rotZ, ins);
+        }
     
-    int Np;
-    //Stacking info
-    if(StackStats){
-        stop = false;
-        int temp = -1;
-        int stack[] = new int[20];
-        int dStack[][] = new int[25][3];
-        int dStackc = 0;
-        int pStack[][] = new int[50][2];
-        int numStack = 0;
-        // loops through entire helix
-        for(i = 0; i < (END-START); i++){
-            Np = getNplus(i, 3, 0, 9, Math.min(30,(END-START) - i), CApos); // finds how far away the residue directly above it in 3D is
-            if(stop == false){
-                if(i < (END-START-1)){
-                    temp = getNplus(i+1, 3, 0, 9, Math.min(30,(END-START) - i), CApos); // finds how far away the residue above the residue next to it is
+        int Np;
+        //Stacking info
+        if(StackStats){
+            stop = false;
+            int temp = -1;
+            int stack[] = new int[ResidueAlphabet.COUNT + 1]; // the last one counts the residues that are not one of the 20
+            int dStack[][] = new int[25][3];
+            int dStackc = 0;
+            int pStack[][] = new int[50][2];
+            int numStack = 0;
+            // loops through entire helix
+            for(i = 0; i < (END-START); i++){
+                Np = rungs.up(i); // finds how far away the residue directly above it in 3D is
+                if(stop == false){
+                    if(i < (END-START-1)){
+                        temp = rungs.up(i+1); // finds how far away the residue above the residue next to it is
+                    }
+                    if(Np == temp){ // checks to see if they are the same distance away
+                        stop = true; // if they are then it alows the next algorithm to search for a possible stack
+                    // this is put in to avoid multiple residues thinking that the same residue is directly above them
+                    // which would result in stacks recorded that were not actual stacks
                 }
-                if(Np == temp){ // checks to see if they are the same distance away
-                    stop = true; // if they are then it alows the next algorithm to search for a possible stack
-                // this is put in to avoid multiple residues thinking that the same residue is directly above them
-                // which would result in stacks recorded that were not actual stacks
-            }
-            }
-            //System.out.println((i+START)+ " " + (i+START+Np) + " " + seq[i+START-1] + " " + seq[i+Np+START-1]);
-            if(Np != 0){ // makes sure that the residue will not check similarity with itself, but rather the residue above it
-                if(stop == true){ // makes sure the basic error checking above was satisfied
-                if(seq[i+START-1] != 'G'){ // we are ignoring GLY because it does not have enough of a side chain to make stacking relevent
-                        if(seq[i+START-1] == seq[i+Np+START-1]){ // this actually checks whether or not the residues are the same (the two residues directly next to eachother vertically
-                    // This next line makes sure that either both residues are pointing in or pointing out or pointing in (stacking would be irrelevent if they were on opposite sides of the helical wall
-                    if(CBisInside(i-1,CBpos[i-1][0],CBpos[i-1][1],CBpos[i-1][2],CApos,(END-START),false,isLH)==CBisInside(i+Np-1,CBpos[i+Np-1][0],CBpos[i+Np-1][1],CBpos[i+Np-1][2],CApos,(END-START),false,isLH)){
-                        // this records information about where the stack was for use in testing for a "double stack"
-                    pStack[numStack][0] = i+Np+START;
-                        pStack[numStack][1] = Np;
-                    // this searches through and looks for double stacks and records where they are
-                        for(j = 0; j < numStack; j++){
-                            if((i+START) == pStack[j][0]){
-                            dStack[dStackc][0] = i+START-pStack[j][1];
-                            dStack[dStackc][1] = i+START;
-                            dStack[dStackc][2] = i+START+Np;
-                            dStackc++;
-                        }
+                }
+                //System.out.println((i+START)+ " " + (i+START+Np) + " " + seq[i+START-1] + " " + seq[i+Np+START-1]);
+                if(Np != 0){ // makes sure that the residue will not check similarity with itself, but rather the residue above it
+                    if(stop == true){ // makes sure the basic error checking above was satisfied
+                    if(code[i+START-1] != ResidueAlphabet.GLY){ // we are ignoring GLY because it does not have enough of a side chain to make stacking relevent
+                            if(code[i+START-1] == code[i+Np+START-1]){ // this actually checks whether or not the residues are the same (the two residues directly next to eachother vertically
+                        // This next line makes sure that either both residues are pointing in or pointing out or pointing in (stacking would be irrelevent if they were on opposite sides of the helical wall
+                        if(CBisInside(i-1,atoms.x(AtomTable.CB, i-1),atoms.y(AtomTable.CB, i-1),atoms.z(AtomTable.CB, i-1),atoms,(END-START),false,isLH)==CBisInside(i+Np-1,atoms.x(AtomTable.CB, i+Np-1),atoms.y(AtomTable.CB, i+Np-1),atoms.z(AtomTable.CB, i+Np-1),atoms,(END-START),false,isLH)){
+                            // this records information about where the stack was for use in testing for a "double stack"
+                        pStack[numStack][0] = i+Np+START;
+                            pStack[numStack][1] = Np;
+                        // this searches through and looks for double stacks and records where they are
+                            for(j = 0; j < numStack; j++){
+                                if((i+START) == pStack[j][0]){
+                                dStack[dStackc][0] = i+START-pStack[j][1];
+                                dStack[dStackc][1] = i+START;
+                                dStack[dStackc][2] = i+START+Np;
+                                dStackc++;
                             }
-                        numStack++;
-                    // this records where the stacks were in the dat file as well as on the screen
-                    // It also records whether the stack was inside or outside
-                        if((START + Np + i) != END){
-                        if(CBisInside(i-1,CBpos[i][0],CBpos[i][1],CBpos[i][2],CApos,(END-START),false,isLH)){
-                                fout.println("Inward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1]);
-                                    System.out.println("Inward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1]);
-                        }else{
-                            fout.println("Outward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1]);
-                                    System.out.println("Outward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1]);
-                        }
-                        }else{ // a * is appended for stacks involving the final residue because sometimes they can be suspect (not perfectly aligned)
-                            if(CBisInside(i-1,CBpos[i-1][0],CBpos[i-1][1],CBpos[i-1][2],CApos,(END-START),false,isLH)){
-                                fout.println("Inward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1] + "*");
-                                    System.out.println("Inward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1] + "*");
-                        }else{
-                            fout.println("Outward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1] + "*");
-                                    System.out.println("Outward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1] + "*");
-                        }
-                        }
-                        stack[getNum(seq[START + i-1])]++; // This records what type of residue was stacked
+                                }
+                            numStack++;
+                        // this records where the stacks were in the dat file as well as on the screen
+                        // It also records whether the stack was inside or outside
+                            if((START + Np + i) != END){
+                            if(CBisInside(i-1,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,(END-START),false,isLH)){
+                                    sink.println("Inward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1]);
+                                    sink.record("stack", "from", START + i, "to", START + Np + i, "aa", seq[START + i-1], "side", "in", "suspect", false);
+                            }else{
+                                sink.println("Outward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1]);
+                                sink.record("stack", "from", START + i, "to", START + Np + i, "aa", seq[START + i-1], "side", "out", "suspect", false);
+                            }
+                            }else{ // a * is appended for stacks involving the final residue because sometimes they can be suspect (not perfectly aligned)
+                                if(CBisInside(i-1,atoms.x(AtomTable.CB, i-1),atoms.y(AtomTable.CB, i-1),atoms.z(AtomTable.CB, i-1),atoms,(END-START),false,isLH)){
+                                    sink.println("Inward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1] + "*");
+                                    sink.record("stack", "from", START + i, "to", START + Np + i, "aa", seq[START + i-1], "side", "in", "suspect", true);
+                            }else{
+                                sink.println("Outward Stack at " + (START + i) + " and " + (START + Np + i) + " with " + seq[START + i-1] + "*");
+                                sink.record("stack", "from", START + i, "to", START + Np + i, "aa", seq[START + i-1], "side", "out", "suspect", true);
+                            }
+                            }
+                            stack[code[START + i-1]]++; // This records what type of residue was stacked
+                    }
+                    }
+                    }
+                }
                 }
+            }
+    
+            // Spits out the info on the double stacks that were found
+            for(i = 0; i < dStackc; i++){
+                if(CBisInside((dStack[i][0]-START),atoms.x(AtomTable.CB, dStack[i][0]-START),atoms.y(AtomTable.CB, dStack[i][0]-START),atoms.z(AtomTable.CB, dStack[i][0]-START),atoms,(END-START),false,isLH)){
+                    sink.println("Inward double stack of " + seq[dStack[i][0]-1] + " at " + dStack[i][0] + "-" + dStack[i][1] + "-" + dStack[i][2]);
+                    sink.record("double_stack", "aa", seq[dStack[i][0]-1], "first", dStack[i][0], "middle", dStack[i][1], "last", dStack[i][2], "side", "in");
+                }else{
+                    sink.println("Outward double stack of " + seq[dStack[i][0]-1] + " at " + dStack[i][0] + "-" + dStack[i][1] + "-" + dStack[i][2]);
+                    sink.record("double_stack", "aa", seq[dStack[i][0]-1], "first", dStack[i][0], "middle", dStack[i][1], "last", dStack[i][2], "side", "out");
                 }
+            }
+            // Spits out the info on what residues stacked and at what frequency
+            for(i = 0; i < ResidueAlphabet.COUNT; i++){
+                if(stack[i] != 0){
+                    sink.println(ResidueAlphabet.LETTER[i] + " stacked " + stack[i] + " time(s)");
+                    sink.record("stack_count", "aa", ResidueAlphabet.LETTER[i], "count", stack[i]);
                 }
             }
+        }
+    
+        // Hydrogen Bonding
+        if(HydroOn){
+            //PrintWriter hout = new PrintWriter(new FileOutputStream("Reader3Hbond.dat"), true);
+            sink.println("Side chain hydrogen bonds");
+            for(i = 0; i < (END-START); i++){
+                if(ResidueAlphabet.HBOND[code[START+i-1]] != 0){ // only the residues with side chain hydrogen bonding atoms are looked at
+                    getHbond(i,atoms,START,END,seq,code, sink);
+                }
             }
+            //hout.close();
         }
     
-        // Spits out the info on the double stacks that were found
-        for(i = 0; i < dStackc; i++){
-            if(CBisInside((dStack[i][0]-START),CBpos[dStack[i][0]-START][0],CBpos[dStack[i][0]-START][1],CBpos[dStack[i][0]-START][2],CApos,(END-START),false,isLH)){
-                System.out.println("Inward double stack of " + (char)seq[dStack[i][0]-1] + " at " + dStack[i][0] + "-" + dStack[i][1] + "-" + dStack[i][2]);
-                fout.println("Inward double stack of " + (char)seq[dStack[i][0]-1] + " at " + dStack[i][0] + "-" + dStack[i][1] + "-" + dStack[i][2]);
+        // Total Stats
+        if(TotStats){
+            // Gives information about the dimensions of the helix that was worked on
+            double turns = 0;
+            Np = 0;
+            // loops through until it cannot find another residue directly above the current one, counting the rings as it goes
+            for(i = 0; i < (END-START); i=i){
+                Np = rungs.up(i);
+                i += Np;
+                if(Np != 0){
+                    turns = turns + 1.0;
+                }else{
+                    i = END-START;
+                    if((i+30)<END){
+                            turns = 0.0;
+                }
+                }
+            }
+            // if it failed (due to complicated side loop), or if wanted, this gives a 18 residue/ring approximation for the turns. turns = 0; will force this approximation
+            if(turns == 0){
+                if(isLH){
+                    turns = ((END-START)/18.0);
             }else{
-                System.out.println("Outward double stack of " + (char)seq[dStack[i][0]-1] + " at " + dStack[i][0] + "-" + dStack[i][1] + "-" + dStack[i][2]);
-                fout.println("Outward double stack of " + (char)seq[dStack[i][0]-1] + " at " + dStack[i][0] + "-" + dStack[i][1] + "-" + dStack[i][2]);
+                turns = ((END-START)/22.0);
             }
+            }      
+                sink.println("There were " + (END-START) + " residues (" + START + "-" + END + "), and approximatly " + turns + " turns.");
+            sink.record("helix", "start", START, "end", END, "residues", END-START, "turns", turns);
+    
+    
+            // Sequence and oreintation (true = in, false = out)
+            boolean inside;
+                for(i = 0; i < (END-START) ; i++){
+                    inside = CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,END-START,false,isLH);
+                    sink.file(""+ (START+i)+ " " + seq[START+i-1] + ": " + inside);
+                    sink.record("orientation", "residue", START+i, "aa", seq[START+i-1], "inside", inside);
+                }
+    
+            sink.console("This data and the chain information including reisdue name, number, and whether it is fliped in (true) or out (false) in stats.dat");
         }
-        // Spits out the info on what residues stacked and at what frequency
-        for(i = 0; i < 20; i++){
-            if(stack[i] != 0){
-                System.out.println((char)getName(i) + " stacked " + stack[i] + " time(s)");
-            fout.println((char)getName(i) + " stacked " + stack[i] + " time(s)");
+    
+        // Compares the helix axis test with CBisInside, residue by residue
+        if(AxisCheck){
+            HelixAxis axis = atoms.axis();
+            int agree = 0;
+            boolean planes, cylinder;
+            for(i = 0; i < (END-START); i++){
+                planes = CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,END-START,false,isLH);
+                cylinder = axis.inside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),false);
+                if(planes == cylinder){
+                    agree++;
+                }else{
+                    sink.file("" + (START+i) + " " + seq[START+i-1] + ": planes " + planes + " axis " + cylinder);
+                }
             }
+            sink.println("The helix axis agrees with CBisInside for " + agree + " of " + (END-START) + " residues");
+            sink.record("axis_check", "agree", agree, "residues", END-START);
         }
-    }
     
-    // Hydrogen Bonding
-    if(HydroOn){
-        //PrintWriter hout = new PrintWriter(new FileOutputStream("Reader3Hbond.dat"), true);
-        for(i = 0; i < (END-START); i++){
-            getHbond(i,NdonPos,NaccPos,Npos,OdonPos,OaccPos,Opos,CPpos,CBpos,NePos,START,END,seq, fout);
+        // Alternate location conformers
+        if(AltLocOn){
+            altLocStats(alts, START, END, seq, code, isLH, atoms, sink);
         }
-        //hout.close();
+    }finally{
+        sink.close(); // waits for the writing thread to finish the files
+    }
     }
     
-    // Total Stats
-    if(TotStats){
-        // Gives information about the dimensions of the helix that was worked on
-        double turns = 0;
-        Np = 0;
-        // loops through until it cannot find another residue directly above the current one, counting the rings as it goes
-        for(i = 0; i < (END-START); i=i){
-            Np = getNplus(i, 3, 0, 9, Math.min(30,(END-START) - i), CApos);
-            i += Np;
-            if(Np != 0){
-                turns = turns + 1.0;
+    /*
+     * altLocStats
+     * takes AltLocSet, int, int, char[], byte[], boolean, AtomTable, ResultSink
+     * returns void
+     * input: (the alternate locations, start residue, end residue, sequence array, the sequence as residue codes, is the helix left handed,
+     *      the atoms (the first conformer), where the statistics are stored)
+     *
+     * The statistics above are for the first record of each atom, which mixes the conformers if a structure has
+     * alternate locations. This function goes through every alternate location and works out which residues point
+     * in or out, the volume and hydrophobisity inside and outside, and the stacks for that conformer.
+     *
+     * The first conformer is worked out once and every other conformer starts from it. Only the residues that
+     * have an atom somewhere else are tested with CBisInside again. If a C alpha moved, the residues within 50 of it
+     * are tested again too, since CBisInside builds its planes out of the C alphas around the residue.
+     * The totals are changed by the residues that flipped and only the stacks with a residue that was tested
+     * again are looked at.
+     */
+    private static void altLocStats(AltLocSet alts, int START, int END, char seq[], byte code[], boolean isLH, AtomTable atoms, ResultSink sink){
+        int len = END-START;
+        int i, j, k, n, redone, Np, Nm, low, stacked;
+        boolean base[] = new boolean[len];
+        boolean in[];
+        double volIn = 0.0, hydroIn = 0.0, hydroOut = 0.0;
+        double vol, hIn, hOut;
+        String out;
+        
+        // the first conformer
+        for(i = 0; i < len; i++){
+            base[i] = CBisInside(i,atoms.x(AtomTable.CB, i),atoms.y(AtomTable.CB, i),atoms.z(AtomTable.CB, i),atoms,len,false,isLH);
+            if(base[i]){
+                volIn += ResidueAlphabet.VOL[code[START+i-1]];
+                hydroIn += ResidueAlphabet.HYDRO[code[START+i-1]];
             }else{
-                i = END-START;
-                if((i+30)<END){
-                        turns = 0.0;
-            }
+                hydroOut += ResidueAlphabet.HYDRO[code[START+i-1]];
             }
         }
-        // if it failed (due to complicated side loop), or if wanted, this gives a 18 residue/ring approximation for the turns. turns = 0; will force this approximation
-        if(turns == 0){
-            if(isLH){
-                turns = ((END-START)/18.0);
-        }else{
-            turns = ((END-START)/22.0);
-        }
-        }      
-            System.out.println("There were " + (END-START) + " residues (" + START + "-" + END + "), and approximatly " + turns + " turns.");
-        fout.println("There were " + (END-START) + " residues (" + START + "-" + END + "), and approximatly " + turns + " turns.");
-    
-    
-        // Sequence and oreintation (true = in, false = out)
-            for(i = 0; i < (END-START) ; i++){
-                fout.println(""+ (START+i)+ " " + seq[START+i-1] + ": " + CBisInside(i,CBpos[i][0],CBpos[i][1],CBpos[i][2],CApos,END-START,false,isLH));
+        sink.println("Alternate locations: " + alts.conformers() + " conformer(s)");
+        
+        for(k = 0; k < alts.conformers(); k++){
+            // a copy of the first conformer with the atoms of this one written over it
+            AtomTable conf = atoms.copy();
+            boolean moved[] = new boolean[len];
+            n = alts.apply(k, moved, conf);
+            
+            // the residues that have to be tested again
+            boolean redo[] = moved.clone();
+            for(i = 0; i < len; i++){
+                if(moved[i] && (conf.x(AtomTable.CA, i) != atoms.x(AtomTable.CA, i) || conf.y(AtomTable.CA, i) != atoms.y(AtomTable.CA, i) || conf.z(AtomTable.CA, i) != atoms.z(AtomTable.CA, i))){
+                    for(j = Math.max(0, i-50); j < Math.min(len, i+51); j++){
+                        redo[j] = true;
+                    }
+                }
             }
-    
-        System.out.println("This data and the chain information including reisdue name, number, and whether it is fliped in (true) or out (false) in stats.dat");
-    }
+            
+            in = base.clone();
+            vol = volIn;
+            hIn = hydroIn;
+            hOut = hydroOut;
+            redone = 0;
+            out = "";
+            for(i = 0; i < len; i++){
+                if(redo[i]){
+                    redone++;
+                    in[i] = CBisInside(i,conf.x(AtomTable.CB, i),conf.y(AtomTable.CB, i),conf.z(AtomTable.CB, i),conf,len,false,isLH);
+                    if(in[i] != base[i]){
+                        if(in[i]){
+                            vol += ResidueAlphabet.VOL[code[START+i-1]];
+                            hIn += ResidueAlphabet.HYDRO[code[START+i-1]];
+                            hOut -= ResidueAlphabet.HYDRO[code[START+i-1]];
+                        }else{
+                            vol -= ResidueAlphabet.VOL[code[START+i-1]];
+                            hIn -= ResidueAlphabet.HYDRO[code[START+i-1]];
+                            hOut += ResidueAlphabet.HYDRO[code[START+i-1]];
+                        }
+                        out += (START+i) + " " + seq[START+i-1] + " flips " + (in[i] ? "in" : "out") + "\n";
+                    }
+                }
+            }
+            
+            // stacks with a residue that was tested again (each pair is looked at from its lower residue)
+            for(i = 0; i < len; i++){
+                if(redo[i] && code[START+i-1] != ResidueAlphabet.GLY){
+                    Nm = conf.rungs(RungMap.NEAR).down(i);
+                    for(j = 0; j < 2; j++){
+                        if(j == 0){
+                            low = i;
+                            Np = conf.rungs(RungMap.NEAR).up(i);
+                        }else{
+                            low = i - Nm;
+                            Np = Nm;
+                        }
+                        if(Np != 0 && low + Np < len && (j == 0 || !redo[low]) && code[START+low-1] == code[START+low+Np-1]){
+                            // 0 = no stack, 1 = inward stack, 2 = outward stack
+                            stacked = (in[low] != in[low+Np]) ? 0 : (in[low] ? 1 : 2);
+                            if(stacked != ((base[low] != base[low+Np]) ? 0 : (base[low] ? 1 : 2))){
+                                if(stacked == 0){
+                                    out += "No stack at " + (START+low) + " and " + (START+low+Np) + "\n";
+                                }else{
+                                    out += ((stacked == 1) ? "Inward" : "Outward") + " Stack at " + (START+low) + " and " + (START+low+Np) + " with " + seq[START+low-1] + "\n";
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            
+            sink.println("Conformer " + alts.id(k) + ": " + n + " residue(s) differ, " + redone + " tested again");
+            for(String change : out.split("\n")){
+                if(change.length() > 0){
+                    sink.println(change);
+                }
+            }
+            sink.println("Volume: " + vol);
+            sink.println("IN: Total hydrophobisity: " + hIn);
+            sink.println("OUT: Total hydrophobisity: " + hOut);
+            sink.record("altloc", "conformer", alts.id(k), "differ", n, "tested", redone, "volume", vol, "hydroIn", hIn, "hydroOut", hOut);
+        }
     }
     
     /*
      * getHbond
-     * takes int, double[][], double[][], double[][], double[][], double[][], double[][], double[][], int, int ,char
+     * takes int, AtomTable, int, int ,char[], byte[], ResultSink
      * returns int (dummy placeholder for now)
-     * Input: (residue to test for possible H bonds on, Nitrogen donor position array, Nitrogen acceptor position array
-     *      Nitrogen backbone position array, Oxygen donor position array, Oxygen acceptor position array,
-     *      Oxygen backbone position array, the C' position arrau, the C beta position array,
-     *          the bond angle atom postion array (see comments below), start residue, end residue, sequence array)
+     * Input: (residue to test for possible H bonds on, the atoms (the Nitrogen and Oxygen donors and acceptors,
+     *      the backbone N, O and C', the C beta and the bond angle atom (see comments below)), start residue, end residue, sequence array,
+     *      the sequence as residue codes (see ResidueAlphabet), where the H bonds are written)
      *
      * This function takes in information regarding the positions of the atoms that play a role in hydrogen bonding,
      * it determines whether or not there is a possible hydrogen bond by finding the distance between two atoms that
      * could participate in a hydrogen bond with eachother. The distances were taken from Whitford's Proteins. The distance
      * of the covalent bond between the atom and its hydrogen is assumed to be 0.96 A (Wikipedia). If there is a hydrogen bond
      * the type of H bond as well as the asociated atom and residues are outputed to the screen. This information is then also
-     * outputed to a file Reader3Hbond.dat
+     * outputed to stats_*.dat and a record of it to the results_* file (see hbondFound)
      *
      * To determine the bond angles of the H bonds we need to have another atom take another atom into account to determine
      * the angles at which the hydrogen bonds are formed and throw out the ones at too sharp of an angle.
@@ -885,7 +818,7 @@ public class Reader3
      *
      * The angle between the vector that points from C' to O and the vector that points from C' to N.
      */
-    private static int getHbond(int res, double Nd[][], double Na[][], double N[][], double Od[][], double Oa[][], double O[][], double cp[][], double cb[][], double ne[][], int start, int end, char seq[], PrintWriter hout) throws
+    private static int getHbond(int res, AtomTable atoms, int start, int end, char seq[], byte code[], ResultSink hout) throws
     IOException,
     FileNotFoundException
     {
@@ -893,164 +826,160 @@ public class Reader3
     double dist = 0.0;
     int END = end, START = start;
     int i;
-    if(res == 0){
-        System.out.println("Side chain hydrogen bonds");
-        hout.println("Side chain hydrogen bonds");
-    }
-    switch(seq[res+start-1]){
-        case 'Q':
-            for(i = (res - Math.min(30,res)); i < Math.min(30,(END-START-res)); i++){
-            dist = Math.sqrt((Nd[res][0] - O[res + i][0])*(Nd[res][0] - O[res + i][0]) + (Nd[res][1] - O[res + i][1])*(Nd[res][1] - O[res + i][1]) + (Nd[res][2] - O[res + i][2])*(Nd[res][2] - O[res + i][2]));
+    int lo = res - Math.min(30,res), hi = Math.min(30,(END-START-res)); // the offsets the loops below go over, the partners are res+lo to res+hi-1
+    double dO[], dOacc[], dNacc[], dN[]; // the squared distances from the donor to the backbone O, side chain O acceptor, side chain N acceptor and backbone N of the partners (see window)
+    // the donor is picked by its residue, the partners by the side chain atoms they have (see ResidueAlphabet.HBOND)
+    switch(code[res+start-1]){
+        case ResidueAlphabet.GLN:
+            dO = window(atoms, AtomTable.NDON, res, AtomTable.O, lo, hi);
+            dOacc = window(atoms, AtomTable.NDON, res, AtomTable.OACC, lo, hi);
+            dNacc = window(atoms, AtomTable.NDON, res, AtomTable.NACC, lo, hi);
+            for(i = lo; i < hi; i++){
+            dist = Math.sqrt(dO[i-lo]);
             if(dist < 3.86 && i != 0){
-                if(angleWithin(Nd[res],cp[res+i],O[res+i],.698132)){
-                    System.out.println("Amide - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
-                hout.println("Amide - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
+                if(angleWithin(atoms, AtomTable.NDON, res, AtomTable.CP, res+i, AtomTable.O, res+i, .698132)){
+                    hbondFound(hout, "Amide - carbonyl", res+start, i+start+res, "Amide - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
             }
             }
-            if(seq[start + res + i - 1] == 'S'){
-                dist = Math.sqrt((Nd[res][0] - Oa[res + i][0])*(Nd[res][0] - Oa[res + i][0]) + (Nd[res][1] - Oa[res + i][1])*(Nd[res][1] - Oa[res + i][1]) + (Nd[res][2] - Oa[res + i][2])*(Nd[res][2] - Oa[res + i][2]));
+            if(code[start + res + i - 1] == ResidueAlphabet.SER){
+                dist = Math.sqrt(dOacc[i-lo]);
             if(dist < 3.96 && i != 0){
-                if(angleWithin(Nd[res],cb[res+i],Oa[res+i],.698132)){
-                        System.out.println("Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (O)");
-                    hout.println("Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (O)");
+                if(angleWithin(atoms, AtomTable.NDON, res, AtomTable.CB, res+i, AtomTable.OACC, res+i, .698132)){
+                        hbondFound(hout, "Amide - hydroxyl", res+start, start+res+i, "Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (O)");
                     }
             }
             }
-            if(seq[start + res + i - 1] == 'H'){
-                dist = Math.sqrt((Nd[res][0] - Na[res + i][0])*(Nd[res][0] - Na[res + i][0]) + (Nd[res][1] - Na[res + i][1])*(Nd[res][1] - Na[res + i][1]) + (Nd[res][2] - Na[res + i][2])*(Nd[res][2] - Na[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.NACC)) != 0){
+                dist = Math.sqrt(dNacc[i-lo]);
             if(dist < 4.06 && i != 0){
-                if(angleWithin(Nd[res],ne[res+i],Na[res+i],.698132)){
-                        System.out.println("Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (N)");
-                    hout.println("Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (N)");
+                if(angleWithin(atoms, AtomTable.NDON, res, AtomTable.NE, res+i, AtomTable.NACC, res+i, .698132)){
+                        hbondFound(hout, "Amide - imidazole", res+start, start+res+i, "Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (N)");
                 }
                 }
             }
         }
         break;
-            case 'N':
-            for(i = (res - Math.min(30,res)); i < Math.min(30,(END-START-res)); i++){
-            dist = Math.sqrt((Nd[res][0] - O[res + i][0])*(Nd[res][0] - O[res + i][0]) + (Nd[res][1] - O[res + i][1])*(Nd[res][1] - O[res + i][1]) + (Nd[res][2] - O[res + i][2])*(Nd[res][2] - O[res + i][2]));
+            case ResidueAlphabet.ASN:
+            dO = window(atoms, AtomTable.NDON, res, AtomTable.O, lo, hi);
+            dOacc = window(atoms, AtomTable.NDON, res, AtomTable.OACC, lo, hi);
+            dNacc = window(atoms, AtomTable.NDON, res, AtomTable.NACC, lo, hi);
+            for(i = lo; i < hi; i++){
+            dist = Math.sqrt(dO[i-lo]);
             if(dist < 3.86 && i != 0){
-                if(angleWithin(Nd[res],cp[res+i],O[res+i],.698132)){
-                    System.out.println("Amide - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
-                hout.println("Amide - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
+                if(angleWithin(atoms, AtomTable.NDON, res, AtomTable.CP, res+i, AtomTable.O, res+i, .698132)){
+                    hbondFound(hout, "Amide - carbonyl", res+start, i+start+res, "Amide - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
                 }
             }
-            if(seq[start + res + i - 1] == 'S'){
-                dist = Math.sqrt((Nd[res][0] - Oa[res + i][0])*(Nd[res][0] - Oa[res + i][0]) + (Nd[res][1] - Oa[res + i][1])*(Nd[res][1] - Oa[res + i][1]) + (Nd[res][2] - Oa[res + i][2])*(Nd[res][2] - Oa[res + i][2]));
+            if(code[start + res + i - 1] == ResidueAlphabet.SER){
+                dist = Math.sqrt(dOacc[i-lo]);
             if(dist < 3.96 && i != 0){
-                if(angleWithin(Nd[res],cb[res+i],Oa[res+i],.698132)){
-                        System.out.println("Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (O)");
-                    hout.println("Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (O)");
+                if(angleWithin(atoms, AtomTable.NDON, res, AtomTable.CB, res+i, AtomTable.OACC, res+i, .698132)){
+                        hbondFound(hout, "Amide - hydroxyl", res+start, start+res+i, "Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (O)");
                     }
             }
             }
-            if(seq[start + res + i - 1] == 'H'){
-                dist = Math.sqrt((Nd[res][0] - Na[res + i][0])*(Nd[res][0] - Na[res + i][0]) + (Nd[res][1] - Na[res + i][1])*(Nd[res][1] - Na[res + i][1]) + (Nd[res][2] - Na[res + i][2])*(Nd[res][2] - Na[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.NACC)) != 0){
+                dist = Math.sqrt(dNacc[i-lo]);
             if(dist < 4.06 && i != 0){
-                if(angleWithin(Nd[res],ne[res+i],Na[res+i],.698132)){
-                        System.out.println("Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (N)");
-                    hout.println("Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (N)");
+                if(angleWithin(atoms, AtomTable.NDON, res, AtomTable.NE, res+i, AtomTable.NACC, res+i, .698132)){
+                        hbondFound(hout, "Amide - imidazole", res+start, start+res+i, "Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " (N) to " + (start+res+i) + " (N)");
                 }
                 }
             }
         }
         break;
-        case 'S':
-            for(i = (res - Math.min(30,res)); i < Math.min(30,(END-START-res)); i++){
-            dist = Math.sqrt((Od[res][0] - O[res + i][0])*(Od[res][0] - O[res + i][0]) + (Od[res][1] - O[res + i][1])*(Od[res][1] - O[res + i][1]) + (Od[res][2] - O[res + i][2])*(Od[res][2] - O[res + i][2]));
+        case ResidueAlphabet.SER:
+            dO = window(atoms, AtomTable.ODON, res, AtomTable.O, lo, hi);
+            dN = window(atoms, AtomTable.ODON, res, AtomTable.N, lo, hi);
+            dOacc = window(atoms, AtomTable.ODON, res, AtomTable.OACC, lo, hi);
+            for(i = lo; i < hi; i++){
+            dist = Math.sqrt(dO[i-lo]);
             if(dist < 3.76 && i != 0){
-                if(angleWithin(Od[res],cp[res+i],Od[res+i],.698132)){
-                    System.out.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
-                hout.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
+                if(angleWithin(atoms, AtomTable.ODON, res, AtomTable.CP, res+i, AtomTable.ODON, res+i, .698132)){
+                    hbondFound(hout, "Hydroxyl - carbonyl", res+start, i+start+res, "Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
             }
             }
-            dist = Math.sqrt((Od[res][0] - N[res + i][0])*(Od[res][0] - N[res + i][0]) + (Od[res][1] - N[res + i][1])*(Od[res][1] - N[res + i][1]) + (Od[res][2] - N[res + i][2])*(Od[res][2] - N[res + i][2]));
+            dist = Math.sqrt(dN[i-lo]);
             if(dist < 3.96 && i != 0){
-                if(angleWithin(N[res+i],Od[res],cb[res],.698132)){
-                    System.out.println("Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone N " + (i+start+res));
-                hout.println("Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone N " + (i+start+res));
+                if(angleWithin(atoms, AtomTable.N, res+i, AtomTable.ODON, res, AtomTable.CB, res, .698132)){
+                    hbondFound(hout, "Amide - hydroxyl", res+start, i+start+res, "Amide - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone N " + (i+start+res));
             }
             }
-            if(seq[start + res + i -1] == 'S' || seq[start + res + i -1] == 'T' || seq[start + res + i -1] == 'Y'){
-                dist = Math.sqrt((Od[res][0] - Oa[res + i][0])*(Od[res][0] - Oa[res + i][0]) + (Od[res][1] - Oa[res + i][1])*(Od[res][1] - Oa[res + i][1]) + (Od[res][2] - Oa[res + i][2])*(Od[res][2] - Oa[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.ODON)) != 0){
+                dist = Math.sqrt(dOacc[i-lo]);
                 if(dist < 3.76 && i != 0){
-                System.out.println("Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
-                hout.println("Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
+                hbondFound(hout, "Hydroxyl - hydroxyl", res+start, res+start+i, "Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
             }
             }
-            if(seq[start + res + i - 1] == 'Q' || seq[start + res + i - 1] == 'N'){
-                dist = Math.sqrt((Od[res][0] - Oa[res + i][0])*(Od[res][0] - Oa[res + i][0]) + (Od[res][1] - Oa[res + i][1])*(Od[res][1] - Oa[res + i][1]) + (Od[res][2] - Oa[res + i][2])*(Od[res][2] - Oa[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.NDON)) != 0){
+                dist = Math.sqrt(dOacc[i-lo]);
             if(dist < 4.06 && i != 0){
-                if(angleWithin(Od[res],ne[res+i],Oa[res+i],.698132)){
-                    System.out.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
-                    hout.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
+                if(angleWithin(atoms, AtomTable.ODON, res, AtomTable.NE, res+i, AtomTable.OACC, res+i, .698132)){
+                    hbondFound(hout, "Hydroxyl - carbonyl", res+start, res+start+i, "Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
                 }
             }
             }
         }
         break;
-        case 'T':
-            for(i = (res - Math.min(30,res)); i < Math.min(30,(END-START-res)); i++){
-            dist = Math.sqrt((Od[res][0] - O[res + i][0])*(Od[res][0] - O[res + i][0]) + (Od[res][1] - O[res + i][1])*(Od[res][1] - O[res + i][1]) + (Od[res][2] - O[res + i][2])*(Od[res][2] - O[res + i][2]));
+        case ResidueAlphabet.THR:
+            dO = window(atoms, AtomTable.ODON, res, AtomTable.O, lo, hi);
+            dOacc = window(atoms, AtomTable.ODON, res, AtomTable.OACC, lo, hi);
+            for(i = lo; i < hi; i++){
+            dist = Math.sqrt(dO[i-lo]);
             if(dist < 3.76 && i != 0){
-                if(angleWithin(Od[res],cp[res+i],Od[res+i],.698132)){
-                    System.out.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
-                hout.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
+                if(angleWithin(atoms, AtomTable.ODON, res, AtomTable.CP, res+i, AtomTable.ODON, res+i, .698132)){
+                    hbondFound(hout, "Hydroxyl - carbonyl", res+start, i+start+res, "Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
             }
             }
-            if(seq[start + res + i -1] == 'S' || seq[start + res + i -1] == 'T' || seq[start + res + i -1] == 'Y'){
-                dist = Math.sqrt((Od[res][0] - Oa[res + i][0])*(Od[res][0] - Oa[res + i][0]) + (Od[res][1] - Oa[res + i][1])*(Od[res][1] - Oa[res + i][1]) + (Od[res][2] - Oa[res + i][2])*(Od[res][2] - Oa[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.ODON)) != 0){
+                dist = Math.sqrt(dOacc[i-lo]);
                 if(dist < 3.76 && i != 0){
-                System.out.println("Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
-                hout.println("Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
+                hbondFound(hout, "Hydroxyl - hydroxyl", res+start, res+start+i, "Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
             }
             }
-            if(seq[start + res + i - 1] == 'Q' || seq[start + res + i - 1] == 'N'){
-                dist = Math.sqrt((Od[res][0] - Oa[res + i][0])*(Od[res][0] - Oa[res + i][0]) + (Od[res][1] - Oa[res + i][1])*(Od[res][1] - Oa[res + i][1]) + (Od[res][2] - Oa[res + i][2])*(Od[res][2] - Oa[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.NDON)) != 0){
+                dist = Math.sqrt(dOacc[i-lo]);
             if(dist < 4.06 && i != 0){
-                if(angleWithin(Od[res],ne[res+i],Oa[res+i],.698132)){
-                    System.out.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
-                    hout.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
+                if(angleWithin(atoms, AtomTable.ODON, res, AtomTable.NE, res+i, AtomTable.OACC, res+i, .698132)){
+                    hbondFound(hout, "Hydroxyl - carbonyl", res+start, res+start+i, "Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
                 }
             }
             }
         }
         break;
-        case 'Y':
-            for(i = (res - Math.min(30,res)); i < Math.min(30,(END-START-res)); i++){
-            dist = Math.sqrt((Od[res][0] - O[res + i][0])*(Od[res][0] - O[res + i][0]) + (Od[res][1] - O[res + i][1])*(Od[res][1] - O[res + i][1]) + (Od[res][2] - O[res + i][2])*(Od[res][2] - O[res + i][2]));
+        case ResidueAlphabet.TYR:
+            dO = window(atoms, AtomTable.ODON, res, AtomTable.O, lo, hi);
+            dOacc = window(atoms, AtomTable.ODON, res, AtomTable.OACC, lo, hi);
+            for(i = lo; i < hi; i++){
+            dist = Math.sqrt(dO[i-lo]);
             if(dist < 3.76 && i != 0){
-                if(angleWithin(Od[res],cp[res+i],Od[res+i],.698132)){
-                    System.out.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
-                hout.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
+                if(angleWithin(atoms, AtomTable.ODON, res, AtomTable.CP, res+i, AtomTable.ODON, res+i, .698132)){
+                    hbondFound(hout, "Hydroxyl - carbonyl", res+start, i+start+res, "Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone O " + (i+start+res));
             }
             }
-            if(seq[start + res + i -1] == 'S' || seq[start + res + i -1] == 'T' || seq[start + res + i -1] == 'Y'){
-                dist = Math.sqrt((Od[res][0] - Oa[res + i][0])*(Od[res][0] - Oa[res + i][0]) + (Od[res][1] - Oa[res + i][1])*(Od[res][1] - Oa[res + i][1]) + (Od[res][2] - Oa[res + i][2])*(Od[res][2] - Oa[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.ODON)) != 0){
+                dist = Math.sqrt(dOacc[i-lo]);
                 if(dist < 3.76 && i != 0){
-                System.out.println("Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
-                hout.println("Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
+                hbondFound(hout, "Hydroxyl - hydroxyl", res+start, res+start+i, "Hydroxyl - hydroxyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
             }
             }
-            if(seq[start + res + i - 1] == 'Q' || seq[start + res + i - 1] == 'N'){
-                dist = Math.sqrt((Od[res][0] - Oa[res + i][0])*(Od[res][0] - Oa[res + i][0]) + (Od[res][1] - Oa[res + i][1])*(Od[res][1] - Oa[res + i][1]) + (Od[res][2] - Oa[res + i][2])*(Od[res][2] - Oa[res + i][2]));
+            if((ResidueAlphabet.HBOND[code[start + res + i - 1]] & (1 << AtomTable.NDON)) != 0){
+                dist = Math.sqrt(dOacc[i-lo]);
             if(dist < 4.06 && i != 0){
-                if(angleWithin(Od[res],ne[res+i],Oa[res+i],.698132)){
-                    System.out.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
-                    hout.println("Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
+                if(angleWithin(atoms, AtomTable.ODON, res, AtomTable.NE, res+i, AtomTable.OACC, res+i, .698132)){
+                    hbondFound(hout, "Hydroxyl - carbonyl", res+start, res+start+i, "Hydroxyl - carbonyl H bond at " + (res+start) + " " + seq[res+start-1] + " and " + (res+start+i) + " " + seq[res+start+i-1]);
                 }
             }
             }
         }
         break;
-        case 'H':
-            for(i = (res - Math.min(30,res)); i < Math.min(30,(END-START-res)); i++){
-            dist = Math.sqrt((N[res][0] - Na[res + i][0])*(N[res][0] - Na[res + i][0]) + (N[res][1] - Na[res + i][1])*(N[res][1] - Na[res + i][1]) + (N[res][2] - Na[res + i][2])*(N[res][2] - Na[res + i][2]));
+        case ResidueAlphabet.HIS:
+            dNacc = window(atoms, AtomTable.N, res, AtomTable.NACC, lo, hi);
+            for(i = lo; i < hi; i++){
+            dist = Math.sqrt(dNacc[i-lo]);
             if(dist < 3.96 && i !=0){
-                if(angleWithin(N[res],ne[res],Na[res+i],.698132)){
-                    System.out.println("Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone N " + (res+start+i));
-                hout.println("Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone N " + (res+start+i));
+                if(angleWithin(atoms, AtomTable.N, res, AtomTable.NE, res, AtomTable.NACC, res+i, .698132)){
+                    hbondFound(hout, "Amide - imidazole", res+start, res+start+i, "Amide - imidazole H bond at " + (res+start) + " " + seq[res+start-1] + " and backbone N " + (res+start+i));
             }
             }
         }
@@ -1061,23 +990,38 @@ public class Reader3
     return 0;
     }
     
+    // reports a hydrogen bond, the readable line and a record of the two residues
+    private static void hbondFound(ResultSink hout, String type, int res, int partner, String line){
+        hout.println(line);
+        hout.record("hbond", "residue", res, "partner", partner, "type", type);
+    }
+    
+    // the squared distances from the donor (role rd) of residue res to the acceptors (role ra) of residues res+lo to res+hi-1,
+    // entry i-lo is partner res+i (see DistanceKernels.squared)
+    private static double[] window(AtomTable atoms, int rd, int res, int ra, int lo, int hi){
+        double d2[] = new double[Math.max(hi - lo, 0)];
+        DistanceKernels.get().squared(atoms.x(rd, res), atoms.y(rd, res), atoms.z(rd, res), atoms.roleColumn(ra, 0), atoms.roleColumn(ra, 1), atoms.roleColumn(ra, 2), res+lo, res+hi, d2, 0);
+        return d2;
+    }
+    
     /* angleWithin
-     * takes: double[], double[], double[], double
+     * takes: AtomTable, int, int, int, int, int, int, double
      * returns boolean
-     * input: (donor position, heavy atom angle refrence position, acceptor position, angle it must be less than (radians)
+     * input: (the atoms, role and residue of the donor, role and residue of the heavy atom angle refrence, role and residue of the acceptor,
+     *      angle it must be less than (radians)
      *
      * This function returns true if the vector from b to a makes an angle less than a specified angle
      * with the vector that points from b to c, and false otherwise
      */
-    private static boolean angleWithin(double a[], double b[], double c[], double angle){
+    private static boolean angleWithin(AtomTable atoms, int ra, int a, int rb, int b, int rc, int c, double angle){
         double vect[][] = new double [2][3];
     double dot = 0.0;
     double mag1, mag2;
     double actAng;
     int i;
     for(i = 1; i < 3; i++){
-        vect[0][i] = a[i] - b[i];
-        vect[1][i] = c[i] - b[i];
+        vect[0][i] = atoms.get(ra, a, i) - atoms.get(rb, b, i);
+        vect[1][i] = atoms.get(rc, c, i) - atoms.get(rb, b, i);
     }
     mag1 = Math.sqrt(vect[0][0]*vect[0][0] + vect[0][1]*vect[0][1] + vect[0][2]*vect[0][2]);
     mag2 = Math.sqrt(vect[1][0]*vect[1][0] + vect[1][1]*vect[1][1] + vect[1][2]*vect[1][2]);
@@ -1091,11 +1035,34 @@ public class Reader3
     }
     
     
+    /*
+     * readSideChains
+     * takes String, boolean, int, int
+     * returns SideChainAtoms
+     * input: (the name of the coordinate file, is it an mmCIF file?, starting residue, ending residue)
+     *
+     * Reads every side chain atom of residues START to END out of the *.pdb or *.cif file again (the AtomTable, the cache and
+     * the corpus store only keep the few that the other statistics need)
+     */
+    private static SideChainAtoms readSideChains(String ins, boolean isCif, int START, int END) throws
+    IOException
+    {
+        SideChainAtoms side = new SideChainAtoms();
+        if(isCif){
+            CifAtomSiteReader.readSideChains(ins, START, END, side);
+            return side;
+        }
+        ByteBuffer pdb = PdbInput.load(ins);
+        StructureIndex index = StructureIndex.scan(pdb);
+        PdbAtomParser.parseSideChains(pdb, (START <= index.lastRes && index.resOffset[START] >= 0) ? index.resOffset[START] : index.atomStart, START, END, side);
+        return side;
+    }
+    
     /*
      * findVolApp
-     * takes: double[][], int, int
+     * takes: AtomTable, int, int, ResultSink
      * returns double
-     * input: (C alpha position array, starting residue, ending residue)
+     * input: (the atoms (only the C alphas are used), starting residue, ending residue, where the edge length is printed (the screen only))
      *
      * This will find an approximation to the volume by assuming that the helix is a triangular cylinder
      * it finds the value of the longest side of the (effectivly) equiladiral triangle
@@ -1103,172 +1070,35 @@ public class Reader3
      * where L is the length of a side of the equiladiral triangle and
      * where H is the hieght of the structure
      */
-    private static double findVolApp(double CAgrid[][], int START, int END){
+    private static double findVolApp(AtomTable atoms, int START, int END, ResultSink sink){
         int i, j = 0, Np;
     double MaxDist = 0.0;
     double dist, turns = 0.0;
+    CaDistances ca = atoms.caDistances();
     // finds the distance away in 1D of the closest vertical residue in 3D to the first residue we do this to know how far in 1D we have to go to make a ring in 3D
-    Np = getNplus(0,3,0,9,Math.min(30,END),CAgrid);
+    Np = atoms.rungs(RungMap.NEAR).up(0);
     for(i = 0; i < Np; i++){ // loops over the ring described above
         for(j = 0; j < Np; j++){ // searches through again (so we find the max dist between ANY two points on the ring
-            // computes the euclidian distace between the two points
-            dist = Math.sqrt((CAgrid[i][0] - CAgrid[j][0])*(CAgrid[i][0] - CAgrid[j][0]) + (CAgrid[i][1] - CAgrid[j][1])*(CAgrid[i][1] - CAgrid[j][1]) + (CAgrid[i][2] - CAgrid[j][2])*(CAgrid[i][2] - CAgrid[j][2]));
+            // the squared euclidian distace between the two points
+            dist = ca.get(i, j);
             if(dist > MaxDist){ // if its bigger than the current maximum distance then it replaces it as the maximum distance
             MaxDist = dist; // this allows the maximum distance between any two points to "bubble sort" itself to the top
             }
         }
     }
+    MaxDist = Math.sqrt(MaxDist); // the longest distance (they were compared squared)
     turns = ((END-START)/18.0); // approximates 18 turns per amino acid
-    System.out.println("Edge length: " + MaxDist); // output for debuging pourposes
+    sink.console("Edge length: " + MaxDist); // output for debuging pourposes
     return Math.sqrt(3)/4.0*MaxDist*MaxDist*(turns*4.8); // returns the approximated volume
     }
     
-    /*
-     * getPhi
-     * takes: int, double[][], double[][], double[][], int
-     * returns double
-     * input: (residue that you want the phi angle for, C alpha position array, N position array, C' position array, length of the 1D string of residues that make up the helix (END-START)
-     *
-     * This finds the phi angle defined by the angle between the two planes that are defined as
-     * plane 1: the plane in 3-space consisting of the positions of the N, C' (from the previous residue) and CA atoms
-     * plane 2: the plane in 3-space consisting of the positions of the C alpha, N and C' atoms
-     *
-     * for more information look up information regarding a Ramachandran Plot (page 48 of Protiens)
-     */
-    private static double getPhi(int res, double CAgrid[][], double Ngrid[][], double CPgrid[][], int len){
-    double CpN[] = new double[3]; // the vector that points from N to C'
-    double CAN[] = new double[3]; // the vector that points from N to CA
-    double cp1[] = new double[3]; // the cross product of the above two vectors
-    double NCA[] = new double[3]; // the vector that points from CA to N
-    double CPCA[] = new double[3]; // the vector that points from CA to C'
-    double cp2[] = new double[3]; // the cross product of the above two vectors
-    double dot = 0.0;
-    double cp1mag = 0.0, cp2mag = 0.0;
-    double phi = 0.0;
-    if(res != 0){
-        // Assign vectors based off of the grids
-        CpN[0] = CPgrid[res-1][0] - Ngrid[res][0];
-        CpN[1] = CPgrid[res-1][1] - Ngrid[res][1];
-        CpN[2] = CPgrid[res-1][2] - Ngrid[res][2];
-        CAN[0] = CAgrid[res][0] - Ngrid[res][0];
-        CAN[1] = CAgrid[res][1] - Ngrid[res][1];
-        CAN[2] = CAgrid[res][2] - Ngrid[res][2];
-        NCA[0] = Ngrid[res][0] - CAgrid[res][0];
-        NCA[1] = Ngrid[res][1] - CAgrid[res][1];
-        NCA[2] = Ngrid[res][2] - CAgrid[res][2];
-        CPCA[0] = CPgrid[res][0] - CAgrid[res][0];
-        CPCA[1] = CPgrid[res][1] - CAgrid[res][1];
-        CPCA[2] = CPgrid[res][2] - CAgrid[res][2];
-        // compute cross products CAN x CpN
-        cp1[0] = CAN[1]*CpN[2] - CpN[1]*CAN[2];
-        cp1[1] = CAN[2]*CpN[0] - CpN[2]*CAN[0];
-        cp1[2] = CAN[0]*CpN[1] - CpN[0]*CAN[1];
-        // CPCA x NCA
-        cp2[0] = CPCA[1]*NCA[2] - NCA[1]*CPCA[2];
-        cp2[1] = CPCA[2]*NCA[0] - NCA[2]*CPCA[0];
-        cp2[2] = CPCA[0]*NCA[1] - NCA[0]*CPCA[1];
-        // compute dot product of two cross products
-        dot = cp1[0]*cp2[0] + cp1[1]*cp2[1] + cp1[2]*cp2[2];
-        // compute magnitude of two cross products
-        cp1mag = Math.sqrt((cp1[0])*(cp1[0]) + (cp1[1])*(cp1[1]) + (cp1[2])*(cp1[2]));
-        cp2mag = Math.sqrt((cp2[0])*(cp2[0]) + (cp2[1])*(cp2[1]) + (cp2[2])*(cp2[2]));
-        // compute angles using dot product rule cp1*cp2 = |cp1||cp2|cos(theta)
-        phi = Math.acos(dot/(cp1mag*cp2mag));
-        /*
-         * These next lines make phi into (-pi,pi) form this is done by
-         * checking whether or not the angle that it sweeps out is past
-         * 6 O'clock. To do this we dot the normal vector of the plane that
-         * is stationary (which will give us a vector at 3 O'clock) with the
-         * vector that extends from the C alpha to the C'. When this is < 0
-         * then it is past 6 O'clock and we must transform phi.
-         */
-        if((cp1[0]*CPCA[0] + cp1[1]*CPCA[1] + cp1[2]*CPCA[2]) < 0){
-            phi = (-1.0)*phi;
-        }
-        // return answer
-        return phi;  
-    }else{
-        return 0.0;
-    }
-    
-    }
-    
-    /*
-     * getPsi
-     * takes: int, double[][], double[][], double[][], int
-     * returns double
-     * input: (residue that you want the psi angle for, C alpha position array, N position array, C' position array, length of the 1D string of residues that make up the helix (END-START)
-     *
-     * This finds the psi angle defined by the angle between the two planes that are defined as
-     * plane 1: the plane in 3-space consisting of the positions of the N (from the following residue), C' and CA atoms
-     * plane 2: the plane in 3-space consisting of the positions of the C alpha, N and C' atoms
-     *
-     * for more information look up information regarding a Ramachandran Plot (Page 48 of Protiens)
-     */
-    private static double getPsi(int res, double CAgrid[][], double Ngrid[][], double CPgrid[][], int len){
-    double NCA[] = new double[3]; // the vector that points from CA to N
-    double CPCA[] = new double[3]; // the vector that points from CA to C'
-    double cp2[] = new double[3]; // the cross product of the above two vectors
-    double NCp[] = new double[3]; // the vector that points from C' to N
-    double CACP[] = new double[3]; // the vector that points from C' to CA
-    double cp1[] = new double[3]; // the cross product of the above two vectors
-    double dot = 0.0;
-    double cp1mag = 0.0, cp2mag = 0.0;
-    double psi = 0.0;
-    len--;
-    if(res != len){
-        // Assign vectors based off of the grids
-        NCp[0] = Ngrid[res+1][0] - CPgrid[res][0];
-        NCp[1] = Ngrid[res+1][1] - CPgrid[res][1];
-        NCp[2] = Ngrid[res+1][2] - CPgrid[res][2];
-        CACP[0] = CAgrid[res][0] - CPgrid[res][0];
-        CACP[1] = CAgrid[res][1] - CPgrid[res][1];
-        CACP[2] = CAgrid[res][2] - CPgrid[res][2];
-        NCA[0] = Ngrid[res][0] - CAgrid[res][0];
-        NCA[1] = Ngrid[res][1] - CAgrid[res][1];
-        NCA[2] = Ngrid[res][2] - CAgrid[res][2];
-        CPCA[0] = CPgrid[res][0] - CAgrid[res][0];
-        CPCA[1] = CPgrid[res][1] - CAgrid[res][1];
-        CPCA[2] = CPgrid[res][2] - CAgrid[res][2];
-        // compute cross products NCp x CACP
-        cp1[0] = NCp[1]*CACP[2] - CACP[1]*NCp[2];
-        cp1[1] = NCp[2]*CACP[0] - CACP[2]*NCp[0];
-        cp1[2] = NCp[0]*CACP[1] - CACP[0]*NCp[1];
-        // CPCA x NCA
-        cp2[0] = CPCA[1]*NCA[2] - NCA[1]*CPCA[2];
-        cp2[1] = CPCA[2]*NCA[0] - NCA[2]*CPCA[0];
-        cp2[2] = CPCA[0]*NCA[1] - NCA[0]*CPCA[1];
-        // compute dot product of two cross products
-        dot = cp1[0]*cp2[0] + cp1[1]*cp2[1] + cp1[2]*cp2[2];
-        // compute magnitude of two cross products
-        cp1mag = Math.sqrt((cp1[0])*(cp1[0]) + (cp1[1])*(cp1[1]) + (cp1[2])*(cp1[2]));
-        cp2mag = Math.sqrt((cp2[0])*(cp2[0]) + (cp2[1])*(cp2[1]) + (cp2[2])*(cp2[2]));
-        // compute angles using dot product rule cp1*cp2 = |cp1||cp2|cos(theta)
-        psi = Math.acos(dot/(cp1mag*cp2mag));
-        /*
-         * These next lines make psi into (-pi,pi) form this is done by
-         * checking whether or not the angle that it sweeps out is past
-         * 6 O'clock. To do this we dot the normal vector of the plane that
-         * is stationary (which will give us a vector at 3 O'clock) with the
-         * vector that extends from the C' to the N. When this is < 0
-         * then it is past 6 O'clock and we must transform psi.
-         */
-        if((cp2[0]*NCp[0] + cp2[1]*NCp[1] + cp2[2]*NCp[2]) < 0){
-            psi = (-1.0)*psi;
-        }
-        // return answer
-        return psi;  
-    }else{
-        return 0.0;
-    }
-    
-    }
-    
     /*
      * findVolume
-     * takes: double[][], int, boolean, boolean
-     * returns double
-     * input (C alpha position array, length of 1D helix (END-START), strictness of the in/out test: true includes planar caps to the helix, is the helix left handed?)
+     * takes: AtomTable, int, boolean, boolean, boolean, int, long, int, double
+     * returns MonteCarloVolume
+     * input (the atoms (only the C alphas are used), length of 1D helix (END-START), strictness of the in/out test: true includes planar caps to the helix, is the helix left handed?,
+     *      test the points against the helix axis instead?, how many threads to split the points over (0 for one java.util.Random), the seed of the points (for either),
+     *      random or Halton points (MonteCarloVolume.RANDOM or HALTON), the relative standard error to stop at (0 for 500000 points))
      *
      * This function computes the volume of the helix using Monte Carlo integration
      * It finds the range of space the the helix is in and generates a ranfom test point
@@ -1277,192 +1107,55 @@ public class Reader3
      * If it is inside the helix then it is added to the count
      *
      * at the end we use the monte carlo integration formula that V = (in/total)*(space of possible values)
+     * the volume, its standard error and how many points it took are read off what is returned
+     *
+     * With the helix axis (see HelixAxis) there is no closest C alpha to find, the point is tested against the
+     * rung at its height.
+     *
+     * With workers the points are split over a fork-join pool, each worker with its own random stream from the seed,
+     * so the volume is the same every run for the same seed and workers (see MonteCarloVolume). With a precision the
+     * points are thrown in batches until the standard error is that small a part of the volume.
      */
-    private static double findVolume(double CAgrid[][], int len, boolean strict, boolean isLH){
-    double in = 0;
-        int closest = 0;
+    private static MonteCarloVolume findVolume(AtomTable atoms, int len, boolean strict, boolean isLH, boolean axis, int workers, long seed, int sampling, double precision){
+        MonteCarloVolume mc = new MonteCarloVolume(atoms, strict, isLH, axis); // finds the range of space the helix is in
+        if(precision > 0){
+            mc.converge(precision, Math.max(workers, 1), seed, sampling);
+            return mc;
+        }
+        if(workers > 0 || sampling != MonteCarloVolume.RANDOM){
+            mc.fixed(500000, Math.max(workers, 1), seed, sampling);
+            return mc;
+        }
+    long in = 0;
+        int i;
         double test[] = new double[3];
-        double max[] = new double[3];
-    double min[] = new double[3];
-        double volume = 0.0;
-        max[0] = -9000.0;
-        max[1] = -9000.0;
-        max[2] = -9000.0;
-        int i, j;
-        double minDist = 1000000.0, dist = 0.0;
-    double minMin = -1000000.0;
-        
-    // Searches for the maximum range in all three orthogonal directions that the C alpha position array includes
-        for(i = 0; i < len; i++){
-            if(CAgrid[i][0] > max[0]){
-                max[0] = CAgrid[i][0];
-            }
-            if(CAgrid[i][1] > max[1]){
-                max[1] = CAgrid[i][1];
-            }
-            if(CAgrid[i][2] > max[2]){
-                max[2] = CAgrid[i][2];
-            }
-        }
     
-    // Searches for the minimum range in all three directions that the C alpha position array includes
-    min[0] = max[0];
-    min[1] = max[1];
-    min[2] = max[2];
-    for(i = 0; i < len; i++){
-        if(CAgrid[i][0] < min[0]){
-            min[0] = CAgrid[i][0];
-        }
-        if(CAgrid[i][1] < min[1]){
-            min[1] = CAgrid[i][1];
-        }
-        if(CAgrid[i][2] < min[2]){
-            min[2] = CAgrid[i][2];
-        }
-    }
-    // We now have the maximum and minimum values for x,y,z
-    
-    // Creates a new random number generator
-        Random rand1 = new Random();
+    // Creates a new random number generator (from the seed, so this volume repeats too)
+        Random rand1 = new Random(seed);
         
     // loops over 500000 Monte Carlo points
         for(i = 0; i < 500000; i++){
-            test[0] = rand1.nextDouble()*(max[0]-min[0]) + min[0]; // gets test x value
-            test[1] = rand1.nextDouble()*(max[1]-min[1]) + min[1]; // gets test y value
-            test[2] = rand1.nextDouble()*(max[2]-min[2]) + min[2]; // gets test z value
-        
-        // finds the closest C alpha point to the test value using a "bubble sort"
-            for(j = 0; j < len; j++){
-                dist = Math.sqrt((test[0]-CAgrid[j][0])*(test[0]-CAgrid[j][0]) + (test[1]-CAgrid[j][1])*(test[1]-CAgrid[j][1]) + (test[2]-CAgrid[j][2])*(test[2]-CAgrid[j][2]));
-                if(dist < minDist){
-                    minDist = dist;
-                    closest = j;
-                }
-            }
-        // determines whether or not the test value is inside the helix by pretending that it is a C beta to the closest C alpha (for info on strict see CBisINside)
-            if(CBisInside(closest, test[0], test[1], test[2], CAgrid, len, strict,isLH)){
-                in = in + 1.0;
-            }
-            minDist = 1000000.0;
-        }
-    // the monte carlo integration formula that V = (in/total)*(space of possible values)
-        volume = (in/500000.0)*(max[0]-min[0])*(max[1]-min[1])*(max[2]-min[2]);
-        return volume;
-    }
-    
-    /*
-     * getNplus
-     * takes: int, int, int, int, int, double[][]  // That is 5 ints
-     * returns int
-     * input: (residue that you want Nplus for, minimum distance away it will evaluate against (3), dummy variable (0), where it starts when looking for the residue (9), how deep into the 1D chain it will search (must be less than the number of residues left), C alpha postion array)
-     *
-     * This function searches for and returns the number of residues in between it and the residue directly above it in the helix
-     * It starts by looking at some residue a minumum distance away and compares it to the distance between it and another residue which is relivly close
-     * if it is closer than the criteria then it becomes the new closeset and it tries to find a residue which is closer yet
-     * if there is no residue above it (if its at the top of the helix) then it returns a value of zero
-     */
-    private static int getNplus(int res, int min, int minsearch, int minstart, int searchDomP, double CAgrid[][]){
-        int j = res, i;
-    double dist = 1000.0;
-    double minDist = 1000.0;
-    int Nplus = 0, Nplusp = 0;
-    boolean npOK = false;
-    //System.out.println("TEST");
-    //System.out.println(res + " " + min + " " + minsearch + " " + minstart + " " + searchDomP);
-    for(minsearch = minstart; minsearch < searchDomP; minsearch++){
-            Nplusp = Nplus;
-            //if(searchDomP > minsearch){
-                for(i = minsearch; i < searchDomP; i++){
-                    dist = Math.sqrt((CAgrid[j][0]-CAgrid[j+i][0])*(CAgrid[j][0]-CAgrid[j+i][0])+(CAgrid[j][1]-CAgrid[j+i][1])*(CAgrid[j][1]-CAgrid[j+i][1])+(CAgrid[j][2]-CAgrid[j+i][2])*(CAgrid[j][2]-CAgrid[j+i][2]));
-                    //System.out.println(dist);
-            if(dist < minDist){
-                        minDist = dist;
-                        Nplus = i;
-            //System.out.println("Lowest " + Nplus);
-                    }
-                }
-                if(Math.sqrt((CAgrid[j][0]-CAgrid[j+min-1][0])*(CAgrid[j][0]-CAgrid[j+min-1][0])+(CAgrid[j][1]-CAgrid[j+min-1][1])*(CAgrid[j][1]-CAgrid[j+min-1][1])+(CAgrid[j][2]-CAgrid[j+min-1][2])*(CAgrid[j][2]-CAgrid[j+min-1][2]))<minDist){
-                    Nplus = 0;
-                }
-            //}else{
-            //    Nplus = 0;
-            //}
+            test[0] = mc.box(0, rand1.nextDouble()); // gets test x value
+            test[1] = mc.box(1, rand1.nextDouble()); // gets test y value
+            test[2] = mc.box(2, rand1.nextDouble()); // gets test z value
         
-            if(minsearch != minstart){
-                if(Nplusp == Nplus){
-                    npOK = true;
-            //i = searchDomP;
-                    minsearch = searchDomP;
-                }else{
-                    npOK = false;
-                }
+        // finds the closest C alpha to the test value and determines whether or not the test value is inside the helix
+        // by pretending that it is a C beta to that C alpha (for info on strict see CBisINside)
+            if(mc.inside(test[0], test[1], test[2])){
+                in++;
             }
-            minDist = 1000.0;
-        }
-        if(npOK == false){
-            Nplus = 0;
         }
-    //System.out.println("Lowest " + Nplus);
-    return Nplus;
-    }
-    
-    /*
-     * getNminus
-     * takes int, int, int, int, int, double[][]
-     * returns int
-     * input: (residue that you want Nplus for, minimum distance away it will evaluate against (3), dummy variable (0), where it starts when looking for the residue (9), how deep into the 1D chain it will search (must be less than the number of residues left), C alpha postion array)
-     *
-     * This works in exactly the same way as getNplus only in the opposite direction
-     */
-    private static int getNminus(int res, int min, int minsearch, int minstart, int searchDomM, double CAgrid[][]){
-        int j = res, i;
-    double dist = 1000.0;
-    double minDist = 1000.0;
-    int Nminus = 0, Nminusp = 0;
-    boolean nmOK = false;
-    //System.out.println("TESTL");
-    for(minsearch = minstart; minsearch < searchDomM; minsearch++){ 
-            Nminusp = Nminus;
-            //if(searchDomM > minsearch){
-                for(i = minsearch; i < searchDomM; i++){
-                    dist = Math.sqrt((CAgrid[j][0]-CAgrid[j-i][0])*(CAgrid[j][0]-CAgrid[j-i][0])+(CAgrid[j][1]-CAgrid[j-i][1])*(CAgrid[j][1]-CAgrid[j-i][1])+(CAgrid[j][2]-CAgrid[j-i][2])*(CAgrid[j][2]-CAgrid[j-i][2]));
-                    //System.out.println(dist);
-            if(dist < minDist){
-                        minDist = dist;
-                        Nminus = i;
-            //System.out.println("Lowest");
-                    }
-                }
-                if(Math.sqrt((CAgrid[j][0]-CAgrid[j-min-1][0])*(CAgrid[j][0]-CAgrid[j-min-1][0])+(CAgrid[j][1]-CAgrid[j-min-1][1])*(CAgrid[j][1]-CAgrid[j-min-1][1])+(CAgrid[j][2]-CAgrid[j-min-1][2])*(CAgrid[j][2]-CAgrid[j-min-1][2]))<minDist){
-                    Nminus = 0;
-                }
-            //}else{
-            //    Nminus = 0;
-            //}
-            if(minsearch != minstart){
-                if(Nminusp == Nminus){
-                    nmOK = true;
-            //i = searchDomM;
-                    minsearch = searchDomM;
-                }else{
-                    nmOK = false;
-                }
-            }
-            minDist = 1000.0;
-        } 
-        if(nmOK == false){
-            Nminus = 0;
-        }
-    return Nminus;
+        mc.add(in, 500000);
+        return mc;
     }
     
     /*
      * CBisInside
-     * takes int, double, double, double, double[][], int, boolean, boolean
+     * takes int, double, double, double, AtomTable, int, boolean, boolean
      * returns boolean
      * input (the residue that we are comparing the test point to (usually the closest c alpha),
      *      the x coord of the test point, the y coord of the test point, the z coord of the test point,
-     *      the position array of the C alpha atoms, the 1D length of helix (END-START),
+     *      the atoms (only the C alphas are used), the 1D length of helix (END-START),
      *      the strictness of the algorithm: true will include planar caps to the helix,
      *      whether or not the helix is left handed (true) or right handed (false))
      *
@@ -1499,245 +1192,12 @@ public class Reader3
      * test vector against them in a positive way (see if they DO point along the same line). If the helix is
      * right handed then it will orient the cross products so that the test vector wants to point in the opposite
      * direction to be counted in. Left handed = true, Right handed = false.
+     *
+     * None of the vectors, cross products or caps depend on the test point, so they are worked out once for
+     * every residue and kept with the atoms (see OrientationFrames). A test is then only the dot products.
      */
-    private static boolean CBisInside(int res, double x, double y, double z, double CAgrid[][], int len, boolean strict, boolean isLH){
-        int i = 0, j = res, k;
-        int searchDomP = Math.min(50,len - res); // This determines how far away the program will search for the C alpha above
-    //_ the closest one, minimum of 50 residues except when length does not permit, in which case as far as possible
-        int searchDomM = Math.min(50,res); // same as above only for the C alpha below
-        double CACAp1[] = new double[3]; // Vector that points from the close C alpha to the next C alpha in the series
-        double CACAm1[] = new double[3]; // Vector that points from the close C alpha to the previous one in the series
-        double CACApN[] = new double[3]; // Vector that points from the close C alpha to the one directly above it
-        double CACAmN[] = new double[3]; // Vector that points from the close C alpha to the one directly below it
-        double CACB[] = new double[3]; // Vector that points from the close C alpha to the test point
-    double cp[] = new double[3]; // Generic cross product vector
-        double dot = 0.0;
-    
-    // Variables and conditions for searching for the C alpha above and below
-    int Nplus, Nminus;
-        int tests = 0, in = 0;
-        int min = 3, minsearch = 0, minstart;
-        minstart = min + 6;
-        len--;
-        
-    // Defining the vector that points from the closest C alpha to the test point
-        CACB[0] = x - CAgrid[j][0];
-        CACB[1] = y - CAgrid[j][1];
-        CACB[2] = z - CAgrid[j][2];
-        
-    // finds how many residues away the C alpha directly above is
-        Nplus = getNplus(res, min, minsearch, minstart, searchDomP, CAgrid);
-    // and then defines the vector from the closest C alpha to it
-        if(Nplus != 0){ // but only if it exists
-            CACApN[0] = CAgrid[j+Nplus][0] - CAgrid[j][0];
-            CACApN[1] = CAgrid[j+Nplus][1] - CAgrid[j][1];
-            CACApN[2] = CAgrid[j+Nplus][2] - CAgrid[j][2];
-        }
-
-    // finds how many residues away the C alpha directly below the closest is
-        Nminus = getNminus(res, min, minsearch, minstart, searchDomM, CAgrid);
-    // and defines the vector if it exists
-        if(Nminus != 0){
-            CACAmN[0] = CAgrid[j-Nminus][0] - CAgrid[j][0];
-            CACAmN[1] = CAgrid[j-Nminus][1] - CAgrid[j][1];
-            CACAmN[2] = CAgrid[j-Nminus][2] - CAgrid[j][2];
-        }
-        
-    // if the closest residue is not the last one in the sequence
-    // then it defines the vector that points from the closest C alpha to the one in front of it
-        if(res != len){
-            CACAp1[0] = CAgrid[j+1][0] - CAgrid[j][0];
-            CACAp1[1] = CAgrid[j+1][1] - CAgrid[j][1];
-            CACAp1[2] = CAgrid[j+1][2] - CAgrid[j][2];
-        }
-        
-    // if the closest residue is not the first one in the sequence
-    // then it defines the vector that points from the closest C alpha to the one behind it
-        if(res != 0){
-            CACAm1[0] = CAgrid[j-1][0] - CAgrid[j][0];
-            CACAm1[1] = CAgrid[j-1][1] - CAgrid[j][1];
-            CACAm1[2] = CAgrid[j-1][2] - CAgrid[j][2];
-
-        }
-    /* debuging outputs NOT EXECUTED WHILE COMENTED
-        System.out.println("CACAp1: " + CACAp1[0] + " " + CACAp1[1] + " " + CACAp1[2]);
-        System.out.println("CACApN: " + CACApN[0] + " " + CACApN[1] + " " + CACApN[2]);
-        System.out.println("pN: " + Nplus);
-        System.out.println("CACAm1: " + CACAm1[0] + " " + CACAm1[1] + " " + CACAm1[2]);
-        System.out.println("CACAmN: " + CACAmN[0] + " " + CACAmN[1] + " " + CACAmN[2]);
-        System.out.println("mN: " + Nminus);
-        System.out.println("CACB " + CACB[0] + " " + CACB[1] + " " + CACB[2]);
-        System.out.println("");*/
-        //System.out.println(Nplus + " " + Nminus);
-    
-        //upper right test (CACAp1 and CACApN)
-        if(Nplus != 0 && res != 0){
-            tests++; // determines that a test has been done (for >50% check)
-        // Computes the cross product of the two vectors
-            cp[0] = CACAp1[1]*CACApN[2] - CACApN[1]*CACAp1[2];
-            cp[1] = CACAp1[2]*CACApN[0] - CACApN[2]*CACAp1[0];
-            cp[2] = CACAp1[0]*CACApN[1] - CACApN[0]*CACAp1[1];
-        // Computes the dot product of the two vectors
-            dot = cp[0]*CACB[0] + cp[1]*CACB[1] + cp[2]*CACB[2];
-        // Determines whether or not it is in
-            if(dot > 0){
-            if(isLH){
-                    in++; // and counts it if it is in
-        }
-            }else{
-            if(!isLH){
-            in++;
-        }
-            }
-        }
-        //upper left
-        if(Nplus != 0 && res != len){
-            tests++; // determines that a test has been done (for >50% check)
-        // Computes the cross product of the two vectors
-            cp[0] = CACApN[1]*CACAm1[2] - CACAm1[1]*CACApN[2];
-            cp[1] = CACApN[2]*CACAm1[0] - CACAm1[2]*CACApN[0];
-            cp[2] = CACApN[0]*CACAm1[1] - CACAm1[0]*CACApN[1];
-            // Computes the dot product of the two vectors
-            dot = cp[0]*CACB[0] + cp[1]*CACB[1] + cp[2]*CACB[2];
-            // Determines whether or not it is in
-            if(dot > 0){
-            if(isLH){
-                    in++; // and counts it if it is in
-        }
-            }else{
-            if(!isLH){
-            in++;
-        }
-            }
-        }
-        //lower left
-        if(Nminus != 0 && res != 0){
-            tests++; // determines that a test has been done (for >50% check)
-        // Computes the cross product of the two vectors
-            cp[0] = CACAm1[1]*CACAmN[2] - CACAmN[1]*CACAm1[2];
-            cp[1] = CACAm1[2]*CACAmN[0] - CACAmN[2]*CACAm1[0];
-            cp[2] = CACAm1[0]*CACAmN[1] - CACAmN[0]*CACAm1[1];
-            // Computes the dot product of the two vectors
-            dot = cp[0]*CACB[0] + cp[1]*CACB[1] + cp[2]*CACB[2];
-            // Determines whether or not it is in
-            if(dot > 0){
-            if(isLH){
-                    in++; // and counts it if it is in
-        }
-            }else{
-            if(!isLH){
-            in++;
-        }
-            }
-        }
-        //lower right
-        if(Nminus != 0 && res != len){
-            tests++; // determines that a test has been done (for >50% check)
-        // Computes the cross product of the two vectors
-            cp[0] = CACAmN[1]*CACAp1[2] - CACAp1[1]*CACAmN[2];
-            cp[1] = CACAmN[2]*CACAp1[0] - CACAp1[2]*CACAmN[0];
-            cp[2] = CACAmN[0]*CACAp1[1] - CACAp1[0]*CACAmN[1];
-            // Computes the dot product of the two vectors
-            dot = cp[0]*CACB[0] + cp[1]*CACB[1] + cp[2]*CACB[2];
-            // Determines whether or not it is in
-            if(dot > 0){
-            if(isLH){
-                    in++; // and counts it if it is in
-        }
-            }else{
-            if(!isLH){
-            in++;
-        }
-            }
-        }
-        
-    // The following code will test to see if the chain is in a complicated side loop
-    // If there is no C alpha directly above and below but the residue is in the middle of
-    // the sequence then it must be in a side loop and therefore cannot be "in"
-        if((Nplus == 0 || Nminus == 0) && (j+25 < len && j-25 > 0)){
-            return false;
-        }
-    
-    // Strictness (puts planar caps on the helix)
-    if(strict == true){
-        double Corner[][] = new double[3][3];
-        double P1[] = new double[3];
-        double d = 0.0, v = 0.0;
-        k = 0;
-        
-        // BOTTOM CAP
-        // finds the first 3 corners
-        for(i = 1; i < len; i++){
-            if(onCorner(i,CAgrid)){
-            Corner[k][0] = CAgrid[i][0] - CAgrid[0][0];
-            Corner[k][1] = CAgrid[i][1] - CAgrid[0][1];
-            Corner[k][2] = CAgrid[i][2] - CAgrid[0][2];
-            k++;
-        }
-        if(k == 3){
-            i = len;
-        }
-        }
-        // finds the orthogonal vector to the plane definded by the first two corners and the origin
-        P1[0] = Corner[1][0]*Corner[0][1] - Corner[0][0]*Corner[1][1];
-        P1[1] = Corner[1][1]*Corner[0][2] - Corner[0][1]*Corner[1][2];
-        P1[2] = Corner[1][2]*Corner[0][0] - Corner[0][2]*Corner[1][0];
-        // determines the constant d for the plane function
-        d = (-1.0)*CAgrid[0][0]*P1[0] - CAgrid[0][1]*P1[1] - CAgrid[0][2]*P1[2];
-        // orients what is meant by "in" by the plane inequality
-        v = P1[0]*Corner[2][0] + P1[1]*Corner[2][1] + P1[2]*Corner[2][2] + d;
-        // searches for points that fall "below" the bottom cap
-        if( v < 0 ){
-            if ( 0 < P1[0]*x + P1[1]*y + P1[2]*z + d ){
-            return false;
-        }
-        }
-        if( v >= 0 ){
-            if ( 0 > P1[0]*x + P1[1]*y + P1[2]*z + d ){
-            return false;
-        }
-        }
-        
-        // TOP CAP
-        k = 0;
-        // finds the last 3 corners
-        for(i = len-2; i > 0; i--){
-            if(onCorner(i,CAgrid)){
-            Corner[k][0] = CAgrid[i][0] - CAgrid[len-1][0];
-            Corner[k][1] = CAgrid[i][1] - CAgrid[len-1][1];
-            Corner[k][2] = CAgrid[i][2] - CAgrid[len-1][2];
-            k++;
-        }
-        if(k == 3){
-            i = 0;
-        }
-        }
-        // finds the orthogonal vector to the plane defined by the last two corners and the end
-        P1[0] = Corner[1][0]*Corner[0][1] - Corner[0][0]*Corner[1][1];
-        P1[1] = Corner[1][1]*Corner[0][2] - Corner[0][1]*Corner[1][2];
-        P1[2] = Corner[1][2]*Corner[0][0] - Corner[0][2]*Corner[1][0];
-        // determines the constant d for the plane function
-        d = (-1.0)*CAgrid[0][0]*P1[0] - CAgrid[0][1]*P1[1] - CAgrid[0][2]*P1[2];
-        // orients what is meant by "in" by the plane inequality
-        v = P1[0]*Corner[2][0] + P1[1]*Corner[2][1] + P1[2]*Corner[2][2] + d;
-        // searches for the points that fall "above" the top cap
-        if( v < 0 ){
-            if ( 0 < P1[0]*x + P1[1]*y + P1[2]*z + d ){
-            return false;
-        }
-        }
-        if( v >= 0 ){
-            if ( 0 > P1[0]*x + P1[1]*y + P1[2]*z + d ){
-            return false;
-        }
-        }
-    }
-        
-        if(((double)in)/((double)tests) > .5){
-            return true;
-        }else{
-            return false;
-        }           
+    private static boolean CBisInside(int res, double x, double y, double z, AtomTable atoms, int len, boolean strict, boolean isLH){
+        return atoms.frames().inside(res, x, y, z, strict, isLH);
     }
     
     /*
@@ -1771,9 +1231,9 @@ public class Reader3
           
     /*
      * onCorner
-     * takes int, double[][]
+     * takes int, AtomTable
      * returns boolean
-     * input: (residue that you want to check, the C alpha position array)
+     * input: (residue that you want to check, the atoms (only the C alphas are used))
      *
      * This function checks to see if a residue is on the corner of the helix
      * it does this by making vector that point from the suspect residue to
@@ -1783,17 +1243,17 @@ public class Reader3
      * it is determined that the residue is on a corner and the value
      * true is returned.
      */
-    private static boolean onCorner(int res, double CAgrid[][]){
+    static boolean onCorner(int res, AtomTable atoms){
         double CE[] = new double[3];
     double CS[] = new double[3];
     double dot = 0.0;
     double CEm = 0.0, CSm = 0.0;
-    CE[0] = CAgrid[res][0] - CAgrid[res-1][0];
-    CE[1] = CAgrid[res][1] - CAgrid[res-1][1];
-    CE[2] = CAgrid[res][2] - CAgrid[res-1][2];
-    CS[0] = CAgrid[res][0] - CAgrid[res+1][0];
-    CS[1] = CAgrid[res][1] - CAgrid[res+1][1];
-    CS[2] = CAgrid[res][2] - CAgrid[res+1][2];
+    CE[0] = atoms.x(AtomTable.CA, res) - atoms.x(AtomTable.CA, res-1);
+    CE[1] = atoms.y(AtomTable.CA, res) - atoms.y(AtomTable.CA, res-1);
+    CE[2] = atoms.z(AtomTable.CA, res) - atoms.z(AtomTable.CA, res-1);
+    CS[0] = atoms.x(AtomTable.CA, res) - atoms.x(AtomTable.CA, res+1);
+    CS[1] = atoms.y(AtomTable.CA, res) - atoms.y(AtomTable.CA, res+1);
+    CS[2] = atoms.z(AtomTable.CA, res) - atoms.z(AtomTable.CA, res+1);
     dot = CE[0]*CS[0] + CE[1]*CS[1] + CE[2]*CS[2];
     CEm = Math.sqrt(CE[0]*CE[0] + CE[1]*CE[1] + CE[2]*CE[2]);
     CSm = Math.sqrt(CS[0]*CS[0] + CS[1]*CS[1] + CS[2]*CS[2]);
@@ -1804,238 +1264,6 @@ public class Reader3
     }
     }
     
-    /* getVol
-     * takes char
-     * returns double
-     * input: (The character code for the amino acid that you want the volume for)
-     *
-     * This function will take in the letter code for an amino acid and return
-     * the VDW volume of the amino acid as defined by Whitford in Protiens on page 18-22
-     * This includes the backbone (GLY as a non-zero volume)
-     */
-    private static double getVol(char r){
-        switch (r) {
-            case 'A': return 67.0;
-            case 'R': return 167.0;
-            case 'N': return 148.0;
-            case 'D': return 67.0;
-            case 'C': return 86.0;
-            case 'Q': return 114.0;
-            case 'E': return 109.0;
-            case 'G': return 48.0;
-            case 'H': return 118.0;
-            case 'I': return 124.0;
-            case 'L': return 124.0;
-            case 'K': return 135.0;
-            case 'M': return 124.0;
-            case 'F': return 135.0;
-            case 'P': return 90.0;
-            case 'S': return 73.0;
-            case 'T': return 93.0;
-            case 'W': return 163.0;
-            case 'Y': return 141.0;
-            case 'V': return 105.0;
-            default: System.out.println("Error in getVol");
-        }
-        return 0.0;
-    }
-    
-    /*
-     * getNum
-     * takes: char
-     * returns: int
-     * input: (The character code for an amino acid)
-     *
-     * This function simply orders the amino acids in the same way that Whitford does in Protiens
-     * and returns the number value of thier position starting from 0
-     * This has no scientific use, it is merely a trick to make some arrays more compact and simple
-     */
-    private static int getNum(char r){
-        switch (r) {
-            case 'A': return 0;
-            case 'R': return 1;
-            case 'N': return 2;
-            case 'D': return 3;
-            case 'C': return 4;
-            case 'Q': return 5;
-            case 'E': return 6;
-            case 'G': return 7;
-            case 'H': return 8;
-            case 'I': return 9;
-            case 'L': return 10;
-            case 'K': return 11;
-            case 'M': return 12;
-            case 'F': return 13;
-            case 'P': return 14;
-            case 'S': return 15;
-            case 'T': return 16;
-            case 'W': return 17;
-            case 'Y': return 18;
-            case 'V': return 19;
-            default: System.out.println("Error in getNum");
-        }
-        return 0;
-    }
-    
-    /*
-     * getName
-     * takes: int
-     * returns: char
-     * input: (The number value of an amino acid)
-     *
-     * This function basically undoes getNum for when the data needs to be read
-     * logically from the array. It does nothing without first using getNum.
-     */
-    private static int getName(int i){
-        switch(i){
-        case 0: return 'A';
-        case 1: return 'R';
-        case 2: return 'N';
-        case 3: return 'D';
-        case 4: return 'C';
-        case 5: return 'Q';
-        case 6: return 'E';
-        case 7: return 'G';
-        case 8: return 'H';
-        case 9: return 'I';
-        case 10: return 'L';
-        case 11: return 'K';
-        case 12: return 'M';
-        case 13: return 'F';
-        case 14: return 'P';
-        case 15: return 'S';
-        case 16: return 'T';
-        case 17: return 'W';
-        case 18: return 'Y';
-        case 19: return 'V';
-        default: System.out.println("Error in getName");
-    }
-    return 'X';
-    }
-    
-    /*
-     * getHydro
-     * takes: char
-     * returns: double
-     * input: (the char value for an amino acid)
-     *
-     * This function returns the hydrophobisity of an amino acid
-     * for a hydrophobe this value is 1
-     * for anything else the current value is -1
-     * This can be changed on a grouping basis (4 groups are already defined:
-     * hydrophobes, hydrophiles, acids, and bases)
-     * This has the effect of giveing larger positive numbers to hydrophobic things
-     * and larger (in magnitude) positive numbers to hydrophilic things
-     */
-    private static double getHydro(char r){
-        double hydrophobe = 1.0;
-        double hydrophile = -1.0;
-        double base = -1.0;
-        double acid = -1.0;
-        switch (r) {
-            case 'A': return hydrophobe;
-            case 'R': return base;
-            case 'N': return hydrophile;
-            case 'D': return acid;
-            case 'C': return hydrophile;
-            case 'Q': return hydrophile;
-            case 'E': return acid;
-            case 'G': return hydrophile;
-            case 'H': return base;
-            case 'I': return hydrophobe;
-            case 'L': return hydrophobe;
-            case 'K': return base;
-            case 'M': return hydrophobe;
-            case 'F': return hydrophobe;
-            case 'P': return hydrophobe;
-            case 'S': return hydrophile;
-            case 'T': return hydrophile;
-            case 'W': return hydrophobe;
-            case 'Y': return hydrophile;
-            case 'V': return hydrophobe;
-            default: System.out.println("Error in getHydro: " + r);
-        }
-        return 0.0;
-    }
-    
-    /*
-     * getHydroType
-     * takes char
-     * returns int
-     * input: (character code for an amino acid)
-     *
-     * This function returns what hydrophobic group an amino acid belongs to
-     * 0. Hydrophobes
-     * 1. Hydrophiles
-     * 2. bases
-     * 3. acids
-     * This can be easily expanded or contracted to make more gorups or change groups
-     */
-    private static int getHydroType(char r){
-        int hydrophobe = 0;
-        int hydrophile = 1;
-        int base = 2;
-        int acid = 3;
-        switch (r) {
-            case 'A': return hydrophobe;
-            case 'R': return base;
-            case 'N': return hydrophile;
-            case 'D': return acid;
-            case 'C': return hydrophile;
-            case 'Q': return hydrophile;
-            case 'E': return acid;
-            case 'G': return hydrophile;
-            case 'H': return base;
-            case 'I': return hydrophobe;
-            case 'L': return hydrophobe;
-            case 'K': return base;
-            case 'M': return hydrophobe;
-            case 'F': return hydrophobe;
-            case 'P': return hydrophobe;
-            case 'S': return hydrophile;
-            case 'T': return hydrophile;
-            case 'W': return hydrophobe;
-            case 'Y': return hydrophile;
-            case 'V': return hydrophobe;
-            default: System.out.println("Error in getHydroType: " + r);
-        }
-        return 0;
-    }
-    
-    /*
-     * seqres
-     * takes String
-     * returns char
-     * input: (The three letter code for any amino acid)
-     *
-     * This function basically turns the three letter code for any amino acid into
-     * its one letter code and returns it.
-     */
-    private static char seqres(String res){
-        if(res.compareTo("ALA")==0){return 'A';}
-        if(res.compareTo("ARG")==0){return 'R';}
-        if(res.compareTo("ASN")==0){return 'N';}
-        if(res.compareTo("ASP")==0){return 'D';}
-        if(res.compareTo("CYS")==0){return 'C';}
-        if(res.compareTo("GLN")==0){return 'Q';}
-        if(res.compareTo("GLU")==0){return 'E';}
-        if(res.compareTo("GLY")==0){return 'G';}
-        if(res.compareTo("HIS")==0){return 'H';}
-        if(res.compareTo("ILE")==0){return 'I';}
-        if(res.compareTo("LEU")==0){return 'L';}
-        if(res.compareTo("LYS")==0){return 'K';}
-        if(res.compareTo("MET")==0){return 'M';}
-        if(res.compareTo("PHE")==0){return 'F';}
-        if(res.compareTo("PRO")==0){return 'P';}
-        if(res.compareTo("SER")==0){return 'S';}
-        if(res.compareTo("THR")==0){return 'T';}
-        if(res.compareTo("TRP")==0){return 'W';}
-        if(res.compareTo("TYR")==0){return 'Y';}
-        if(res.compareTo("VAL")==0){return 'V';}
-        System.out.println("Error in seqres: " + res);
-        return 'X';
-    }
-    
     /*
      * getSector
      * takes double, double, double, double, double, double
@@ -2095,97 +1323,37 @@ public class Reader3
     IOException,
     FileNotFoundException
     {
-        BufferedReader fin = new BufferedReader(new FileReader("" + ins + ""));
-        PrintWriter fout = new PrintWriter(new FileOutputStream("trans.pdb"), true);
-        int i, len, toNeg = 0;
-        double xTemp = 0.0, yTemp = 0.0, zTemp = 0.0;
+        ByteBuffer pdb = PdbInput.load(ins); // reads *.pdb.gz files too
+        PdbWriter fout = new PdbWriter("trans.pdb"); // formats the records in place (see PdbWriter)
+        int pos = 0, next, end, limit = pdb.limit();
+        double x, y, z;
         boolean stop = false;
-        String line = null, dataPRE, dataX, dataY, dataZ, dataEND;
     
-        while(stop != true){
-            line = fin.readLine();
-        stop = (line.substring(0,4).compareTo("ATOM")==0);
-        if(stop != true){
-            fout.println(line);
-        }
-        }
-    
-        stop = false;
-    
-        while(stop != true){
-            dataPRE = line.substring(0,31);
-            dataX = line.substring(31,38).trim();
-        dataY = line.substring(39,46).trim();
-        dataZ = line.substring(47,54).trim();
-        dataEND = line.substring(55);
-    
-        if(rotX){
-            len = dataX.length();
-            xTemp = Double.parseDouble(dataX);
-            if(xTemp > 0){
-                toNeg = 1;
-            }
-            xTemp = (-1.0)*xTemp;
-            dataX = Double.toString(xTemp);
-            for(i = 0; i < 7; i++){
-                if(dataX.length() != (len+toNeg)){
-                    dataX = (dataX + "0");
-            }
-            }
-            len = 6 - len;
-            for(i = 0; i < len; i++){
-                dataX = (" " + dataX);
-            }
-        }
-        dataPRE = dataPRE.concat(dataX);
-        
-        if(rotY){
-            len = dataY.length();
-            yTemp = Double.parseDouble(dataY);
-            if(yTemp > 0){
-                toNeg = 1;
-            }
-            yTemp = (-1.0)*yTemp;
-            dataY = Double.toString(yTemp);
-            for(i = 0; i < 7; i++){
-                if(dataY.length() != (len+toNeg)){
-                    dataY = (dataY + "0");
-            }
-            }
-            len = 6 - len;
-            for(i = 0; i < len; i++){
-                dataY = (" " + dataY);
+        // copies everything before the first ATOM record
+        while(pos < limit && stop != true){
+            next = PdbAtomParser.nextLine(pdb, pos);
+            stop = PdbAtomParser.isRecord(pdb, pos, next, 'A', 'T', 'O', 'M');
+            if(stop != true){
+                fout.copy(pdb, pos, Math.min(next, limit)); // the last line might not have a line ending
+                pos = next;
             }
         }
-        dataPRE = dataPRE.concat(dataY);
     
-        if(rotZ){
-            len = dataZ.length();
-            zTemp = Double.parseDouble(dataZ);
-            if(zTemp > 0){
-                toNeg = 1;
-            }
-            zTemp = (-1.0)*zTemp;
-            dataZ = Double.toString(zTemp);
-            for(i = 0; i < 7; i++){
-                if(dataZ.length() != (len+toNeg)){
-                    dataZ = (dataZ + "0");
-            }
-            }
-            len = 6 - len;
-            for(i = 0; i < len; i++){
-                dataZ = (" " + dataZ);
+        // reflects the coordinates of the ATOM records, up to the first record that is not an ATOM
+        stop = false;
+        while(pos < limit && stop != true){
+            next = PdbAtomParser.nextLine(pdb, pos);
+            stop = !PdbAtomParser.isRecord(pdb, pos, next, 'A', 'T', 'O', 'M');
+            if(stop != true){
+                end = Math.min(next, limit); // the last line might not have a line ending
+                x = PdbAtomParser.parseCoord(pdb, pos + 30, Math.min(pos + 38, end));
+                y = PdbAtomParser.parseCoord(pdb, pos + 38, Math.min(pos + 46, end));
+                z = PdbAtomParser.parseCoord(pdb, pos + 46, Math.min(pos + 54, end));
+                fout.atom(pdb, pos, end, rotX ? -x : x, rotY ? -y : y, rotZ ? -z : z);
+                pos = next;
             }
         }
-        dataPRE = dataPRE.concat(dataZ);
-        
-        dataPRE = dataPRE.concat(dataEND);
-    
-        fout.println(dataPRE);
-    
-        line = fin.readLine();
-        stop = (line.substring(0,4).compareTo("ATOM")!=0);
-        }
+        fout.close();
     }
 }
 
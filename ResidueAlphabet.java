@@ -0,0 +1,155 @@
+/*
+ * ResidueAlphabet
+ *
+ * This class holds everything Reader3 knows about the 20 amino acids in flat tables. A residue is a small
+ * number, its code, the same order Whitford uses in Protiens (this was getNum):
+ * 0 ALA A, 1 ARG R, 2 ASN N, 3 ASP D, 4 CYS C, 5 GLN Q, 6 GLU E, 7 GLY G, 8 HIS H, 9 ILE I,
+ * 10 LEU L, 11 LYS K, 12 MET M, 13 PHE F, 14 PRO P, 15 SER S, 16 THR T, 17 TRP W, 18 TYR Y, 19 VAL V
+ * and 20 (X) for anything else.
+ *
+ * A sequence is kept as a byte[] of codes (see encode) so a property of a residue is one array load,
+ * VOL[code[r-1]] instead of a switch on the letter, and every stage reads the same tables.
+ *
+ * The three letter codes are found with a perfect hash: (14*first + 5*second + third) & 31 is different
+ * for each of the 20 codes, so a lookup is one hash and one check of the three letters.
+ */
+
+public class ResidueAlphabet
+{
+    public static final int COUNT = 20; // the number of amino acids
+    public static final byte X = 20; // the code of a residue that is not one of the 20
+    public static final byte GLY = 7; // used everywhere GLY is left out (it has no side chain)
+
+    // the residues with side chain hydrogen bonding atoms (see HBOND)
+    public static final byte ASN = 2;
+    public static final byte GLN = 5;
+    public static final byte HIS = 8;
+    public static final byte SER = 15;
+    public static final byte THR = 16;
+    public static final byte TYR = 18;
+
+    // the hydrophobic groups (HYDRO_TYPE)
+    public static final int HYDROPHOBE = 0;
+    public static final int HYDROPHILE = 1;
+    public static final int BASE = 2;
+    public static final int ACID = 3;
+
+    private static final String CODES = "ALAARGASNASPCYSGLNGLUGLYHISILELEULYSMETPHEPROSERTHRTRPTYRVAL";
+
+    // the one letter code of each code (this was getName), 'X' for X
+    public static final char LETTER[] = "ARNDCQEGHILKMFPSTWYVX".toCharArray();
+
+    // the VDW volume as defined by Whitford in Protiens on page 18-22, this includes the backbone (this was getVol)
+    public static final double VOL[] = {
+        67.0, 167.0, 148.0, 67.0, 86.0, 114.0, 109.0, 48.0, 118.0, 124.0,
+        124.0, 135.0, 124.0, 135.0, 90.0, 73.0, 93.0, 163.0, 141.0, 105.0,
+        0.0};
+
+    // the hydrophobic group of each code (this was getHydroType)
+    public static final int HYDRO_TYPE[] = {
+        HYDROPHOBE, BASE, HYDROPHILE, ACID, HYDROPHILE, HYDROPHILE, ACID, HYDROPHILE, BASE, HYDROPHOBE,
+        HYDROPHOBE, BASE, HYDROPHOBE, HYDROPHOBE, HYDROPHOBE, HYDROPHILE, HYDROPHILE, HYDROPHOBE, HYDROPHILE, HYDROPHOBE,
+        HYDROPHOBE};
+
+    // the hydrophobisity of each group, 1 for a hydrophobe and -1 for the rest (this can be changed on a grouping basis)
+    private static final double GROUP_HYDRO[] = {1.0, -1.0, -1.0, -1.0};
+
+    // the hydrophobisity of each code (this was getHydro), larger positive numbers for hydrophobic things
+    public static final double HYDRO[] = new double[COUNT + 1];
+
+    // the side chain hydrogen bonding atoms each code has (bit r is AtomTable role r), 0 if it makes no side chain H bonds
+    // ASN and GLN: the amide N donor, the O acceptor and the carbon the angles are measured from
+    // HIS: the imidazole N acceptor and the ring atom the angles are measured from
+    // SER, THR and TYR: the hydroxyl O, which is both the donor and the acceptor
+    public static final int HBOND[] = new int[COUNT + 1];
+
+    // the code of each one letter code (X for anything that is not one of the 20)
+    private static final byte BY_LETTER[] = new byte[128];
+
+    // the code in each slot of the hash table (-1 for an empty slot)
+    private static final byte SLOT[] = new byte[32];
+
+    static {
+        int k;
+        java.util.Arrays.fill(BY_LETTER, X);
+        java.util.Arrays.fill(SLOT, (byte)-1);
+        for(k = 0; k < COUNT; k++){
+            BY_LETTER[LETTER[k]] = (byte)k;
+            SLOT[hash((byte)CODES.charAt(3*k), (byte)CODES.charAt(3*k+1), (byte)CODES.charAt(3*k+2))] = (byte)k;
+        }
+        for(k = 0; k <= COUNT; k++){
+            HYDRO[k] = (k == X) ? 0.0 : GROUP_HYDRO[HYDRO_TYPE[k]];
+        }
+        int amide = (1 << AtomTable.NE) | (1 << AtomTable.OACC) | (1 << AtomTable.NDON);
+        int hydroxyl = (1 << AtomTable.ODON) | (1 << AtomTable.OACC);
+        HBOND[ASN] = amide;
+        HBOND[GLN] = amide;
+        HBOND[HIS] = (1 << AtomTable.NACC) | (1 << AtomTable.NE);
+        HBOND[SER] = hydroxyl;
+        HBOND[THR] = hydroxyl;
+        HBOND[TYR] = hydroxyl;
+    }
+
+    // the perfect hash of a three letter code
+    private static int hash(byte a, byte b, byte c){
+        return (14*a + 5*b + c) & 31;
+    }
+
+    /*
+     * code
+     * takes byte, byte, byte
+     * returns byte
+     * input: (the three letters of the code)
+     *
+     * Turns the three letter code of an amino acid into its code (X if it is not one of the 20)
+     */
+    public static byte code(byte a, byte b, byte c){
+        byte k = SLOT[hash(a, b, c)];
+        if(k >= 0 && CODES.charAt(3*k) == a && CODES.charAt(3*k+1) == b && CODES.charAt(3*k+2) == c){
+            return k;
+        }
+        System.out.println("Error in seqres: " + (char)a + (char)b + (char)c);
+        return X;
+    }
+
+    /*
+     * code
+     * takes char
+     * returns byte
+     * input: (the one letter code of an amino acid)
+     *
+     * Returns the code of a one letter code (X if it is not one of the 20)
+     */
+    public static byte code(char r){
+        return (r < 128) ? BY_LETTER[r] : X;
+    }
+
+    /*
+     * seqres
+     * takes byte, byte, byte
+     * returns char
+     * input: (the three letters of the code)
+     *
+     * Turns the three letter code of an amino acid into its one letter code ('X' if it is not one of the 20)
+     */
+    public static char seqres(byte a, byte b, byte c){
+        return LETTER[code(a, b, c)];
+    }
+
+    /*
+     * encode
+     * takes char[]
+     * returns byte[]
+     * input: (the one letter sequence, seq[r-1] is residue r)
+     *
+     * Returns the sequence as codes, code[r-1] is residue r
+     */
+    public static byte[] encode(char seq[]){
+        byte code[] = new byte[seq.length];
+        int r;
+        for(r = 0; r < seq.length; r++){
+            code[r] = code(seq[r]);
+        }
+        return code;
+    }
+}
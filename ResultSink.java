@@ -0,0 +1,260 @@
+/*
+ * ResultSink
+ *
+ * This class takes the output of Reader3. There are three places the results go:
+ * The stats_*.dat file, the same readable lines as always
+ * The screen (optional, a batch run can turn it off)
+ * A machine readable results file, one record per result, as CSV or JSON Lines
+ *
+ * Nothing is written on the thread doing the analysis. The lines are collected into blocks and the
+ * blocks are handed to a background thread that does the writing, so the analysis never waits on the disk
+ * or the screen and nothing is flushed until a block is full (or the sink is closed).
+ *
+ * The CSV file is in long form so every analysis fits in the same columns:
+ * structure,analysis,record,key,value
+ * where all the rows of one record have the same record number.
+ */
+
+import java.io.*; // needed for input and output
+import java.util.concurrent.ArrayBlockingQueue; // needed for handing blocks to the writing thread
+import java.util.concurrent.BlockingQueue;
+
+public class ResultSink
+{
+    public static final int CSV = 0; // the results file is structure,analysis,record,key,value rows
+    public static final int JSONL = 1; // the results file has one JSON object per line
+
+    private static final int BLOCK = 1 << 13; // how many characters are collected before a block is handed over
+    private static final int QUEUED = 64; // how many blocks the writing thread can fall behind by
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final int format;
+    private final boolean echo;
+    private final String name; // the structure the results are for
+    private final BlockingQueue<String[]> queue = new ArrayBlockingQueue<String[]>(QUEUED);
+    private final Thread writer;
+    private volatile IOException error = null;
+
+    // the blocks being filled: the stats file, the screen and the results file
+    private StringBuilder text = new StringBuilder(BLOCK);
+    private StringBuilder console = new StringBuilder(BLOCK);
+    private StringBuilder results = new StringBuilder(BLOCK);
+    private int records = 0;
+
+    /*
+     * ResultSink
+     * takes String, String, String, int, boolean
+     * input: (the name of the structure, the stats file, the results file (null for none), CSV or JSONL, print to the screen too?)
+     *
+     * Opens the files and starts the writing thread
+     */
+    public ResultSink(String name, String textFile, String resultFile, int format, boolean echo) throws
+    IOException,
+    FileNotFoundException
+    {
+        this.name = name;
+        this.format = format;
+        this.echo = echo;
+        final Writer textOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(textFile), "ISO-8859-1"), 1 << 16);
+        final Writer resultOut = (resultFile == null) ? null : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultFile), "UTF-8"), 1 << 16);
+        final PrintStream screen = System.out;
+        if(resultOut != null && format == CSV){
+            results.append("structure,analysis,record,key,value\n");
+        }
+
+        writer = new Thread(() -> {
+            String block[];
+            boolean done = false;
+            try{
+                try{
+                    while(!done){
+                        block = queue.take();
+                        done = (block[3] != null);
+                        textOut.write(block[0]);
+                        if(block[1].length() > 0){
+                            screen.print(block[1]);
+                        }
+                        if(resultOut != null){
+                            resultOut.write(block[2]);
+                        }
+                    }
+                }catch(IOException e){
+                    error = e;
+                    while(!done){
+                        done = (queue.take()[3] != null); // keeps taking blocks so close does not hang
+                    }
+                }finally{
+                    try{ textOut.close(); }catch(IOException e){ error = e; }
+                    if(resultOut != null){
+                        try{ resultOut.close(); }catch(IOException e){ error = e; }
+                    }
+                    screen.flush();
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }, "results " + name);
+        writer.setDaemon(true); // close waits for it, but a run that dies before close must not be kept alive by it
+        writer.start();
+    }
+
+    /*
+     * println
+     * takes String
+     * returns void
+     * input: (a line of the readable output)
+     *
+     * The line goes in the stats file and on the screen (if it is on)
+     */
+    public void println(String line){
+        file(line);
+        console(line);
+    }
+
+    /*
+     * file
+     * takes String
+     * returns void
+     * input: (a line of the readable output)
+     *
+     * The line only goes in the stats file
+     */
+    public void file(String line){
+        text.append(line).append(NEWLINE);
+        handOver(false);
+    }
+
+    /*
+     * console
+     * takes String
+     * returns void
+     * input: (a line for the screen)
+     *
+     * The line only goes on the screen, and only if the screen is on
+     */
+    public void console(String line){
+        if(echo){
+            console.append(line).append(NEWLINE);
+            handOver(false);
+        }
+    }
+
+    /*
+     * record
+     * takes String, Object...
+     * returns void
+     * input: (the analysis the result is from, then pairs of key and value)
+     *
+     * Writes one machine readable result, for example
+     * record("volume", "inside", 1234.5, "total", 5678.9)
+     * Numbers and true/false are written as they are, anything else is written as text.
+     */
+    public void record(String analysis, Object... fields){
+        int i;
+        if(format == JSONL){
+            results.append("{\"structure\":");
+            quote(name);
+            results.append(",\"analysis\":");
+            quote(analysis);
+            for(i = 0; i + 1 < fields.length; i += 2){
+                results.append(',');
+                quote(String.valueOf(fields[i]));
+                results.append(':');
+                if(fields[i+1] instanceof Number || fields[i+1] instanceof Boolean){
+                    results.append(number(fields[i+1]));
+                }else{
+                    quote(String.valueOf(fields[i+1]));
+                }
+            }
+            results.append("}\n");
+        }else{
+            for(i = 0; i + 1 < fields.length; i += 2){
+                csv(name);
+                results.append(',');
+                csv(analysis);
+                results.append(',').append(records).append(',');
+                csv(String.valueOf(fields[i]));
+                results.append(',');
+                csv(String.valueOf(fields[i+1]));
+                results.append('\n');
+            }
+        }
+        records++;
+        handOver(false);
+    }
+
+    /*
+     * close
+     * takes nothing
+     * returns void
+     * input: ()
+     *
+     * Hands over what is left, waits for the writing thread to finish and closes the files
+     */
+    public void close() throws IOException {
+        handOver(true);
+        try{
+            writer.join();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while writing the results");
+        }
+        if(error != null){
+            throw error;
+        }
+    }
+
+    // hands the blocks to the writing thread once one of them is full (or at the end)
+    private void handOver(boolean last){
+        if(!last && text.length() < BLOCK && console.length() < BLOCK && results.length() < BLOCK){
+            return;
+        }
+        String block[] = {text.toString(), console.toString(), results.toString(), last ? "" : null};
+        text.setLength(0);
+        console.setLength(0);
+        results.setLength(0);
+        try{
+            queue.put(block);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // a number that JSON can read (NaN and infinity are not numbers in JSON)
+    private static String number(Object v){
+        if(v instanceof Double || v instanceof Float){
+            double d = ((Number)v).doubleValue();
+            if(Double.isNaN(d) || Double.isInfinite(d)){
+                return "null";
+            }
+        }
+        return String.valueOf(v);
+    }
+
+    // a JSON string
+    private void quote(String s){
+        int i;
+        char c;
+        results.append('"');
+        for(i = 0; i < s.length(); i++){
+            c = s.charAt(i);
+            if(c == '"' || c == '\\'){
+                results.append('\\').append(c);
+            }else if(c < ' '){
+                results.append(String.format("\\u%04x", (int)c));
+            }else{
+                results.append(c);
+            }
+        }
+        results.append('"');
+    }
+
+    // a CSV field, quoted if it has to be
+    private void csv(String s){
+        if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0){
+            results.append(s);
+        }else{
+            results.append('"').append(s.replace("\"", "\"\"")).append('"');
+        }
+    }
+}
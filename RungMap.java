@@ -0,0 +1,306 @@
+/*
+ * RungMap
+ *
+ * This class holds the residue directly above and directly below every residue of the helix, as the number
+ * of residues along the chain to it (Nplus and Nminus, 0 if there is none). Reader3 asks for these all the
+ * time: the hydrophobisity, stacking and total statistics, findVolApp and CBisInside (so every Monte Carlo
+ * point), and each answer is a search over the C alphas around the residue. The map does every search once:
+ *
+ * up[i]    Nplus of residue i, the residue above is i + up[i]
+ * down[i]  Nminus of residue i, the residue below is i - down[i]
+ *
+ * The answer depends on how far along the chain the search is allowed to look, main and findVolApp look 30
+ * residues either way (NEAR) and CBisInside looks 50 (FAR). A map is made for one of them and is kept by the
+ * AtomTable until a C alpha is moved (see AtomTable.rungs).
+ *
+ * There are two ways to fill in the map:
+ * SEARCH  the getNplus and getNminus search below, for every residue
+ * SWEEP   one sweep over the band of C alpha distances (see CaDistances). For every lag k (how far along the
+ *         chain) the squared distances d2(j, j+k) are summed up the chain, so the mean over any stretch of the
+ *         chain is two lookups. That mean is the autocorrelation of the C alpha trace with itself, it dips
+ *         wherever k is a whole number of rungs. The local period of residue i is the lag (9 or more) with the
+ *         lowest mean over the residues within a window of i, and the residue above is the closest C alpha
+ *         within DRIFT of one period up the chain. It has to pass the same check as the search (closer than the
+ *         C alpha two up the chain, or four down it) and be closer than the C alphas on either side of it (so a
+ *         loop where nothing lines up gets 0).
+ *         This is linear in the length of the chain and does not depend on the search converging.
+ * The period of every residue is kept too (0 for a map made by the SEARCH).
+ */
+
+public class RungMap
+{
+    public static final int NEAR = 30; // how far main and findVolApp search for the residue above and below
+    public static final int FAR = 50; // how far CBisInside searches
+
+    // the ways of finding the residue above and below
+    public static final int SEARCH = 0;
+    public static final int SWEEP = 1;
+
+    private static final int MIN = 3; // the residue above has to be closer than the one MIN-1 along the chain
+    private static final int MIN_START = MIN + 6; // the shortest period looked at
+    private static final int DRIFT = 2; // how far from one period along the chain the residue above can be
+
+    private final int window;
+    private final int up[];
+    private final int down[];
+    private final int period[];
+
+    /*
+     * RungMap
+     * takes AtomTable, int
+     * input: (the atoms (only the C alphas are used), how far along the chain to search (NEAR or FAR))
+     *
+     * Finds the residue above and below every residue with the search (never further away than the end of the chain)
+     */
+    public RungMap(AtomTable atoms, int window){
+        this(atoms, window, SEARCH);
+    }
+
+    /*
+     * RungMap
+     * takes AtomTable, int, int
+     * input: (the atoms (only the C alphas are used), how far along the chain to search (NEAR or FAR), SEARCH or SWEEP)
+     *
+     * Finds the residue above and below every residue the chosen way
+     */
+    public RungMap(AtomTable atoms, int window, int finder){
+        int len = atoms.length(), i;
+        this.window = window;
+        up = new int[len];
+        down = new int[len];
+        period = new int[len];
+        if(finder == SWEEP){
+            sweep(atoms.caDistances(), len);
+        }else{
+            for(i = 0; i < len; i++){
+                up[i] = getNplus(i, MIN, 0, MIN_START, Math.min(window, len - i), atoms);
+                down[i] = getNminus(i, MIN, 0, MIN_START, Math.min(window, i), atoms);
+            }
+        }
+    }
+
+    /*
+     * sweep
+     * takes CaDistances, int
+     * returns void
+     * input: (the C alpha distances, the number of residues)
+     *
+     * Fills in the map from the autocorrelation of the C alpha distances (see the top of the file)
+     */
+    private void sweep(CaDistances ca, int len){
+        int lags = Math.min(window, CaDistances.BAND + 1); // lags MIN_START to lags-1 are looked at
+        int i, j, k, lo, hi, best;
+        double mean, bestMean;
+        // sum[k][j] is the sum of d2(i, i+k) for i below j
+        double sum[][] = new double[lags][];
+        for(k = MIN_START; k < lags; k++){
+            sum[k] = new double[Math.max(len - k, 0) + 1];
+            for(j = 0; j + k < len; j++){
+                sum[k][j+1] = sum[k][j] + ca.get(j, j+k);
+            }
+        }
+        // the local period, the lag with the lowest mean distance over the residues within a window of i
+        for(i = 0; i < len; i++){
+            best = 0;
+            bestMean = Double.MAX_VALUE;
+            for(k = MIN_START; k < lags; k++){
+                lo = Math.max(0, i - window);
+                hi = Math.min(len - k, i + window + 1);
+                if(hi - lo > 0){
+                    mean = (sum[k][hi] - sum[k][lo])/(hi - lo);
+                    if(mean < bestMean){
+                        bestMean = mean;
+                        best = k;
+                    }
+                }
+            }
+            period[i] = best;
+        }
+        for(i = 0; i < len; i++){
+            up[i] = partner(ca, len, i, period[i], Math.min(window, len - i), 1);
+            down[i] = partner(ca, len, i, period[i], Math.min(window, i), -1);
+        }
+    }
+
+    // the closest C alpha within DRIFT of one period up (dir 1) or down (dir -1) the chain, 0 if there is none
+    private static int partner(CaDistances ca, int len, int i, int p, int dom, int dir){
+        int k, best = 0;
+        double d, bestDist = Double.MAX_VALUE;
+        if(p == 0){
+            return 0;
+        }
+        for(k = Math.max(MIN_START, p - DRIFT); k <= p + DRIFT && k < dom; k++){
+            d = ca.get(i, i + dir*k);
+            if(d < bestDist){
+                bestDist = d;
+                best = k;
+            }
+        }
+        // it has to be closer than the C alpha the search checks against (MIN-1 up the chain, MIN+1 down it, the same
+        // as getNplus and getNminus) and closer than the ones on either side of it (at the end of the chain there is only one)
+        if(best == 0 || bestDist >= ca.get(i, i + ((dir > 0) ? MIN-1 : -(MIN+1))) || bestDist > ca.get(i, i + dir*(best-1))){
+            return 0;
+        }
+        k = i + dir*(best+1);
+        if(k >= 0 && k < len && bestDist > ca.get(i, k)){
+            return 0;
+        }
+        return best;
+    }
+
+    /*
+     * period
+     * takes int
+     * returns int
+     * input: (residue index (0 is START))
+     *
+     * Returns how many residues make up a rung around the residue (0 if the map was made by the search)
+     */
+    public int period(int i){
+        return period[i];
+    }
+
+    /*
+     * window
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how far along the chain the map searched
+     */
+    public int window(){
+        return window;
+    }
+
+    /*
+     * up
+     * takes int
+     * returns int
+     * input: (residue index (0 is START))
+     *
+     * Returns how many residues along the chain the residue directly above is (0 if there is none)
+     */
+    public int up(int i){
+        return up[i];
+    }
+
+    /*
+     * down
+     * takes int
+     * returns int
+     * input: (residue index (0 is START))
+     *
+     * Returns how many residues along the chain the residue directly below is (0 if there is none)
+     */
+    public int down(int i){
+        return down[i];
+    }
+    
+    /*
+     * getNplus
+     * takes: int, int, int, int, int, AtomTable  // That is 5 ints
+     * returns int
+     * input: (residue that you want Nplus for, minimum distance away it will evaluate against (3), dummy variable (0), where it starts when looking for the residue (9), how deep into the 1D chain it will search (must be less than the number of residues left), the atoms (only the C alphas are used))
+     *
+     * This function searches for and returns the number of residues in between it and the residue directly above it in the helix
+     * It starts by looking at some residue a minumum distance away and compares it to the distance between it and another residue which is relivly close
+     * if it is closer than the criteria then it becomes the new closeset and it tries to find a residue which is closer yet
+     * if there is no residue above it (if its at the top of the helix) then it returns a value of zero
+     */
+    static int getNplus(int res, int min, int minsearch, int minstart, int searchDomP, AtomTable atoms){
+        int j = res, i;
+    CaDistances ca = atoms.caDistances(); // the distances are compared squared
+    double dist = 1000.0*1000.0;
+    double minDist = 1000.0*1000.0;
+    int Nplus = 0, Nplusp = 0;
+    boolean npOK = false;
+    //System.out.println("TEST");
+    //System.out.println(res + " " + min + " " + minsearch + " " + minstart + " " + searchDomP);
+    for(minsearch = minstart; minsearch < searchDomP; minsearch++){
+            Nplusp = Nplus;
+            //if(searchDomP > minsearch){
+                for(i = minsearch; i < searchDomP; i++){
+                    dist = ca.get(j, j+i);
+                    //System.out.println(dist);
+            if(dist < minDist){
+                        minDist = dist;
+                        Nplus = i;
+            //System.out.println("Lowest " + Nplus);
+                    }
+                }
+                if(ca.get(j, j+min-1) < minDist){
+                    Nplus = 0;
+                }
+            //}else{
+            //    Nplus = 0;
+            //}
+        
+            if(minsearch != minstart){
+                if(Nplusp == Nplus){
+                    npOK = true;
+            //i = searchDomP;
+                    minsearch = searchDomP;
+                }else{
+                    npOK = false;
+                }
+            }
+            minDist = 1000.0*1000.0;
+        }
+        if(npOK == false){
+            Nplus = 0;
+        }
+    //System.out.println("Lowest " + Nplus);
+    return Nplus;
+    }
+    
+    /*
+     * getNminus
+     * takes int, int, int, int, int, AtomTable
+     * returns int
+     * input: (residue that you want Nplus for, minimum distance away it will evaluate against (3), dummy variable (0), where it starts when looking for the residue (9), how deep into the 1D chain it will search (must be less than the number of residues left), the atoms (only the C alphas are used))
+     *
+     * This works in exactly the same way as getNplus only in the opposite direction
+     */
+    static int getNminus(int res, int min, int minsearch, int minstart, int searchDomM, AtomTable atoms){
+        int j = res, i;
+    CaDistances ca = atoms.caDistances(); // the distances are compared squared
+    double dist = 1000.0*1000.0;
+    double minDist = 1000.0*1000.0;
+    int Nminus = 0, Nminusp = 0;
+    boolean nmOK = false;
+    //System.out.println("TESTL");
+    for(minsearch = minstart; minsearch < searchDomM; minsearch++){ 
+            Nminusp = Nminus;
+            //if(searchDomM > minsearch){
+                for(i = minsearch; i < searchDomM; i++){
+                    dist = ca.get(j, j-i);
+                    //System.out.println(dist);
+            if(dist < minDist){
+                        minDist = dist;
+                        Nminus = i;
+            //System.out.println("Lowest");
+                    }
+                }
+                if(ca.get(j, j-min-1) < minDist){
+                    Nminus = 0;
+                }
+            //}else{
+            //    Nminus = 0;
+            //}
+            if(minsearch != minstart){
+                if(Nminusp == Nminus){
+                    nmOK = true;
+            //i = searchDomM;
+                    minsearch = searchDomM;
+                }else{
+                    nmOK = false;
+                }
+            }
+            minDist = 1000.0*1000.0;
+        } 
+        if(nmOK == false){
+            Nminus = 0;
+        }
+    return Nminus;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * RungSections
+ *
+ * This class finds the volume of the helix from the cross section of every rung. findVolApp only looks at the
+ * first rung, takes the longest C alpha to C alpha distance in it as the side of an equilateral triangle and
+ * stacks (residues/18) of them 4.8 A apart, which only fits a left handed helix with triangular rungs.
+ *
+ * Here the chain is walked once, a rung at a time. The rung starting at residue s is s to s+p-1, where s+p is the
+ * residue directly above s (see RungMap). For every rung:
+ *
+ * area  the area of the polygon of its C alphas (in chain order) seen down the local axis of the rung (see
+ *       HelixAxis.local), half the sum of (a x b).axis over its edges
+ * rise  how far the residue above s is from s along the local axis
+ *
+ * and the volume is the sum of area*rise. The top rung has nothing above it so it is the lid, the same as the
+ * strict caps of findVolume. A residue with nothing above it below the top (a side loop) starts no rung, the walk
+ * moves on to the next residue. Nothing depends on which way the helix turns or on the shape of the rungs.
+ */
+
+public class RungSections
+{
+    private int rungs = 0; // how many rungs were found
+    private final int first[], period[]; // the first residue and the number of residues of each rung
+    private final double area[], rise[];
+    private double volume = 0.0;
+
+    /*
+     * RungSections
+     * takes AtomTable
+     * input: (the atoms (only the C alphas are used))
+     *
+     * Walks the chain a rung at a time and adds up the volume
+     */
+    public RungSections(AtomTable atoms){
+        int len = atoms.length(), s = 0, p, k, a, b;
+        RungMap map = atoms.rungs(RungMap.FAR);
+        HelixAxis fit = atoms.axis();
+        double x[] = atoms.roleColumn(AtomTable.CA, 0), y[] = atoms.roleColumn(AtomTable.CA, 1), z[] = atoms.roleColumn(AtomTable.CA, 2);
+        double axis[], sum, ax, ay, az, bx, by, bz;
+        first = new int[len];
+        period = new int[len];
+        area = new double[len];
+        rise = new double[len];
+        while(s < len){
+            p = map.up(s);
+            if(p == 0){
+                s++;
+                continue;
+            }
+            axis = fit.local(s);
+            // the polygon, each edge (a, b) from the centre of the rung
+            sum = 0.0;
+            for(k = 0; k < p; k++){
+                a = s + k;
+                b = s + (k + 1)%p;
+                ax = x[a] - axis[0];
+                ay = y[a] - axis[1];
+                az = z[a] - axis[2];
+                bx = x[b] - axis[0];
+                by = y[b] - axis[1];
+                bz = z[b] - axis[2];
+                sum += (ay*bz - az*by)*axis[3] + (az*bx - ax*bz)*axis[4] + (ax*by - ay*bx)*axis[5];
+            }
+            first[rungs] = s;
+            period[rungs] = p;
+            area[rungs] = 0.5*Math.abs(sum);
+            rise[rungs] = Math.abs((x[s+p] - x[s])*axis[3] + (y[s+p] - y[s])*axis[4] + (z[s+p] - z[s])*axis[5]);
+            volume += area[rungs]*rise[rungs];
+            rungs++;
+            s += p;
+        }
+    }
+
+    /*
+     * rungs
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how many rungs were found
+     */
+    public int rungs(){
+        return rungs;
+    }
+
+    /*
+     * first, period
+     * takes int
+     * returns int
+     * input: (the rung (0 is the bottom one))
+     *
+     * Return the first residue of the rung (0 is START) and how many residues it has
+     */
+    public int first(int r){
+        return first[r];
+    }
+
+    public int period(int r){
+        return period[r];
+    }
+
+    /*
+     * area, rise
+     * takes int
+     * returns double
+     * input: (the rung (0 is the bottom one))
+     *
+     * Return the cross section of the rung (A^2) and how far it is to the rung above (A)
+     */
+    public double area(int r){
+        return area[r];
+    }
+
+    public double rise(int r){
+        return rise[r];
+    }
+
+    /*
+     * volume
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Returns the volume of the helix, the sum of area*rise over the rungs
+     */
+    public double volume(){
+        return volume;
+    }
+}
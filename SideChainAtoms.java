@@ -0,0 +1,114 @@
+/*
+ * SideChainAtoms
+ *
+ * This class holds every heavy atom of the side chains (everything but N, CA, C, O, OXT and the hydrogens),
+ * which the AtomTable does not keep: it only has the C beta and the few hydrogen bonding atoms of each residue.
+ * CavityFinder fills the inside of the helix with them to find the room that is left over.
+ *
+ * The atoms are kept in the order they were read:
+ * x[], y[], z[]  the coordinates
+ * radius[]       the van der Waals radius of the atom (from its element, see radius)
+ * res[]          which residue it belongs to (0 is START)
+ *
+ * They are read out of the *.pdb file by PdbAtomParser.parseSideChains, or out of the *.cif file by
+ * CifAtomSiteReader.readSideChains.
+ */
+
+import java.util.Arrays;
+
+public class SideChainAtoms
+{
+    private int count = 0;
+    private double x[] = new double[64], y[] = new double[64], z[] = new double[64], radius[] = new double[64];
+    private int res[] = new int[64];
+
+    /*
+     * add
+     * takes int, double, double, double, double
+     * returns void
+     * input: (residue index (0 is START), x, y, z, van der Waals radius)
+     *
+     * Adds an atom
+     */
+    public void add(int i, double px, double py, double pz, double r){
+        if(count == x.length){
+            x = Arrays.copyOf(x, 2*count);
+            y = Arrays.copyOf(y, 2*count);
+            z = Arrays.copyOf(z, 2*count);
+            radius = Arrays.copyOf(radius, 2*count);
+            res = Arrays.copyOf(res, 2*count);
+        }
+        x[count] = px;
+        y[count] = py;
+        z[count] = pz;
+        radius[count] = r;
+        res[count] = i;
+        count++;
+    }
+
+    /*
+     * radius
+     * takes char
+     * returns double
+     * input: (the element (first letter))
+     *
+     * Returns the van der Waals radius of the element (Bondi), 1.8 A for anything else
+     */
+    public static double radius(char e){
+        switch(e){
+            case 'C': return 1.70;
+            case 'N': return 1.55;
+            case 'O': return 1.52;
+            case 'S': return 1.80;
+            default: return 1.80;
+        }
+    }
+
+    /*
+     * count
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how many atoms there are
+     */
+    public int count(){
+        return count;
+    }
+
+    /*
+     * x, y, z, radius
+     * takes int
+     * returns double
+     * input: (the atom)
+     *
+     * Return the coordinates and the van der Waals radius of the atom
+     */
+    public double x(int a){
+        return x[a];
+    }
+
+    public double y(int a){
+        return y[a];
+    }
+
+    public double z(int a){
+        return z[a];
+    }
+
+    public double radius(int a){
+        return radius[a];
+    }
+
+    /*
+     * residue
+     * takes int
+     * returns int
+     * input: (the atom)
+     *
+     * Returns the residue the atom belongs to (0 is START)
+     */
+    public int residue(int a){
+        return res[a];
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * StructureIndex
+ *
+ * This class makes one sequential pass over a memory mapped *.pdb file and records everything the
+ * later stages used to go back to the file for:
+ * The SEQRES sequence (or the sequence rebuilt from the ATOM records if there is no SEQRES)
+ * The length of the chain
+ * Where the ATOM records start, which chain they are and where the chain ends (the TER or END record)
+ * Where the first ATOM record of every residue is and what residue it is
+ *
+ * Reader3 and pdbConvert used to open the same file three times to get this information,
+ * with the index every structure costs one pass over the file.
+ */
+
+import java.nio.ByteBuffer; // needed for the byte level decoding
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class StructureIndex
+{
+    public char seq[]; // the one letter sequence, seq[r-1] is residue r
+    public int proLen = 0; // the length of the chain
+    public boolean hasSeqres = false; // true if the sequence came from the SEQRES records
+    public int atomStart = -1; // offset of the first ATOM record
+    public char chain = ' '; // the chain of the first ATOM record (the one that is read)
+    public int atomEnd = -1; // offset of the record that ends the chain (TER or END)
+    public int firstRes = 0; // residue number of the first ATOM record
+    public int lastRes = 0; // residue number of the last ATOM record of the chain
+    public int resOffset[]; // resOffset[r] is the offset of the first ATOM record of residue r (-1 if there is none)
+    public byte resName[]; // the three letter code of residue r is at resName[3*r] to resName[3*r+2]
+
+    /*
+     * scan
+     * takes ByteBuffer
+     * returns StructureIndex
+     * input: (the memory mapped *.pdb file)
+     *
+     * This function reads through the file a single time. SEQRES records are turned into the sequence
+     * as they go by, then the ATOM records of the first chain are indexed by residue number until the TER or
+     * END record is found. If there were no SEQRES records the length of the chain is the number of the last
+     * residue and the sequence is taken from the ATOM records (any residue that is missing is filled in as a GLY).
+     */
+    public static StructureIndex scan(ByteBuffer buf){
+        StructureIndex index = new StructureIndex();
+        int limit = buf.limit();
+        int pos = 0, next, res, j, k = 0;
+        int prev = Integer.MIN_VALUE;
+        int offsets[] = new int[1024];
+        byte names[] = new byte[3*1024];
+        boolean done = false;
+        Arrays.fill(offsets, -1);
+
+        while(pos < limit && !done){
+            next = PdbAtomParser.nextLine(buf, pos);
+            if(index.atomStart < 0 && PdbAtomParser.isRecord(buf, pos, next, 'S', 'E', 'Q', 'R') && next - pos > 19){
+                // SEQRES, the first one gives the length of the chain, each holds up to 13 residues
+                if(!index.hasSeqres){
+                    index.hasSeqres = true;
+                    index.proLen = PdbAtomParser.parseInt(buf, pos + 13, pos + 17);
+                    index.seq = new char[index.proLen];
+                }
+                if(buf.get(pos + 11) == 'A' || buf.get(pos + 13) == ' '){
+                    for(j = 0; j < 13; j++){
+                        if(k < index.proLen && pos + 22 + 4*j <= next - 1){
+                            index.seq[k] = seqres(buf, pos + 19 + 4*j);
+                            k++;
+                        }
+                    }
+                }
+            }else if(PdbAtomParser.isRecord(buf, pos, next, 'A', 'T', 'O', 'M') && next - pos > 26){
+                if(index.atomStart < 0){
+                    index.atomStart = pos;
+                    index.chain = (char)(buf.get(pos + 21) & 0xff);
+                }
+                res = PdbAtomParser.parseInt(buf, pos + 22, pos + 26);
+                if(res != prev && res >= 0){
+                    // first record of a new residue
+                    if(res >= offsets.length){
+                        offsets = grow(offsets, Math.max(2*offsets.length, res+1));
+                        names = Arrays.copyOf(names, 3*offsets.length);
+                    }
+                    if(prev == Integer.MIN_VALUE){
+                        index.firstRes = res;
+                    }
+                    if(offsets[res] < 0){
+                        offsets[res] = pos;
+                        names[3*res] = buf.get(pos + 17);
+                        names[3*res+1] = buf.get(pos + 18);
+                        names[3*res+2] = buf.get(pos + 19);
+                    }
+                    index.lastRes = Math.max(index.lastRes, res);
+                    prev = res;
+                }
+            }else if(index.atomStart >= 0 && PdbAtomParser.isChainEnd(buf, pos, next)){
+                index.atomEnd = pos;
+                done = true;
+            }
+            pos = next;
+        }
+        if(index.atomEnd < 0){
+            index.atomEnd = limit;
+        }
+        index.resOffset = offsets;
+        index.resName = names;
+
+        // no SEQRES so the sequence comes from the residues that have coordinates
+        if(!index.hasSeqres){
+            index.proLen = index.lastRes;
+            index.seq = new char[index.proLen];
+            for(j = 1; j <= index.proLen; j++){
+                if(offsets[j] >= 0){
+                    index.seq[j-1] = ResidueAlphabet.seqres(names[3*j], names[3*j+1], names[3*j+2]);
+                }else{
+                    index.seq[j-1] = 'G';
+                }
+            }
+        }
+        return index;
+    }
+
+    /*
+     * nextRes
+     * takes int
+     * returns int
+     * input: (a residue number)
+     *
+     * Returns the number of the next residue that has ATOM records, or lastRes+1 if there is none
+     */
+    public int nextRes(int r){
+        r++;
+        while(r <= lastRes && resOffset[r] < 0){
+            r++;
+        }
+        return r;
+    }
+
+    /*
+     * resName
+     * takes int
+     * returns String
+     * input: (a residue number)
+     *
+     * Returns the three letter code of the residue as it appears in the ATOM records
+     */
+    public String resName(int r){
+        return new String(resName, 3*r, 3, StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * seqres
+     * takes ByteBuffer, int
+     * returns char
+     * input: (buffer holding a three letter code, offset of the code)
+     *
+     * Turns the three letter code in the buffer into its one letter code (see ResidueAlphabet)
+     */
+    private static char seqres(ByteBuffer buf, int pos){
+        return ResidueAlphabet.seqres(buf.get(pos), buf.get(pos+1), buf.get(pos+2));
+    }
+
+    // grows the offset array, the new residues have no records yet
+    private static int[] grow(int a[], int size){
+        int b[] = Arrays.copyOf(a, size);
+        Arrays.fill(b, a.length, size, -1);
+        return b;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * VoxelGrid
+ *
+ * This class finds the volume of the helix without random points. The box around the C alphas (the same box
+ * findVolume throws its points into) is cut into cubes of a set size (voxels), and the middle of every voxel
+ * is tested the same way a Monte Carlo point is: as a C beta of the closest C alpha (see CBisInside), or
+ * against the fitted helix axis (see HelixAxis). The volume is the number of voxels inside times the volume
+ * of one, so the same structure always gives the same volume, and it only gets better as the voxels get smaller.
+ *
+ * The voxels are done a slab at a time (all the voxels with the same z), one slab per task of a fork-join pool.
+ * The voxels of a slab are next to each other so they keep asking the C alpha grid about the same few cells
+ * and the same residue's planes. Which voxels are inside is kept as bits:
+ *
+ * voxel (i, j, k) is bit (j*nx + i) of slab k, and slab k starts at word k*stride of inside[]
+ *
+ * Every slab starts on a new word so the tasks never write to the same word.
+ *
+ * The grid is kept once it is made so later analyses can ask which voxels are inside the helix.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool; // needed for the slabs
+import java.util.concurrent.ForkJoinTask;
+
+public class VoxelGrid
+{
+    private final int nx, ny, nz; // how many voxels across
+    private final double ox, oy, oz; // the corner of the box
+    private final double size; // the edge of a voxel
+    private final int stride; // how many words a slab takes
+    private final long inside[];
+    private long count = 0; // how many voxels are inside
+
+    /*
+     * VoxelGrid
+     * takes AtomTable, double, boolean, boolean, boolean, int
+     * input: (the atoms (only the C alphas are used), the edge of a voxel (A), put caps on the helix? (see CBisInside),
+     *      is the helix left handed?, test the voxels against the helix axis instead of CBisInside?, how many slabs to do at once)
+     *
+     * Cuts the box into voxels and finds which are inside the helix
+     */
+    public VoxelGrid(AtomTable atoms, double size, boolean strict, boolean isLH, boolean axis, int workers){
+        double x[] = atoms.roleColumn(AtomTable.CA, 0), y[] = atoms.roleColumn(AtomTable.CA, 1), z[] = atoms.roleColumn(AtomTable.CA, 2);
+        double hx = -9000.0, hy = -9000.0, hz = -9000.0, lx, ly, lz;
+        int i, len = atoms.length();
+        // the same box as findVolume (see MonteCarloVolume)
+        for(i = 0; i < len; i++){
+            hx = Math.max(hx, x[i]);
+            hy = Math.max(hy, y[i]);
+            hz = Math.max(hz, z[i]);
+        }
+        lx = hx;
+        ly = hy;
+        lz = hz;
+        for(i = 0; i < len; i++){
+            lx = Math.min(lx, x[i]);
+            ly = Math.min(ly, y[i]);
+            lz = Math.min(lz, z[i]);
+        }
+        this.size = size;
+        ox = lx;
+        oy = ly;
+        oz = lz;
+        nx = Math.max((int)Math.ceil((hx - lx)/size), 1);
+        ny = Math.max((int)Math.ceil((hy - ly)/size), 1);
+        nz = Math.max((int)Math.ceil((hz - lz)/size), 1);
+        stride = (nx*ny + 63) >>> 6;
+        inside = new long[stride*nz];
+        classify(atoms, strict, isLH, axis, Math.max(workers, 1));
+    }
+
+    // finds which voxels are inside, a slab per task (everything the test needs is made first, see MonteCarloVolume)
+    private void classify(final AtomTable atoms, final boolean strict, final boolean isLH, final boolean axis, int workers){
+        final OrientationFrames frames = axis ? null : atoms.frames();
+        final HelixAxis fit = axis ? atoms.axis() : null;
+        final CaGrid grid = axis ? null : atoms.caGrid();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        List<ForkJoinTask<Long>> slabs = new ArrayList<ForkJoinTask<Long>>();
+        int k;
+        try{
+            for(k = 0; k < nz; k++){
+                final int slab = k;
+                slabs.add(pool.submit(() -> slab(slab, frames, fit, grid, strict, isLH)));
+            }
+            for(ForkJoinTask<Long> s : slabs){
+                count += s.join();
+            }
+        }finally{
+            pool.shutdown();
+        }
+    }
+
+    // tests the voxels of slab k and returns how many are inside
+    private long slab(int k, OrientationFrames frames, HelixAxis fit, CaGrid grid, boolean strict, boolean isLH){
+        long in = 0;
+        int i, j, b;
+        double px, py, pz = z(k);
+        boolean hit;
+        for(j = 0; j < ny; j++){
+            py = y(j);
+            for(i = 0; i < nx; i++){
+                px = x(i);
+                if(fit != null){
+                    hit = fit.inside(px, py, pz, strict);
+                }else{
+                    hit = frames.inside(grid.nearest(px, py, pz), px, py, pz, strict, isLH);
+                }
+                if(hit){
+                    b = j*nx + i;
+                    inside[k*stride + (b >>> 6)] |= 1L << (b & 63);
+                    in++;
+                }
+            }
+        }
+        return in;
+    }
+
+    /*
+     * nx, ny, nz
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Return how many voxels across the grid is
+     */
+    public int nx(){
+        return nx;
+    }
+
+    public int ny(){
+        return ny;
+    }
+
+    public int nz(){
+        return nz;
+    }
+
+    /*
+     * size
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Returns the edge of a voxel (A)
+     */
+    public double size(){
+        return size;
+    }
+
+    /*
+     * x, y, z
+     * takes int
+     * returns double
+     * input: (voxel number along that axis)
+     *
+     * Return the coordinate of the middle of the voxel
+     */
+    public double x(int i){
+        return ox + (i + 0.5)*size;
+    }
+
+    public double y(int j){
+        return oy + (j + 0.5)*size;
+    }
+
+    public double z(int k){
+        return oz + (k + 0.5)*size;
+    }
+
+    /*
+     * voxel
+     * takes double, int
+     * returns int
+     * input: (a coordinate, which axis (x = 0, y = 1, z = 2))
+     *
+     * Returns the voxel number along that axis the coordinate is in, -1 if it is off the grid
+     */
+    public int voxel(double v, int c){
+        double o = (c == 0) ? ox : (c == 1) ? oy : oz;
+        int n = (c == 0) ? nx : (c == 1) ? ny : nz;
+        int k = (int)Math.floor((v - o)/size);
+        return (k < 0 || k >= n) ? -1 : k;
+    }
+
+    /*
+     * stride
+     * takes nothing
+     * returns int
+     * input: ()
+     *
+     * Returns how many words of a bit set laid out like this grid a slab takes (slab k starts at word k*stride
+     * and voxel (i, j, k) is bit j*nx + i from there)
+     */
+    public int stride(){
+        return stride;
+    }
+
+    /*
+     * inside
+     * takes int, int, int
+     * returns boolean
+     * input: (the voxel numbers along x, y and z)
+     *
+     * Returns true if the middle of the voxel is inside the helix
+     */
+    public boolean inside(int i, int j, int k){
+        int b = j*nx + i;
+        return (inside[k*stride + (b >>> 6)] & (1L << (b & 63))) != 0;
+    }
+
+    /*
+     * words
+     * takes nothing
+     * returns long[]
+     * input: ()
+     *
+     * Returns the bits of the voxels inside the helix (see stride), do not change them
+     */
+    public long[] words(){
+        return inside;
+    }
+
+    /*
+     * count
+     * takes nothing
+     * returns long
+     * input: ()
+     *
+     * Returns how many voxels are inside the helix
+     */
+    public long count(){
+        return count;
+    }
+
+    /*
+     * volume
+     * takes nothing
+     * returns double
+     * input: ()
+     *
+     * Returns the volume of the voxels inside the helix
+     */
+    public double volume(){
+        return count*size*size*size;
+    }
+}
@@ -1,86 +1,178 @@
 import java.io.*; // needed for input and output
+import java.nio.ByteBuffer; // needed for reading the *.pdb file in a single pass
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService; // needed for converting many files at once
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class pdbConvert
 {
+    /*
+     * main
+     *
+     * With no arguments the file named below is converted to f_*.pdb like always.
+     * Any arguments are the files to convert: a directory converts every *.pdb, *.ent (and *.gz) file in it,
+     * @list.txt converts every file named in list.txt (one per line). The files are converted in parallel,
+     * one per core, each f_*.pdb file goes next to the file it came from.
+     */
     public static void main(String args[]) throws
     IOException,
     FileNotFoundException
     {
         
-        // PUT THE COORDINATE FILE TO BE CONVERTED HERE
+        // PUT THE COORDINATE FILE TO BE CONVERTED HERE (a compressed *.pdb.gz works too)
         String ins = "C3.pdb"; // <----------------
         
-        BufferedReader fin = new BufferedReader(new FileReader("" + ins + ""));
-        BufferedReader fin2 = new BufferedReader(new FileReader("" + ins + ""));
-        BufferedReader fin3 = new BufferedReader(new FileReader("" + ins + ""));
-        PrintWriter fout = new PrintWriter(new FileOutputStream("f_" + ins), true);
+        if(args.length == 0){
+            convert(ins, "f_" + PdbInput.baseName(ins));
+        }else{
+            convertAll(args);
+        }
+    }
+    
+    /*
+     * convertAll
+     * takes String[]
+     * returns int
+     * input: (the files, directories and @lists to convert)
+     *
+     * Converts all of the files on a pool of threads (one per core). A file that fails is reported
+     * and the rest carry on. Returns the number of files that were converted.
+     */
+    public static int convertAll(String args[]) throws
+    IOException
+    {
+        List<File> files = listFiles(args, false);
+        int i, done = 0;
+        
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors())));
+        List<Future<?>> jobs = new ArrayList<Future<?>>();
+        for(File g : files){
+            final File in = g;
+            jobs.add(pool.submit(() -> {
+                convert(in.getPath(), new File(in.getAbsoluteFile().getParentFile(), "f_" + PdbInput.baseName(in.getName())).getPath());
+                return null;
+            }));
+        }
+        for(i = 0; i < jobs.size(); i++){
+            try{
+                jobs.get(i).get();
+                done++;
+            }catch(Exception e){
+                Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+                System.out.println("Error in pdbConvert: " + files.get(i) + ": " + cause);
+            }
+        }
+        pool.shutdown();
+        System.out.println("Converted " + done + " of " + files.size() + " file(s)");
+        return done;
+    }
+    
+    /*
+     * listFiles
+     * takes String[], boolean
+     * returns List<File>
+     * input: (files, directories and @lists, are *.cif files wanted too)
+     *
+     * Works out the list of files: a directory gives every *.pdb, *.ent (and *.gz) file in it (not the f_*.pdb
+     * files this writes), @list.txt gives every file named in list.txt (one per line), anything else is a file
+     */
+    static List<File> listFiles(String args[], boolean cif) throws
+    IOException
+    {
+        List<File> files = new ArrayList<File>();
+        BufferedReader list;
+        String line;
+        File f;
+        File inDir[];
+        int i;
+        
+        for(i = 0; i < args.length; i++){
+            if(args[i].startsWith("@")){
+                list = new BufferedReader(new FileReader(args[i].substring(1)));
+                while((line = list.readLine()) != null){
+                    if(line.trim().length() > 0){
+                        files.add(new File(line.trim()));
+                    }
+                }
+                list.close();
+            }else{
+                f = new File(args[i]);
+                if(f.isDirectory()){
+                    inDir = f.listFiles();
+                    Arrays.sort(inDir);
+                    for(File g : inDir){
+                        if(isCoordinateFile(g.getName(), cif)){
+                            files.add(g);
+                        }
+                    }
+                }else{
+                    files.add(f);
+                }
+            }
+        }
+        return files;
+    }
+    
+    // true for the files a directory is searched for (not the f_*.pdb files this writes)
+    private static boolean isCoordinateFile(String name, boolean cif){
+        String base = PdbInput.baseName(name);
+        return !name.startsWith("f_") && (base.endsWith(".pdb") || base.endsWith(".ent") || (cif && base.endsWith(".cif")));
+    }
+    
+    /*
+     * convert
+     * takes String, String
+     * returns void
+     * input: (the coordinate file, the f_*.pdb file to write)
+     *
+     * Reads the file a single time. The SEQRES records are written from the residues in the StructureIndex
+     * (any missing residue is filled in as a GLY), then the ATOM block is copied over without being looked at.
+     */
+    public static void convert(String ins, String outs) throws
+    IOException,
+    FileNotFoundException
+    {
+        // One pass over the file indexes the residues and the ATOM block (see StructureIndex)
+        ByteBuffer pdb = PdbInput.load(ins);
+        StructureIndex index = StructureIndex.scan(pdb);
+        if(index.atomStart < 0){
+            throw new IOException("no ATOM records in " + ins);
+        }
+        PdbWriter fout = new PdbWriter(outs); // buffered, written out in blocks (see PdbWriter)
         
-        String amino = null;
-        String line = null;
         int res = 0;
-        int resT = 0;
         int lines = 0;
         int i = 0;
         int start = 1;
         boolean stop = false;
-        boolean stop2 = false;
-        int end = 2;
+        int end = index.lastRes;
         boolean CR = true;
-        int totallines = 0;
-        int toATOM = 0;
-        int toTER = 0;
         
         fout.println("Start of fixed f_*.pdb file");
         
-        while( stop != true ){
-            line = fin2.readLine();
-            stop = (line.substring(0,3).compareTo("END")==0);
-            if(stop == false){
-                if(line.substring(0,3).compareTo("TER")==0){
-                    stop = true;
-                    end = Integer.parseInt(line.substring(23,26).trim());
-                }
-            }
-            if(stop == false){
-                end = Integer.parseInt(line.substring(23,26).trim());
-            }
-            toTER++;
-        }
-        stop = false;
-        //end = Integer.parseInt(line.substring(23,26).trim());
-        //System.out.println("ERROR TEST: end: " + end);
-        
-        while( stop != true ){
-            line = fin.readLine();
-            stop = (line.substring(0,4).compareTo("ATOM")==0);
-            toATOM++;
-        }
-        stop = false;
-        
-        totallines = toTER - toATOM;
-        
-        //start = Integer.parseInt(line.substring(23,26).trim());
+        res = index.firstRes;
         
         while( stop != true ){
             if(CR == true){
                 CR = false;
                 lines++;
                 if(lines < 10){
-                    if(end < 100){
-                        fout.print("SEQRES   " + lines + " A  " + end + "  ");
-                    }else{
-                        fout.print("SEQRES   " + lines + " A  " + end + " ");
-                    }
+                    fout.print("SEQRES   ");
+                    fout.print(lines);
+                    fout.print(" A  ");
+                    fout.print(end);
+                    fout.print((end < 100) ? "  " : " ");
                 }else{
-                    if(end < 100){
-                        fout.print("SEQRES  " + lines + " A  " + end + "  ");
-                    }else{
-                        fout.print("SEQRES  " + lines + " A  " + end + " ");
-                    }
+                    fout.print("SEQRES  ");
+                    fout.print(lines);
+                    fout.print(" A  ");
+                    fout.print(end);
+                    fout.print((end < 100) ? "  " : " ");
                 }
             }
-            amino = line.substring(17,20);
-            res = Integer.parseInt(line.substring(23,26).trim());
             //System.out.println("ERROR TEST: amino: " + amino + ", res: " + res);
             //System.out.println("ERROR TEST: start: " + start);
             //stop = true;
@@ -95,41 +187,37 @@ public class pdbConvert
                         CR = true;
                     }else{
                         //System.out.println("ERROR TEST: in GLY loop3");
-                        fout.print(" GLY" + "");
+                        fout.print(" GLY");
                     }
                 }
             }
             if(CR == false){
                 start = end;
                 if(res%13==0){
-                    fout.println(" " + amino);
+                    fout.print(" ");
+                    fout.write(index.resName, 3*res, 3); // the three letter code of the residue
+                    fout.println("");
                     CR = true;
                 }else{
-                    fout.print(" " + amino);
+                    fout.print(" ");
+                    fout.write(index.resName, 3*res, 3);
                 }
                 if(res == end){
                     stop = true;
-                    stop2 = true;
-                }
-                while(stop2 != true){
-                    line = fin.readLine();
-                    resT = Integer.parseInt(line.substring(23,26).trim());
-                    if(resT != res){
-                        stop2 = true;
-                    }
+                }else{
+                    res = index.nextRes(res); // moves on to the next residue that has ATOM records
                 }
-                stop2 = false;
             }
         }
         
-        fout.println("\nBuffer line in f_*.pdb");
+        fout.print("\n");
+        fout.println("Buffer line in f_*.pdb");
         
-        for(i = 0; i < toATOM-1; i++){
-            line = fin3.readLine();
-        }
-        for(i = 0; i < totallines; i++){
-            line = fin3.readLine();
-            fout.println(line);
+        // copies the ATOM block (everything up to the TER or END record), file to file for a plain file
+        if(PdbInput.isCompressed(ins)){
+            fout.copy(pdb, index.atomStart, index.atomEnd);
+        }else{
+            fout.transfer(ins, index.atomStart, index.atomEnd);
         }
         fout.println("END OF f_*.pdb");
         
@@ -0,0 +1,96 @@
+/*
+ * VectorDistanceKernels
+ *
+ * The DistanceKernels loops done with the incubating Vector API, as many atoms at a time as the preferred
+ * SIMD register holds (4 doubles with AVX2, 8 with AVX-512). The atoms left over at the end of a run go
+ * through the plain loops of DistanceKernels.
+ *
+ * This class needs the JVM (and javac) to be started with --add-modules jdk.incubator.vector, so it is kept
+ * in its own folder out of the BlueJ project and a plain javac *.java. Nothing refers to it by name,
+ * DistanceKernels loads it when it can and uses its own loops when it can not. To use it, after the rest is built:
+ *
+ * javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorDistanceKernels.java
+ * java --add-modules jdk.incubator.vector Reader3
+ */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorDistanceKernels extends DistanceKernels
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // 0, 1, 2, ... the lane numbers, for keeping track of which atom each lane of nearest has
+    private static final double LANE[] = new double[SPECIES.length()];
+
+    static {
+        int k;
+        for(k = 0; k < LANE.length; k++){
+            LANE[k] = k;
+        }
+    }
+
+    public int lanes(){
+        return SPECIES.length();
+    }
+
+    public void squared(double px, double py, double pz, double x[], double y[], double z[], int from, int to, double out[], int at){
+        int i = from, upper = from + SPECIES.loopBound(to - from);
+        DoubleVector vx = DoubleVector.broadcast(SPECIES, px);
+        DoubleVector vy = DoubleVector.broadcast(SPECIES, py);
+        DoubleVector vz = DoubleVector.broadcast(SPECIES, pz);
+        DoubleVector dx, dy, dz;
+        for(; i < upper; i += SPECIES.length()){
+            dx = vx.sub(DoubleVector.fromArray(SPECIES, x, i));
+            dy = vy.sub(DoubleVector.fromArray(SPECIES, y, i));
+            dz = vz.sub(DoubleVector.fromArray(SPECIES, z, i));
+            dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)).intoArray(out, at + i - from);
+        }
+        super.squared(px, py, pz, x, y, z, i, to, out, at + i - from);
+    }
+
+    public int nearest(double px, double py, double pz, double x[], double y[], double z[], int from, int to){
+        int i = from, k, upper = from + SPECIES.loopBound(to - from), best = -1, tail;
+        double bestD = Double.POSITIVE_INFINITY, lane;
+        if(upper > from){
+            DoubleVector vx = DoubleVector.broadcast(SPECIES, px);
+            DoubleVector vy = DoubleVector.broadcast(SPECIES, py);
+            DoubleVector vz = DoubleVector.broadcast(SPECIES, pz);
+            DoubleVector min = DoubleVector.broadcast(SPECIES, Double.POSITIVE_INFINITY); // the closest distance each lane has seen
+            DoubleVector where = DoubleVector.broadcast(SPECIES, -1.0); // and which atom it was
+            DoubleVector atom = DoubleVector.fromArray(SPECIES, LANE, 0).add(from); // the atoms in the lanes now
+            DoubleVector dx, dy, dz, d;
+            VectorMask<Double> closer;
+            for(; i < upper; i += SPECIES.length()){
+                dx = vx.sub(DoubleVector.fromArray(SPECIES, x, i));
+                dy = vy.sub(DoubleVector.fromArray(SPECIES, y, i));
+                dz = vz.sub(DoubleVector.fromArray(SPECIES, z, i));
+                d = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+                // strictly closer, so each lane keeps the first of its atoms on a tie
+                closer = d.lt(min);
+                min = min.blend(d, closer);
+                where = where.blend(atom, closer);
+                atom = atom.add(SPECIES.length());
+            }
+            // of the lanes with the closest distance the one with the first atom
+            bestD = min.reduceLanes(VectorOperators.MIN);
+            for(k = 0; k < SPECIES.length(); k++){
+                lane = where.lane(k); // the atom number, kept as a double in the lane
+                if(min.lane(k) == bestD && lane >= 0 && (best < 0 || lane < best)){
+                    best = (int)lane;
+                }
+            }
+        }
+        // the atoms that did not fill a register, they come after all the others so only a closer one wins
+        tail = super.nearest(px, py, pz, x, y, z, i, to);
+        if(tail >= 0){
+            double dx = px - x[tail], dy = py - y[tail], dz = pz - z[tail];
+            if(best < 0 || dx*dx + dy*dy + dz*dz < bestD){
+                best = tail;
+            }
+        }
+        return best;
+    }
+}